@@ -2,13 +2,22 @@ package com.crafto.ai.action;
 
 import com.crafto.ai.CraftoMod;
 import com.crafto.ai.action.actions.*;
+import com.crafto.ai.ai.IntentCompiler;
+import com.crafto.ai.ai.LLMUnavailableException;
 import com.crafto.ai.ai.ResponseParser;
 import com.crafto.ai.ai.TaskPlanner;
 import com.crafto.ai.config.CraftoConfig;
+import com.crafto.ai.entity.ActivityLevel;
 import com.crafto.ai.entity.CraftoEntity;
+import com.crafto.ai.optimization.LatencyTracker;
+import com.crafto.ai.optimization.RequestPriority;
+import net.minecraft.world.entity.player.Player;
 
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class ActionExecutor {
     private final CraftoEntity crafto;
@@ -18,7 +27,37 @@ public class ActionExecutor {
     private BaseAction currentAction;
     private String currentGoal;
     private int ticksSinceLastAction;
+    private ActivityLevel activityLevel = ActivityLevel.FULL;  // выставляет CraftoManager раз в секунду
     private BaseAction idleFollowAction;  // Follow player when idle
+    private volatile CompletableFuture<ResponseParser.ParsedResponse> pendingPlan;  // LLM plan still in flight
+    private volatile Queue<StreamedTask> streamedTasks;  // tasks of the pending plan that have already been generated
+    private int streamedTaskCount;
+    private int streamedElements;  // элементы "tasks", уже пройденные стримом, включая неразобранные
+    private String lastCommand;  // последняя команда игрока, для перепланирования
+    private boolean replanned;   // не больше одного перепланирования на команду
+    private long commandReceivedNanos;  // момент команды игрока, пока не запущено первое действие; 0 - не ждём
+    // Команды из любых потоков (чат, команды сервера); состояние меняет только tick() на серверном потоке
+    private final Queue<QueuedCommand> commandInbox = new ConcurrentLinkedQueue<>();
+    
+    private static final class QueuedCommand {
+        final String text;
+        final long submittedNanos;
+        
+        QueuedCommand(String text, long submittedNanos) {
+            this.text = text;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+    
+    private static final class StreamedTask {
+        final int elementIndex;
+        final Task task;
+        
+        StreamedTask(int elementIndex, Task task) {
+            this.elementIndex = elementIndex;
+            this.task = task;
+        }
+    }
 
     public ActionExecutor(CraftoEntity crafto) {
         this.crafto = crafto;
@@ -36,21 +75,52 @@ public class ActionExecutor {
         return taskPlanner;
     }
 
-    public void processNaturalLanguageCommand(String command) {
-        CraftoMod.LOGGER.info("Crafto '{}' processing command: {}", crafto.getCraftoName(), command);
-        
-        // Специальные команды для отладки
+    /**
+     * Queues a player command. Safe to call from any thread; the command is applied on the next
+     * {@link #tick(int)}, so it never races with the task queue or the running action.
+     */
+    public void submitCommand(String command) {
+        commandInbox.offer(new QueuedCommand(command, System.nanoTime()));
+    }
+    
+    /**
+     * Applies queued commands. A command replaces the previous plan entirely, so of several plan
+     * commands that arrived within one tick only the newest is planned; debug commands all run.
+     */
+    private void drainCommands() {
+        QueuedCommand latest = null;
+        QueuedCommand command;
+        while ((command = commandInbox.poll()) != null) {
+            if (!handleDebugCommand(command.text)) {
+                if (latest != null) {
+                    CraftoMod.LOGGER.info("Crafto '{}' skipping superseded command: {}", crafto.getCraftoName(), latest.text);
+                }
+                latest = command;
+            }
+        }
+        if (latest != null) {
+            processNaturalLanguageCommand(latest.text, latest.submittedNanos);
+        }
+    }
+    
+    // Специальные команды для отладки
+    private boolean handleDebugCommand(String command) {
         if (command.toLowerCase().contains("clear inventory") || command.toLowerCase().contains("reset inventory")) {
             com.crafto.ai.inventory.InventoryManager.clearInventory(crafto);
             sendToGUI(crafto.getCraftoName(), "Inventory cleared!");
-            return;
+            return true;
         }
         
         if (command.toLowerCase().contains("show inventory") || command.toLowerCase().contains("inventory stats")) {
             String stats = com.crafto.ai.inventory.InventoryManager.getInventoryStats(crafto);
             sendToGUI(crafto.getCraftoName(), stats);
-            return;
+            return true;
         }
+        return false;
+    }
+
+    private void processNaturalLanguageCommand(String command, long submittedNanos) {
+        CraftoMod.LOGGER.info("Crafto '{}' processing command: {}", crafto.getCraftoName(), command);
         
         if (currentAction != null) {
             currentAction.cancel();
@@ -62,52 +132,168 @@ public class ActionExecutor {
             idleFollowAction = null;
         }
         
+        taskQueue.clear();
+        cancelPendingPlan();
+        lastCommand = command;
+        replanned = false;
+        commandReceivedNanos = submittedNanos;
+        
         try {
-            ResponseParser.ParsedResponse response = null;
-            
-            // Проверяем, является ли это командой строительства
-            if (com.crafto.ai.debug.BuildingDebugger.isBuildCommand(command)) {
-                CraftoMod.LOGGER.info("Detected build command, using debug system");
-                response = com.crafto.ai.debug.BuildingDebugger.createBuildResponse(command);
-            } else {
-                // Try cache first for performance
-                // Кэширование команд отключено для упрощения
-                response = null;
-                
-                if (response == null) {
-                    // Cache miss - use AI
-                    response = getTaskPlanner().planTasks(crafto, command);
-                    if (response != null) {
-                        // Кэширование команд отключено для упрощения
-                    }
-                } else {
-                    CraftoMod.LOGGER.info("Using cached response for command: {}", command);
-                }
+            // Типовые команды разбираем локально, без обращения к LLM
+            ResponseParser.ParsedResponse compiled = IntentCompiler.compile(command, this::isOnlinePlayer);
+            if (compiled != null) {
+                CraftoMod.LOGGER.info("Crafto '{}' compiled command locally: {}", crafto.getCraftoName(), compiled.getPlan());
+                applyPlan(compiled);
+                return;
             }
             
-            if (response == null) {
+            requestPlan(command, null, RequestPriority.INTERACTIVE);
+        } catch (NoClassDefFoundError e) {
+            CraftoMod.LOGGER.error("Failed to initialize AI components", e);
+            sendToGUI(crafto.getCraftoName(), "Sorry, I'm having trouble with my AI systems!");
+        }
+    }
+    
+    private boolean isOnlinePlayer(String name) {
+        for (Player player : crafto.level().players()) {
+            if (player.getName().getString().equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void requestPlan(String command, String previousFailure, RequestPriority priority) {
+        // Планирование через LLM идёт асинхронно - результат забирает tick() на серверном потоке.
+        // При стриминге задачи приходят по одной ещё до завершения генерации
+        Queue<StreamedTask> stream = new ConcurrentLinkedQueue<>();
+        streamedTasks = stream;
+        streamedTaskCount = 0;
+        streamedElements = 0;
+        pendingPlan = getTaskPlanner().planTasksAsync(crafto, command, previousFailure,
+            (elementIndex, task) -> stream.offer(new StreamedTask(elementIndex, task)), priority);
+        CraftoMod.LOGGER.info("Crafto '{}' waiting for {} plan: {}", crafto.getCraftoName(), priority, command);
+    }
+    
+    /**
+     * Asks for a new plan once per command after an action fails with requiresReplanning().
+     */
+    private void replan(ActionResult failure) {
+        if (lastCommand == null || replanned || pendingPlan != null) {
+            return;
+        }
+        replanned = true;
+        taskQueue.clear();
+        
+        // Сбой идёт отдельной секцией промпта; ключ кэша остаётся ключом исходной команды
+        try {
+            requestPlan(lastCommand, failure.getMessage(), RequestPriority.REPLAN);
+        } catch (NoClassDefFoundError e) {
+            CraftoMod.LOGGER.error("Failed to initialize AI components", e);
+        }
+    }
+    
+    /**
+     * Picks up a finished plan, if any. Called from tick() so the task queue is only
+     * ever loaded on the server thread, no matter how long the model took.
+     */
+    private void pollPendingPlan() {
+        CompletableFuture<ResponseParser.ParsedResponse> plan = pendingPlan;
+        if (plan == null) {
+            return;
+        }
+        
+        drainStreamedTasks();
+        if (!plan.isDone()) {
+            return;
+        }
+        // The listener runs before the future completes, so this picks up any task that raced the check above
+        drainStreamedTasks();
+        pendingPlan = null;
+        streamedTasks = null;
+        
+        Throwable failure = plan.isCompletedExceptionally() ? plan.handle((result, error) -> error).join() : null;
+        if (failure != null && failure.getCause() instanceof LLMUnavailableException) {
+            // Сервер модели недоступен и запасного плана нет - отвечаем сразу, а не после таймаута
+            if (streamedTaskCount == 0) {
+                sendToGUI(crafto.getCraftoName(),
+                    "My AI is unavailable right now. Simple commands like \"mine 10 iron\" or \"follow me\" still work.");
+            }
+            return;
+        }
+        ResponseParser.ParsedResponse response = failure != null ? null : plan.join();
+        applyPlan(response, streamedElements);
+    }
+    
+    private void drainStreamedTasks() {
+        Queue<StreamedTask> stream = streamedTasks;
+        if (stream == null) {
+            return;
+        }
+        
+        StreamedTask streamed;
+        while ((streamed = stream.poll()) != null) {
+            if (streamedTaskCount == 0) {
+                CraftoMod.LOGGER.info("Crafto '{}' starting first streamed task before plan is complete: {}",
+                    crafto.getCraftoName(), streamed.task);
+            }
+            taskQueue.offer(streamed.task);
+            streamedTaskCount++;
+            streamedElements = streamed.elementIndex + 1;
+        }
+    }
+    
+    private void applyPlan(ResponseParser.ParsedResponse response) {
+        applyPlan(response, 0);
+    }
+    
+    /**
+     * @param streamedElements number of leading "tasks" elements the stream already went through; their
+     *                         tasks are in the queue, were skipped as unparseable or invalid, or were held
+     *                         back as non-build tasks that the build filter drops from this plan anyway
+     */
+    private void applyPlan(ResponseParser.ParsedResponse response, int streamedElements) {
+        if (response == null) {
+            if (streamedElements == 0) {
                 sendToGUI(crafto.getCraftoName(), "I couldn't understand that command.");
-                return;
             }
+            return;
+        }
 
-            currentGoal = response.getPlan();
-            crafto.getMemory().setCurrentGoal(currentGoal);
-            
+        currentGoal = response.getPlan();
+        crafto.getMemory().setCurrentGoal(currentGoal);
+        
+        List<Task> tasks = response.getTasks();
+        if (streamedElements == 0) {
             taskQueue.clear();
-            taskQueue.addAll(response.getTasks());
-            
-            // Send response to GUI pane only
-            if (CraftoConfig.ENABLE_CHAT_RESPONSES.get()) {
-                sendToGUI(crafto.getCraftoName(), "Okay! " + currentGoal);
+            taskQueue.addAll(tasks);
+        } else {
+            // Сопоставляем по номеру элемента, а не по числу задач: стрим мог пропустить битый элемент
+            for (int i = 0; i < tasks.size(); i++) {
+                if (response.getElementIndex(i) >= streamedElements) {
+                    taskQueue.offer(tasks.get(i));
+                }
             }
-        } catch (NoClassDefFoundError e) {
-            CraftoMod.LOGGER.error("Failed to initialize AI components", e);
-            sendToGUI(crafto.getCraftoName(), "Sorry, I'm having trouble with my AI systems!");
+        }
+        
+        // Send response to GUI pane only
+        if (CraftoConfig.ENABLE_CHAT_RESPONSES.get()) {
+            sendToGUI(crafto.getCraftoName(), "Okay! " + currentGoal);
         }
         
         CraftoMod.LOGGER.info("Crafto '{}' queued {} tasks", crafto.getCraftoName(), taskQueue.size());
     }
     
+    private void cancelPendingPlan() {
+        CompletableFuture<ResponseParser.ParsedResponse> plan = pendingPlan;
+        if (plan != null) {
+            // Отмена доходит до очереди LLM: устаревший запрос не займёт слот и не встанет перед новым
+            plan.cancel(false);
+            pendingPlan = null;
+        }
+        streamedTasks = null;
+    }
+    
     /**
      * Send a message to the GUI pane (client-side only, no chat spam)
      */
@@ -117,17 +303,27 @@ public class ActionExecutor {
         }
     }
 
-    public void tick() {
-        ticksSinceLastAction++;
+    /**
+     * @param elapsedTicks game ticks since the previous call: 1 at full rate, more when the agent is
+     *                     ticked less often ({@link ActivityLevel#REDUCED}) or was deferred by the tick budget
+     */
+    public void tick(int elapsedTicks) {
+        int previousTicks = ticksSinceLastAction;
+        ticksSinceLastAction += elapsedTicks;
+        
+        drainCommands();
+        pollPendingPlan();
         
         // PRIORITY: Check for player defense needs (every 10 ticks = 0.5 seconds)
-        if (ticksSinceLastAction % 10 == 0) {
+        // Вне FULL игрока в радиусе защиты нет - сканировать сущности незачем.
+        // Фаза по игровому времени: проверки всех агентов попадают в один снимок CombatEntityIndex
+        if (activityLevel == ActivityLevel.FULL && CombatEntityIndex.isScanTick(crafto.level(), 10, elapsedTicks)) {
             checkPlayerDefense();
         }
         
         // Optimize: Only process every few ticks when idle to reduce CPU load
-        if (currentAction == null && taskQueue.isEmpty() && currentGoal == null) {
-            if (ticksSinceLastAction % 40 != 0) { // Only check every 2 seconds when idle
+        if (currentAction == null && taskQueue.isEmpty() && currentGoal == null && pendingPlan == null) {
+            if (!passed(previousTicks, 40)) { // Only check every 2 seconds when idle
                 return;
             }
         }
@@ -145,16 +341,17 @@ public class ActionExecutor {
                     if (CraftoConfig.ENABLE_CHAT_RESPONSES.get()) {
                         sendToGUI(crafto.getCraftoName(), "Problem: " + result.getMessage());
                     }
+                    replan(result);
                 }
                 
                 currentAction = null;
             } else {
                 // Reduce logging frequency for performance
-                if (ticksSinceLastAction % 200 == 0) { // Every 10 seconds instead of 5
+                if (passed(previousTicks, 200)) { // Every 10 seconds instead of 5
                     CraftoMod.LOGGER.info("Crafto '{}' - Ticking action: {}", 
                         crafto.getCraftoName(), currentAction.getDescription());
                 }
-                currentAction.tick();
+                currentAction.tick(elapsedTicks);
                 return;
             }
         }
@@ -187,11 +384,18 @@ public class ActionExecutor {
         }
         
         // Periodic cache cleanup (every 5 minutes)
-        if (ticksSinceLastAction % 6000 == 0) {
+        if (passed(previousTicks, 6000)) {
             // Очистка кэша команд отключена для упрощения
         }
     }
 
+    /**
+     * @return whether ticksSinceLastAction stepped onto or over a multiple of {@code period} in this tick
+     */
+    private boolean passed(int previousTicks, int period) {
+        return ticksSinceLastAction / period != previousTicks / period;
+    }
+
     private void executeTask(Task task) {
         CraftoMod.LOGGER.info("Crafto '{}' executing task: {} (action type: {})", 
             crafto.getCraftoName(), task, task.getAction());
@@ -206,6 +410,12 @@ public class ActionExecutor {
         CraftoMod.LOGGER.info("Created action: {} - starting now...", currentAction.getClass().getSimpleName());
         currentAction.start();
         CraftoMod.LOGGER.info("Action started! Is complete: {}", currentAction.isComplete());
+        
+        if (commandReceivedNanos != 0) {
+            LatencyTracker.getInstance().record(crafto.getCraftoName(), LatencyTracker.Stage.COMMAND_TO_ACTION,
+                System.nanoTime() - commandReceivedNanos);
+            commandReceivedNanos = 0;
+        }
     }
 
     private BaseAction createAction(Task task) {
@@ -278,13 +488,13 @@ public class ActionExecutor {
      */
     private net.minecraft.world.entity.player.Player findNearestPlayer() {
         net.minecraft.world.phys.AABB searchBox = crafto.getBoundingBox().inflate(20.0); // 20 блоков радиус
-        java.util.List<net.minecraft.world.entity.Entity> entities = crafto.level().getEntities(crafto, searchBox);
         
         net.minecraft.world.entity.player.Player nearest = null;
         double nearestDistance = Double.MAX_VALUE;
         
-        for (net.minecraft.world.entity.Entity entity : entities) {
-            if (entity instanceof net.minecraft.world.entity.player.Player player) {
+        // Список игроков измерения вместо обхода секций сущностей
+        for (net.minecraft.world.entity.player.Player player : crafto.level().players()) {
+            if (player.getBoundingBox().intersects(searchBox)) {
                 double distance = crafto.distanceTo(player);
                 if (distance < nearestDistance) {
                     nearest = player;
@@ -297,6 +507,7 @@ public class ActionExecutor {
     }
 
     public void stopCurrentAction() {
+        commandInbox.clear();
         if (currentAction != null) {
             currentAction.cancel();
             currentAction = null;
@@ -305,13 +516,35 @@ public class ActionExecutor {
             idleFollowAction.cancel();
             idleFollowAction = null;
         }
+        cancelPendingPlan();
         taskQueue.clear();
         currentGoal = null;
+        lastCommand = null;
+        commandReceivedNanos = 0;
     }
 
     public boolean isExecuting() {
         return currentAction != null || !taskQueue.isEmpty();
     }
+    
+    /**
+     * @return whether commands are waiting for the next tick; such an agent is ticked even when dormant
+     */
+    public boolean hasQueuedCommands() {
+        return !commandInbox.isEmpty();
+    }
+
+    public ActivityLevel getActivityLevel() {
+        return activityLevel;
+    }
+
+    public void setActivityLevel(ActivityLevel activityLevel) {
+        this.activityLevel = activityLevel;
+    }
+    
+    public boolean isPlanning() {
+        return pendingPlan != null;
+    }
 
     public String getCurrentGoal() {
         return currentGoal;
@@ -0,0 +1,147 @@
+package com.crafto.ai.action;
+
+import com.crafto.ai.entity.CraftoEntity;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.util.Mth;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.AABB;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-level, per-tick snapshot of the living entities Craftos may fight (everything except players
+ * and Craftos). A query reads one region from the level - its box grown by a few blocks and snapped
+ * to the 16-block section grid, in all three axes - and every further query that tick whose box fits
+ * in an already read region is answered from it. Agents fighting in the same area thus share one
+ * entity-section walk per tick, as long as they scan on the same ticks: {@link #isScanTick} puts
+ * periodic scans on game-time phases instead of each action's own tick counter.
+ *
+ * <p>Not only hostile mobs are indexed: "kill"/"attack" also accept passive targets such as "cow".
+ * Server thread only; actions run after the world tick, so positions do not change within a tick.
+ */
+public class CombatEntityIndex {
+    private static final Map<ResourceKey<Level>, CombatEntityIndex> INDEXES = new HashMap<>();
+    private static final int GRID = 16;  // сетка секций: регионы соседних агентов чаще совпадают
+    private static final int SLACK = 8;  // запас вокруг запроса - агенту в паре блоков хватит того же региона
+
+    private final Level level;
+    private final LongSupplier clock;
+    private final Function<AABB, List<LivingEntity>> lookup;
+    private final List<Region> regions = new ArrayList<>();
+    private long gameTime;
+    private long levelQueries;
+
+    private record Region(AABB bounds, List<LivingEntity> entities) {
+    }
+
+    private CombatEntityIndex(Level level) {
+        this(level, level::getGameTime, box -> level.getEntitiesOfClass(LivingEntity.class, box,
+            entity -> !(entity instanceof Player) && !(entity instanceof CraftoEntity)));
+    }
+
+    /**
+     * @param clock  game time of the level
+     * @param lookup reads the indexed entities intersecting a box from the level
+     */
+    CombatEntityIndex(Level level, LongSupplier clock, Function<AABB, List<LivingEntity>> lookup) {
+        this.level = level;
+        this.clock = clock;
+        this.lookup = lookup;
+        this.gameTime = clock.getAsLong();
+    }
+
+    /**
+     * @return the index of the level for the current tick
+     */
+    public static CombatEntityIndex get(Level level) {
+        CombatEntityIndex index = INDEXES.get(level.dimension());
+        if (index == null || index.level != level) {
+            index = new CombatEntityIndex(level);
+            INDEXES.put(level.dimension(), index);
+        }
+        return index.forCurrentTick();
+    }
+
+    /**
+     * Drops all snapshots, e.g. when the server stops and its levels go away.
+     */
+    public static void clear() {
+        INDEXES.clear();
+    }
+
+    /**
+     * Replacement for {@code reached(ticksRunning, period)} for entity scans: fires on the same game
+     * ticks for every agent, so their scans land in one snapshot.
+     *
+     * @param elapsedTicks game ticks since the action's previous tick
+     */
+    public static boolean isScanTick(Level level, int period, int elapsedTicks) {
+        long time = level.getGameTime();
+        return time / period != (time - elapsedTicks) / period;
+    }
+
+    CombatEntityIndex forCurrentTick() {
+        long now = clock.getAsLong();
+        if (gameTime != now) {
+            regions.clear();
+            gameTime = now;
+        }
+        return this;
+    }
+
+    /**
+     * @return indexed entities whose bounding box intersects {@code box}
+     */
+    public List<LivingEntity> getEntities(AABB box) {
+        Region region = null;
+        for (Region candidate : regions) {
+            if (contains(candidate.bounds, box)) {
+                region = candidate;
+                break;
+            }
+        }
+        if (region == null) {
+            // Всё, что пересекает box, пересекает и объемлющий его регион - фильтр по позиции не нужен
+            AABB bounds = new AABB(snapDown(box.minX), snapDown(box.minY), snapDown(box.minZ),
+                snapUp(box.maxX), snapUp(box.maxY), snapUp(box.maxZ));
+            region = new Region(bounds, lookup.apply(bounds));
+            regions.add(region);
+            levelQueries++;
+        }
+
+        List<LivingEntity> result = new ArrayList<>();
+        for (LivingEntity entity : region.entities) {
+            if (entity.getBoundingBox().intersects(box)) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return entity queries sent to the level since this index was created
+     */
+    public long getLevelQueries() {
+        return levelQueries;
+    }
+
+    private static boolean contains(AABB outer, AABB inner) {
+        return outer.minX <= inner.minX && outer.minY <= inner.minY && outer.minZ <= inner.minZ
+            && outer.maxX >= inner.maxX && outer.maxY >= inner.maxY && outer.maxZ >= inner.maxZ;
+    }
+
+    private static double snapDown(double coordinate) {
+        return Math.floorDiv(Mth.floor(coordinate) - SLACK, GRID) * GRID;
+    }
+
+    private static double snapUp(double coordinate) {
+        return -Math.floorDiv(-(Mth.ceil(coordinate) + SLACK), GRID) * GRID;
+    }
+}
@@ -0,0 +1,151 @@
+package com.crafto.ai.action;
+
+import com.crafto.ai.CraftoMod;
+import com.crafto.ai.config.CraftoConfig;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.MobCategory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Threat classification of entity types, computed once per server start (and {@code /reload})
+ * instead of matching type names for every candidate entity on every scan. A type is hostile if it
+ * spawns in the monster category or is in one of the {@code hostileEntityTags}; lookups are an
+ * array index by registry id. Target names from commands ("zombie", "скелетов", "mobs") are
+ * resolved to a set of types once, when an action starts.
+ */
+public class ThreatTable {
+    private static ThreatTable instance;
+
+    // Слова команды, означающие "любой враждебный моб"
+    private static final List<String> ANY_HOSTILE_WORDS = List.of("mob", "hostile", "monster", "any", "мобов", "монстр");
+    // Слова цели (EN/RU) -> части id типов, которые под неё подходят
+    private static final Map<List<String>, List<String>> ALIASES = new LinkedHashMap<>();
+
+    static {
+        ALIASES.put(List.of("zombie", "зомби"), List.of("zombie", "husk", "drowned"));
+        ALIASES.put(List.of("skeleton", "скелет"), List.of("skeleton", "stray"));
+        ALIASES.put(List.of("spider", "паук"), List.of("spider"));
+        ALIASES.put(List.of("creeper", "крипер"), List.of("creeper"));
+        ALIASES.put(List.of("enderman", "эндермен"), List.of("enderman"));
+        ALIASES.put(List.of("witch", "ведьм"), List.of("witch"));
+        ALIASES.put(List.of("slime", "слизн"), List.of("slime"));
+        ALIASES.put(List.of("pillager", "пиллагер"), List.of("pillager", "vindicator", "evoker", "ravager"));
+    }
+
+    private final boolean[] hostile;
+
+    public static synchronized ThreatTable getInstance() {
+        if (instance == null) {
+            instance = new ThreatTable();
+        }
+        return instance;
+    }
+
+    /**
+     * Forgets the table so the next lookup rebuilds it, e.g. after tags were reloaded.
+     */
+    public static synchronized void invalidate() {
+        instance = null;
+    }
+
+    private ThreatTable() {
+        List<TagKey<EntityType<?>>> tags = new ArrayList<>();
+        for (String tag : CraftoConfig.HOSTILE_ENTITY_TAGS.get()) {
+            ResourceLocation location = ResourceLocation.tryParse(tag);
+            if (location != null) {
+                tags.add(TagKey.create(Registries.ENTITY_TYPE, location));
+            } else {
+                CraftoMod.LOGGER.warn("Ignoring invalid hostile entity tag '{}'", tag);
+            }
+        }
+
+        hostile = new boolean[BuiltInRegistries.ENTITY_TYPE.size()];
+        int count = 0;
+        for (EntityType<?> type : BuiltInRegistries.ENTITY_TYPE) {
+            boolean isHostile = type.getCategory() == MobCategory.MONSTER;
+            for (TagKey<EntityType<?>> tag : tags) {
+                isHostile |= type.is(tag);
+            }
+            if (isHostile) {
+                hostile[BuiltInRegistries.ENTITY_TYPE.getId(type)] = true;
+                count++;
+            }
+        }
+        CraftoMod.LOGGER.info("Threat table built: {} of {} entity types are hostile", count, hostile.length);
+    }
+
+    public boolean isHostile(EntityType<?> type) {
+        int id = BuiltInRegistries.ENTITY_TYPE.getId(type);
+        return id >= 0 && id < hostile.length && hostile[id];
+    }
+
+    /**
+     * Resolves a command's target name; call once when the action starts and keep the result.
+     */
+    public Target resolve(String targetName) {
+        String target = targetName.toLowerCase(Locale.ROOT);
+        for (String word : ANY_HOSTILE_WORDS) {
+            if (target.contains(word)) {
+                return new Target(this, null);
+            }
+        }
+
+        List<String> fragments = List.of(target);
+        for (Map.Entry<List<String>, List<String>> alias : ALIASES.entrySet()) {
+            if (alias.getKey().stream().anyMatch(target::contains)) {
+                fragments = alias.getValue();
+                break;
+            }
+        }
+        BitSet types = new BitSet(hostile.length);
+        for (EntityType<?> type : BuiltInRegistries.ENTITY_TYPE) {
+            String path = BuiltInRegistries.ENTITY_TYPE.getKey(type).getPath();
+            if (fragments.stream().anyMatch(path::contains)) {
+                types.set(BuiltInRegistries.ENTITY_TYPE.getId(type));
+            }
+        }
+        return new Target(this, types);
+    }
+
+    /**
+     * The entity types one command target covers.
+     */
+    public static final class Target {
+        private final ThreatTable table;
+        private final BitSet types;  // null - любой враждебный тип
+
+        private Target(ThreatTable table, BitSet types) {
+            this.table = table;
+            this.types = types;
+        }
+
+        public boolean isAnyHostile() {
+            return types == null;
+        }
+
+        public boolean matches(EntityType<?> type) {
+            if (types == null) {
+                return table.isHostile(type);
+            }
+            int id = BuiltInRegistries.ENTITY_TYPE.getId(type);
+            return id >= 0 && types.get(id);
+        }
+
+        /**
+         * @return how many types the target covers, -1 for any hostile type
+         */
+        public int getTypeCount() {
+            return types == null ? -1 : types.cardinality();
+        }
+    }
+}
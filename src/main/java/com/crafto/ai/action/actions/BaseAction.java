@@ -10,6 +10,8 @@ public abstract class BaseAction {
     protected ActionResult result;
     protected boolean started = false;
     protected boolean cancelled = false;
+    // Сколько игровых тиков прошло с прошлого onTick(): больше 1, когда агент тикает реже (далеко от игроков)
+    protected int tickDelta = 1;
 
     public BaseAction(CraftoEntity crafto, Task task) {
         this.crafto = crafto;
@@ -23,10 +25,26 @@ public abstract class BaseAction {
     }
 
     public void tick() {
+        tick(1);
+    }
+
+    /**
+     * @param elapsedTicks game ticks since the previous call; counters in onTick() advance by {@link #tickDelta}
+     */
+    public void tick(int elapsedTicks) {
         if (!started || isComplete()) return;
+        tickDelta = elapsedTicks;
         onTick();
     }
 
+    /**
+     * Replacement for {@code counter % period == 0} that still fires when the counter advanced by
+     * more than one tick and stepped over the multiple.
+     */
+    protected boolean reached(int counter, int period) {
+        return counter / period != (counter - tickDelta) / period;
+    }
+
     public void cancel() {
         cancelled = true;
         result = ActionResult.failure("Action cancelled");
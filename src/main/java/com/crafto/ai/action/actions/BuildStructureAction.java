@@ -4,6 +4,7 @@ import com.crafto.ai.CraftoMod;
 import com.crafto.ai.action.ActionResult;
 import com.crafto.ai.action.CollaborativeBuildManager;
 import com.crafto.ai.action.Task;
+import com.crafto.ai.entity.ActivityLevel;
 import com.crafto.ai.entity.CraftoEntity;
 import com.crafto.ai.inventory.InventoryManager;
 import com.crafto.ai.memory.StructureRegistry;
@@ -45,6 +46,8 @@ public class BuildStructureAction extends BaseAction {
     private static final int MAX_TICKS = 120000;
     private static final int MAX_IDLE_TICKS = 200; // 10 seconds at 20 TPS
     private static final int BLOCKS_PER_TICK = 1;
+    // Больше за один вызов не ставим: отложенный агент догоняет до 20 тиков, и столько блоков разом - заметный пик
+    private static final int MAX_BLOCKS_PER_CALL = BLOCKS_PER_TICK * ActivityLevel.REDUCED.getTickInterval();
     private static final double BUILD_SPEED_MULTIPLIER = 1.5;
 
     public BuildStructureAction(CraftoEntity crafto, Task task) {
@@ -217,7 +220,7 @@ public class BuildStructureAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksRunning++;
+        ticksRunning += tickDelta;
         
         if (ticksRunning > MAX_TICKS) {
             crafto.setFlying(false); // Disable flying on timeout
@@ -233,14 +236,17 @@ public class BuildStructureAction extends BaseAction {
                 return;
             }
             
-            for (int i = 0; i < BLOCKS_PER_TICK; i++) {
+            // На пониженной частоте тиков ставим пропущенные блоки разом - стройка идёт с той же скоростью.
+            // Сверх MAX_BLOCKS_PER_CALL не догоняем: после задержки стройка лишь немного отстаёт
+            int placements = Math.min(BLOCKS_PER_TICK * tickDelta, MAX_BLOCKS_PER_CALL);
+            for (int i = 0; i < placements; i++) {
                 CollaborativeBuildManager.BlockPlacement placement = 
                     CollaborativeBuildManager.getNextBlock(collaborativeBuild, crafto.getCraftoName());
                 
                 if (placement == null) {
                     idleTicks++;
                     
-                    if (ticksRunning % 20 == 0) {
+                    if (reached(ticksRunning, 20)) {
                         CraftoMod.LOGGER.info("Crafto '{}' has no more blocks to place! Build {}% complete", 
                             crafto.getCraftoName(), collaborativeBuild.getProgressPercentage());
                     }
@@ -278,7 +284,7 @@ public class BuildStructureAction extends BaseAction {
                             crafto.getCraftoName(), placement.block);
                     } else {
                         // Если пополнение не помогло, пропускаем этот блок
-                        if (ticksRunning % 40 == 0) {
+                        if (reached(ticksRunning, 40)) {
                             CraftoMod.LOGGER.warn("Crafto '{}' cannot place {} - no blocks available", 
                                 crafto.getCraftoName(), placement.block);
                         }
@@ -328,11 +334,11 @@ public class BuildStructureAction extends BaseAction {
             }
             
             // Периодически проверяем и пополняем инвентарь
-            if (ticksRunning % 60 == 0) { // Каждые 3 секунды
+            if (reached(ticksRunning, 60)) { // Каждые 3 секунды
                 InventoryManager.refillBuildingMaterials(crafto, buildMaterials);
             }
             
-            if (ticksRunning % 100 == 0 && collaborativeBuild.getBlocksPlaced() > 0) {
+            if (reached(ticksRunning, 100) && collaborativeBuild.getBlocksPlaced() > 0) {
                 int percentComplete = collaborativeBuild.getProgressPercentage();
                 CraftoMod.LOGGER.info("{} build progress: {}/{} ({}%) - {} Craftos working", 
                     structureType, 
@@ -342,7 +348,7 @@ public class BuildStructureAction extends BaseAction {
                     collaborativeBuild.participatingCraftos.size());
                 
                 // Логируем статистику инвентаря для отладки
-                if (ticksRunning % 200 == 0) {
+                if (reached(ticksRunning, 200)) {
                     CraftoMod.LOGGER.debug("Crafto '{}' {}", 
                         crafto.getCraftoName(), InventoryManager.getInventoryStats(crafto));
                 }
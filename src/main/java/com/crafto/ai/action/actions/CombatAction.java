@@ -1,11 +1,11 @@
 package com.crafto.ai.action.actions;
 
 import com.crafto.ai.action.ActionResult;
+import com.crafto.ai.action.CombatEntityIndex;
+import com.crafto.ai.action.ThreatTable;
 import com.crafto.ai.action.Task;
 import com.crafto.ai.entity.CraftoEntity;
-import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.LivingEntity;
-import net.minecraft.world.entity.monster.Monster;
 import net.minecraft.world.phys.AABB;
 
 import java.util.List;
@@ -13,6 +13,7 @@ import java.util.List;
 public class CombatAction extends BaseAction {
     private String targetType;
     private LivingEntity target;
+    private ThreatTable.Target targetTypes;  // типы, подходящие под targetType
     private int ticksRunning;
     private int ticksStuck;
     private double lastX, lastZ;
@@ -26,6 +27,7 @@ public class CombatAction extends BaseAction {
     @Override
     protected void onStart() {
         targetType = task.getStringParameter("target");
+        targetTypes = ThreatTable.getInstance().resolve(targetType != null ? targetType : "hostile");
         ticksRunning = 0;
         ticksStuck = 0;
         
@@ -43,7 +45,7 @@ public class CombatAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksRunning++;
+        ticksRunning += tickDelta;
         
         if (ticksRunning > MAX_TICKS) {
             // Combat complete - clean up and disable invulnerability
@@ -58,7 +60,7 @@ public class CombatAction extends BaseAction {
         
         // Re-search for targets periodically or if current target is invalid
         if (target == null || !target.isAlive() || target.isRemoved()) {
-            if (ticksRunning % 20 == 0) {
+            if (CombatEntityIndex.isScanTick(crafto.level(), 20, tickDelta)) {
                 findTarget();
             }
             if (target == null) {
@@ -74,7 +76,7 @@ public class CombatAction extends BaseAction {
         double currentX = crafto.getX();
         double currentZ = crafto.getZ();
         if (Math.abs(currentX - lastX) < 0.1 && Math.abs(currentZ - lastZ) < 0.1) {
-            ticksStuck++;
+            ticksStuck += tickDelta;
             
             if (ticksStuck > 40 && distance > ATTACK_RANGE) {
                 // Teleport 4 blocks closer to target
@@ -106,12 +108,12 @@ public class CombatAction extends BaseAction {
             crafto.swing(net.minecraft.world.InteractionHand.MAIN_HAND, true);
             
             // Alternative damage method if primary doesn't work
-            if (!attacked || ticksRunning % 2 == 0) {
+            if (!attacked || reached(ticksRunning, 2)) {
                 target.hurt(crafto.damageSources().mobAttack(crafto), 8.0f);
             }
             
             // Additional attacks for faster kills
-            if (ticksRunning % 5 == 0) {
+            if (reached(ticksRunning, 5)) {
                 crafto.doHurtTarget(target);
             }
             
@@ -140,13 +142,13 @@ public class CombatAction extends BaseAction {
 
     private void findTarget() {
         AABB searchBox = crafto.getBoundingBox().inflate(32.0);
-        List<Entity> entities = crafto.level().getEntities(crafto, searchBox);
+        List<LivingEntity> entities = CombatEntityIndex.get(crafto.level()).getEntities(searchBox);
         
         LivingEntity nearest = null;
         double nearestDistance = Double.MAX_VALUE;
         
-        for (Entity entity : entities) {
-            if (entity instanceof LivingEntity living && isValidTarget(living)) {
+        for (LivingEntity living : entities) {
+            if (isValidTarget(living)) {
                 double distance = crafto.distanceTo(living);
                 if (distance < nearestDistance) {
                     nearest = living;
@@ -172,16 +174,6 @@ public class CombatAction extends BaseAction {
             return false;
         }
         
-        String targetLower = targetType.toLowerCase();
-        
-        // Match ANY hostile mob
-        if (targetLower.contains("mob") || targetLower.contains("hostile") || 
-            targetLower.contains("monster") || targetLower.equals("any")) {
-            return entity instanceof Monster;
-        }
-        
-        // Match specific entity type
-        String entityTypeName = entity.getType().toString().toLowerCase();
-        return entityTypeName.contains(targetLower);
+        return targetTypes.matches(entity.getType());
     }
 }
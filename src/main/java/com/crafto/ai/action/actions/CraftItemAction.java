@@ -29,7 +29,7 @@ public class CraftItemAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksRunning++;
+        ticksRunning += tickDelta;
     }
 
     @Override
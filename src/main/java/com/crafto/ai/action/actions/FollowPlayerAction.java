@@ -31,7 +31,7 @@ public class FollowPlayerAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksRunning++;
+        ticksRunning += tickDelta;
         
         if (ticksRunning > MAX_TICKS) {
             result = ActionResult.success("Stopped following");
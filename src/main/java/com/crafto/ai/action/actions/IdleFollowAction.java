@@ -38,7 +38,7 @@ public class IdleFollowAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksSincePlayerSearch++;
+        ticksSincePlayerSearch += tickDelta;
         
         // Periodically search for a better/closer player
         if (ticksSincePlayerSearch >= PLAYER_SEARCH_INTERVAL) {
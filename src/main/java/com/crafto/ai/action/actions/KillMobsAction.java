@@ -2,11 +2,11 @@ package com.crafto.ai.action.actions;
 
 import com.crafto.ai.CraftoMod;
 import com.crafto.ai.action.ActionResult;
+import com.crafto.ai.action.CombatEntityIndex;
+import com.crafto.ai.action.ThreatTable;
 import com.crafto.ai.action.Task;
 import com.crafto.ai.entity.CraftoEntity;
-import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.LivingEntity;
-import net.minecraft.world.entity.monster.Monster;
 import net.minecraft.world.phys.AABB;
 
 import java.util.List;
@@ -16,6 +16,7 @@ public class KillMobsAction extends BaseAction {
     private int targetCount;
     private int killedCount;
     private LivingEntity currentTarget;
+    private ThreatTable.Target targetTypes;  // типы, подходящие под targetType
     private int ticksRunning;
     private int ticksStuck;
     private int ticksSinceLastKill;
@@ -33,6 +34,7 @@ public class KillMobsAction extends BaseAction {
     @Override
     protected void onStart() {
         targetType = task.getStringParameter("target", "hostile");
+        targetTypes = ThreatTable.getInstance().resolve(targetType);
         targetCount = task.getIntParameter("count", 10);
         killedCount = 0;
         ticksRunning = 0;
@@ -51,8 +53,8 @@ public class KillMobsAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksRunning++;
-        ticksSinceLastKill++;
+        ticksRunning += tickDelta;
+        ticksSinceLastKill += tickDelta;
         
         // Check timeout conditions
         if (ticksRunning > MAX_TICKS) {
@@ -86,7 +88,7 @@ public class KillMobsAction extends BaseAction {
         // Find new target if we don't have one
         if (currentTarget == null) {
             // Search for new target more frequently (every 10 ticks = 0.5 seconds)
-            if (ticksRunning % 10 == 0) {
+            if (CombatEntityIndex.isScanTick(crafto.level(), 10, tickDelta)) {
                 findTarget();
             }
             
@@ -132,7 +134,7 @@ public class KillMobsAction extends BaseAction {
             crafto.swing(net.minecraft.world.InteractionHand.MAIN_HAND, true);
             
             // Alternative damage methods for guaranteed kills
-            if (!attacked || ticksRunning % 2 == 0) {
+            if (!attacked || reached(ticksRunning, 2)) {
                 // Direct damage application with higher damage
                 currentTarget.hurt(crafto.damageSources().mobAttack(crafto), 10.0f);
             }
@@ -150,7 +152,7 @@ public class KillMobsAction extends BaseAction {
                 currentTarget.hurt(crafto.damageSources().mobAttack(crafto), 20.0f);
             }
             
-            if (ticksRunning % 20 == 0) { // Every second
+            if (reached(ticksRunning, 20)) { // Every second
                 CraftoMod.LOGGER.info("Crafto '{}' attacking {} at distance {} (health: {}/{})", 
                     crafto.getCraftoName(), currentTarget.getType().toString(), 
                     (int)distance, (int)currentTarget.getHealth(), (int)currentTarget.getMaxHealth());
@@ -158,7 +160,7 @@ public class KillMobsAction extends BaseAction {
         }
         
         // Progress update every 5 seconds
-        if (ticksRunning % 100 == 0) {
+        if (reached(ticksRunning, 100)) {
             CraftoMod.LOGGER.info("Crafto '{}' mob hunt progress: {}/{} killed", 
                 crafto.getCraftoName(), killedCount, targetCount);
         }
@@ -182,14 +184,14 @@ public class KillMobsAction extends BaseAction {
 
     private void findTarget() {
         AABB searchBox = crafto.getBoundingBox().inflate(SEARCH_RANGE);
-        List<Entity> entities = crafto.level().getEntities(crafto, searchBox);
+        List<LivingEntity> entities = CombatEntityIndex.get(crafto.level()).getEntities(searchBox);
         
         LivingEntity nearest = null;
         double nearestDistance = Double.MAX_VALUE;
         int validTargetsFound = 0;
         
-        for (Entity entity : entities) {
-            if (entity instanceof LivingEntity living && isValidTarget(living)) {
+        for (LivingEntity living : entities) {
+            if (isValidTarget(living)) {
                 validTargetsFound++;
                 double distance = crafto.distanceTo(living);
                 if (distance < nearestDistance) {
@@ -203,7 +205,7 @@ public class KillMobsAction extends BaseAction {
         if (currentTarget != null) {
             CraftoMod.LOGGER.info("Crafto '{}' targeting: {} at {}m (found {} valid targets)", 
                 crafto.getCraftoName(), currentTarget.getType().toString(), (int)nearestDistance, validTargetsFound);
-        } else if (ticksRunning % 100 == 0) { // Log every 5 seconds when no targets
+        } else if (reached(ticksRunning, 100)) { // Log every 5 seconds when no targets
             CraftoMod.LOGGER.info("Crafto '{}' found {} entities, {} valid targets in {}m radius", 
                 crafto.getCraftoName(), entities.size(), validTargetsFound, (int)SEARCH_RANGE);
         }
@@ -219,97 +221,13 @@ public class KillMobsAction extends BaseAction {
             return false;
         }
         
-        String targetLower = targetType.toLowerCase();
-        String entityTypeName = entity.getType().toString().toLowerCase();
-        
-        // Debug logging for target matching - use INFO level to see in logs
-        if (ticksRunning % 200 == 0) { // Every 10 seconds
-            CraftoMod.LOGGER.info("Crafto '{}' checking entity: {} (type: {}) against target: {} (isMonster: {})", 
-                crafto.getCraftoName(), entity.getName().getString(), entityTypeName, targetLower, 
-                entity instanceof Monster);
-        }
-        
-        // Match ANY hostile mob
-        if (targetLower.contains("mob") || targetLower.contains("hostile") || 
-            targetLower.contains("monster") || targetLower.equals("any") || targetLower.contains("мобов")) {
-            
-            // Primary check: Monster class
-            boolean isMonster = entity instanceof Monster;
-            
-            // Secondary check: Common hostile mob types by name
-            boolean isHostileByName = entityTypeName.contains("zombie") || 
-                                    entityTypeName.contains("skeleton") || 
-                                    entityTypeName.contains("spider") || 
-                                    entityTypeName.contains("creeper") || 
-                                    entityTypeName.contains("enderman") || 
-                                    entityTypeName.contains("witch") || 
-                                    entityTypeName.contains("slime") ||
-                                    entityTypeName.contains("phantom") ||
-                                    entityTypeName.contains("blaze") ||
-                                    entityTypeName.contains("ghast") ||
-                                    entityTypeName.contains("pillager") ||
-                                    entityTypeName.contains("vindicator") ||
-                                    entityTypeName.contains("evoker") ||
-                                    entityTypeName.contains("ravager") ||
-                                    entityTypeName.contains("vex") ||
-                                    entityTypeName.contains("husk") ||
-                                    entityTypeName.contains("stray") ||
-                                    entityTypeName.contains("drowned");
-            
-            // Tertiary check: Mob category (aggressive mobs)
-            boolean isAggressive = false;
-            try {
-                // Check if mob is naturally aggressive or has a target
-                if (entity instanceof net.minecraft.world.entity.Mob mob) {
-                    isAggressive = mob.getTarget() != null || mob.isAggressive();
-                }
-            } catch (Exception e) {
-                // Ignore reflection errors
-            }
-            
-            // Quaternary check: Health-based detection (most hostile mobs have specific health ranges)
-            boolean hasHostileHealth = entity.getMaxHealth() >= 16.0f && entity.getMaxHealth() <= 100.0f;
-            
-            boolean isValidTarget = isMonster || isHostileByName || isAggressive || hasHostileHealth;
-            
-            if (ticksRunning % 200 == 0) { // Log every 10 seconds for debugging
-                CraftoMod.LOGGER.info("Crafto '{}' checking hostile mob: {} (type: {}) isMonster: {} isHostileByName: {} isAggressive: {} hasHostileHealth: {} -> VALID: {}", 
-                    crafto.getCraftoName(), entity.getName().getString(), entityTypeName, 
-                    isMonster, isHostileByName, isAggressive, hasHostileHealth, isValidTarget);
-            }
-            
-            return isValidTarget;
-        }
-        
-        // Match specific entity types
-        // Common mob name mappings
-        if (targetLower.contains("zombie") || targetLower.contains("зомби")) {
-            return entityTypeName.contains("zombie") || entityTypeName.contains("husk") || entityTypeName.contains("drowned");
-        }
-        if (targetLower.contains("skeleton") || targetLower.contains("скелет")) {
-            return entityTypeName.contains("skeleton") || entityTypeName.contains("stray");
-        }
-        if (targetLower.contains("spider") || targetLower.contains("паук")) {
-            return entityTypeName.contains("spider");
-        }
-        if (targetLower.contains("creeper") || targetLower.contains("крипер")) {
-            return entityTypeName.contains("creeper");
-        }
-        if (targetLower.contains("enderman") || targetLower.contains("эндермен")) {
-            return entityTypeName.contains("enderman");
-        }
-        if (targetLower.contains("witch") || targetLower.contains("ведьм")) {
-            return entityTypeName.contains("witch");
-        }
-        if (targetLower.contains("slime") || targetLower.contains("слизн")) {
-            return entityTypeName.contains("slime");
-        }
-        if (targetLower.contains("pillager") || targetLower.contains("пиллагер")) {
-            return entityTypeName.contains("pillager") || entityTypeName.contains("vindicator") || 
-                   entityTypeName.contains("evoker") || entityTypeName.contains("ravager");
+        if (targetTypes.matches(entity.getType())) {
+            return true;
         }
         
-        return entityTypeName.contains(targetLower);
+        // "Любой моб" - ещё и те, кто сейчас агрессивен, хоть их тип и не враждебный
+        return targetTypes.isAnyHostile() && entity instanceof net.minecraft.world.entity.Mob mob
+            && (mob.getTarget() != null || mob.isAggressive());
     }
 
     private void handleStuckDetection(double distance) {
@@ -317,7 +235,7 @@ public class KillMobsAction extends BaseAction {
         double currentZ = crafto.getZ();
         
         if (Math.abs(currentX - lastX) < 0.1 && Math.abs(currentZ - lastZ) < 0.1) {
-            ticksStuck++;
+            ticksStuck += tickDelta;
             
             if (ticksStuck > 40 && distance > ATTACK_RANGE) {
                 // Teleport closer to target if stuck
@@ -357,7 +275,7 @@ public class KillMobsAction extends BaseAction {
             
             crafto.getNavigation().moveTo(targetX, targetY, targetZ, 1.5);
             
-            if (ticksRunning % 100 == 0) { // Every 5 seconds
+            if (reached(ticksRunning, 100)) { // Every 5 seconds
                 CraftoMod.LOGGER.info("Crafto '{}' wandering to find mobs... ({}/{} killed)", 
                     crafto.getCraftoName(), killedCount, targetCount);
             }
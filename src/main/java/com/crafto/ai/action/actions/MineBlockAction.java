@@ -135,9 +135,9 @@ public class MineBlockAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksRunning++;
-        ticksSinceLastTorch++;
-        ticksSinceLastMine++;
+        ticksRunning += tickDelta;
+        ticksSinceLastTorch += tickDelta;
+        ticksSinceLastMine += tickDelta;
         
         if (ticksRunning > MAX_TICKS) {
             crafto.setFlying(false);
@@ -28,7 +28,7 @@ public class PathfindAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksRunning++;
+        ticksRunning += tickDelta;
         
         if (crafto.blockPosition().closerThan(targetPos, 2.0)) {
             result = ActionResult.success("Reached target position");
@@ -41,7 +41,7 @@ public class PlaceBlockAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksRunning++;
+        ticksRunning += tickDelta;
         
         if (ticksRunning > MAX_TICKS) {
             result = ActionResult.failure("Place block timeout");
@@ -2,11 +2,12 @@ package com.crafto.ai.action.actions;
 
 import com.crafto.ai.CraftoMod;
 import com.crafto.ai.action.ActionResult;
+import com.crafto.ai.action.CombatEntityIndex;
+import com.crafto.ai.action.ThreatTable;
 import com.crafto.ai.action.Task;
 import com.crafto.ai.entity.CraftoEntity;
-import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.LivingEntity;
-import net.minecraft.world.entity.monster.Monster;
+import net.minecraft.world.entity.Mob;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.phys.AABB;
 
@@ -18,6 +19,7 @@ import java.util.List;
 public class PlayerDefenseAction extends BaseAction {
     private Player protectedPlayer;
     private LivingEntity currentThreat;
+    private ThreatTable threats;  // берётся один раз на действие
     private int ticksRunning;
     private int ticksWithoutThreat;
     private int ticksStuck;
@@ -42,6 +44,7 @@ public class PlayerDefenseAction extends BaseAction {
         ticksRunning = 0;
         ticksWithoutThreat = 0;
         ticksStuck = 0;
+        threats = ThreatTable.getInstance();
         
         // Найти ближайшего игрока если не указан
         if (protectedPlayer == null) {
@@ -66,7 +69,7 @@ public class PlayerDefenseAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksRunning++;
+        ticksRunning += tickDelta;
         
         // Проверяем, жив ли защищаемый игрок
         if (protectedPlayer == null || !protectedPlayer.isAlive() || protectedPlayer.isRemoved()) {
@@ -93,7 +96,7 @@ public class PlayerDefenseAction extends BaseAction {
         if (currentThreat == null) {
             findThreat();
             if (currentThreat == null) {
-                ticksWithoutThreat++;
+                ticksWithoutThreat += tickDelta;
                 
                 // Если долго нет угроз, завершаем защиту
                 if (ticksWithoutThreat > MAX_TICKS_WITHOUT_THREAT) {
@@ -130,7 +133,7 @@ public class PlayerDefenseAction extends BaseAction {
         }
         
         // Логирование каждые 5 секунд
-        if (ticksRunning % 100 == 0) {
+        if (reached(ticksRunning, 100)) {
             CraftoMod.LOGGER.info("Crafto '{}' defending {} from {} (distance: {}m)", 
                 crafto.getCraftoName(), protectedPlayer.getName().getString(),
                 currentThreat != null ? currentThreat.getType().toString() : "no threat",
@@ -161,14 +164,14 @@ public class PlayerDefenseAction extends BaseAction {
         if (protectedPlayer == null) return;
         
         AABB searchBox = protectedPlayer.getBoundingBox().inflate(THREAT_DETECTION_RANGE);
-        List<Entity> entities = crafto.level().getEntities(crafto, searchBox);
+        List<LivingEntity> entities = CombatEntityIndex.get(crafto.level()).getEntities(searchBox);
         
         LivingEntity nearestThreat = null;
         double nearestDistance = Double.MAX_VALUE;
         int threatsFound = 0;
         
-        for (Entity entity : entities) {
-            if (entity instanceof LivingEntity living && isThreatToPlayer(living)) {
+        for (LivingEntity living : entities) {
+            if (isThreatToPlayer(living)) {
                 threatsFound++;
                 double distanceToPlayer = protectedPlayer.distanceTo(living);
                 
@@ -199,31 +202,17 @@ public class PlayerDefenseAction extends BaseAction {
             return false;
         }
         
-        // Основная проверка - враждебные мобы
-        if (entity instanceof Monster) {
+        // Основная проверка - враждебные типы мобов
+        if (threats.isHostile(entity.getType())) {
             return true;
         }
         
         // Дополнительная проверка - мобы, которые атакуют игрока
         if (entity instanceof net.minecraft.world.entity.Mob mob) {
             LivingEntity target = mob.getTarget();
-            if (target instanceof Player) {
-                return true;
-            }
+            return target instanceof Player;
         }
-        
-        // Проверка по типу моба
-        String entityTypeName = entity.getType().toString().toLowerCase();
-        return entityTypeName.contains("zombie") || 
-               entityTypeName.contains("skeleton") || 
-               entityTypeName.contains("spider") || 
-               entityTypeName.contains("creeper") || 
-               entityTypeName.contains("enderman") || 
-               entityTypeName.contains("witch") || 
-               entityTypeName.contains("slime") ||
-               entityTypeName.contains("phantom") ||
-               entityTypeName.contains("blaze") ||
-               entityTypeName.contains("ghast");
+        return false;
     }
     
     private void patrolAroundPlayer() {
@@ -265,7 +254,7 @@ public class PlayerDefenseAction extends BaseAction {
         double currentZ = crafto.getZ();
         
         if (Math.abs(currentX - lastX) < 0.1 && Math.abs(currentZ - lastZ) < 0.1) {
-            ticksStuck++;
+            ticksStuck += tickDelta;
             
             if (ticksStuck > 40 && distanceToThreat > ATTACK_RANGE) {
                 teleportCloserToThreat();
@@ -289,12 +278,12 @@ public class PlayerDefenseAction extends BaseAction {
         crafto.swing(net.minecraft.world.InteractionHand.MAIN_HAND, true);
         
         // Альтернативный метод урона если основной не работает
-        if (!attacked || ticksRunning % 3 == 0) {
+        if (!attacked || reached(ticksRunning, 3)) {
             currentThreat.hurt(crafto.damageSources().mobAttack(crafto), 8.0f);
         }
         
         // Дополнительные атаки для быстрого убийства
-        if (ticksRunning % 5 == 0) {
+        if (reached(ticksRunning, 5)) {
             crafto.doHurtTarget(currentThreat);
         }
     }
@@ -312,13 +301,13 @@ public class PlayerDefenseAction extends BaseAction {
     
     private Player findNearestPlayer() {
         AABB searchBox = crafto.getBoundingBox().inflate(PROTECTION_RANGE);
-        List<Entity> entities = crafto.level().getEntities(crafto, searchBox);
         
         Player nearest = null;
         double nearestDistance = Double.MAX_VALUE;
         
-        for (Entity entity : entities) {
-            if (entity instanceof Player player) {
+        // Игроков в измерении единицы - перебрать их дешевле, чем обходить секции сущностей
+        for (Player player : crafto.level().players()) {
+            if (player.getBoundingBox().intersects(searchBox)) {
                 double distance = crafto.distanceTo(player);
                 if (distance < nearestDistance) {
                     nearest = player;
@@ -337,10 +326,11 @@ public class PlayerDefenseAction extends BaseAction {
         if (player == null || !player.isAlive()) return false;
         
         AABB searchBox = player.getBoundingBox().inflate(THREAT_DETECTION_RANGE);
-        List<Entity> entities = crafto.level().getEntities(crafto, searchBox);
+        List<LivingEntity> entities = CombatEntityIndex.get(crafto.level()).getEntities(searchBox);
         
-        for (Entity entity : entities) {
-            if (entity instanceof Monster monster) {
+        ThreatTable threats = ThreatTable.getInstance();
+        for (LivingEntity entity : entities) {
+            if (entity instanceof Mob monster && threats.isHostile(entity.getType())) {
                 // Проверяем, атакует ли монстр игрока
                 if (monster.getTarget() == player) {
                     return true;
@@ -31,7 +31,7 @@ public class SpawnMobsAction extends BaseAction {
 
     @Override
     protected void onTick() {
-        ticksRunning++;
+        ticksRunning += tickDelta;
         
         if (spawnedCount >= mobCount) {
             result = ActionResult.success("Spawned " + spawnedCount + " test mobs");
@@ -39,7 +39,7 @@ public class SpawnMobsAction extends BaseAction {
         }
         
         // Spawn one mob every 10 ticks
-        if (ticksRunning % 10 == 0 && spawnedCount < mobCount) {
+        if (reached(ticksRunning, 10) && spawnedCount < mobCount) {
             spawnTestMob();
         }
     }
@@ -0,0 +1,124 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.CraftoMod;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker for one LLM endpoint. After {@code failureThreshold} consecutive failures
+ * (connection errors, timeouts, 5xx) the circuit opens and requests are rejected without
+ * touching the network. Once the cooldown passes a single trial request goes through: success
+ * closes the circuit, failure opens it again with a doubled cooldown.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    private static final long BASE_COOLDOWN_MS = 5_000;
+    private static final long MAX_COOLDOWN_MS = 60_000;
+
+    private final String name;
+    private final int failureThreshold;
+    private final LongSupplier clockMillis;
+    private final AtomicLong rejected = new AtomicLong();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long cooldownMs = BASE_COOLDOWN_MS;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(String name) {
+        this(name, DEFAULT_FAILURE_THRESHOLD, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String name, int failureThreshold, LongSupplier clockMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.clockMillis = clockMillis;
+    }
+
+    /**
+     * Must be paired with {@link #recordSuccess()} or {@link #recordFailure()} when it returns true.
+     *
+     * @return true if the request may be sent
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clockMillis.getAsLong() - openedAt >= cooldownMs) {
+                    state = State.HALF_OPEN;
+                    trialInFlight = true;
+                    CraftoMod.LOGGER.info("Circuit '{}' half-open, sending a trial request", name);
+                    return true;
+                }
+                break;
+            case HALF_OPEN:
+                if (!trialInFlight) {
+                    trialInFlight = true;
+                    return true;
+                }
+                break;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            CraftoMod.LOGGER.info("Circuit '{}' closed, endpoint is back", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        cooldownMs = BASE_COOLDOWN_MS;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            cooldownMs = Math.min(cooldownMs * 2, MAX_COOLDOWN_MS);
+            open();
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * The allowed request was dropped without an answer (e.g. a cancelled duplicate) - says nothing
+     * about the endpoint, only frees the half-open trial slot.
+     */
+    public synchronized void recordAbandoned() {
+        trialInFlight = false;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clockMillis.getAsLong();
+        CraftoMod.LOGGER.warn("Circuit '{}' opened after {} consecutive failures, retrying in {} ms",
+            name, consecutiveFailures, cooldownMs);
+    }
+
+    /**
+     * @return true while requests are being rejected: the cooldown is running or the trial is in flight
+     */
+    public synchronized boolean isOpen() {
+        return switch (state) {
+            case CLOSED -> false;
+            case OPEN -> clockMillis.getAsLong() - openedAt < cooldownMs;
+            case HALF_OPEN -> trialInFlight;
+        };
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,99 @@
+package com.crafto.ai.ai;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Token counters Ollama reports in the final object of a {@code /api/chat} response.
+ * Durations are in nanoseconds, as Ollama sends them.
+ */
+public class GenerationStats {
+    private final String model;
+    private final int promptTokens;      // prompt_eval_count - без закэшированного префикса
+    private final long promptEvalNanos;
+    private final int outputTokens;      // eval_count
+    private final long evalNanos;
+    private final long loadNanos;        // load_duration - заметная величина только при загрузке модели
+    private final long totalNanos;
+    private final boolean truncated;     // done_reason "length" - генерация упёрлась в num_predict
+
+    public GenerationStats(String model, int promptTokens, long promptEvalNanos, int outputTokens, long evalNanos,
+                           long loadNanos, long totalNanos) {
+        this(model, promptTokens, promptEvalNanos, outputTokens, evalNanos, loadNanos, totalNanos, false);
+    }
+
+    public GenerationStats(String model, int promptTokens, long promptEvalNanos, int outputTokens, long evalNanos,
+                           long loadNanos, long totalNanos, boolean truncated) {
+        this.model = model;
+        this.promptTokens = promptTokens;
+        this.promptEvalNanos = promptEvalNanos;
+        this.outputTokens = outputTokens;
+        this.evalNanos = evalNanos;
+        this.loadNanos = loadNanos;
+        this.totalNanos = totalNanos;
+        this.truncated = truncated;
+    }
+
+    /**
+     * @return the counters of a final ({@code done}) response, or null if it has none
+     */
+    public static GenerationStats from(String model, JsonObject response) {
+        if (!response.has("eval_count")) {
+            return null;
+        }
+        return new GenerationStats(model,
+            intField(response, "prompt_eval_count"), longField(response, "prompt_eval_duration"),
+            intField(response, "eval_count"), longField(response, "eval_duration"),
+            longField(response, "load_duration"), longField(response, "total_duration"),
+            response.has("done_reason") && "length".equals(response.get("done_reason").getAsString()));
+    }
+
+    private static int intField(JsonObject response, String name) {
+        return response.has(name) ? response.get(name).getAsInt() : 0;
+    }
+
+    private static long longField(JsonObject response, String name) {
+        return response.has(name) ? response.get(name).getAsLong() : 0;
+    }
+
+    /**
+     * @return decode speed, or 0 if Ollama reported no eval time
+     */
+    public double getTokensPerSecond() {
+        return evalNanos > 0 ? outputTokens * 1e9 / evalNanos : 0;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public int getPromptTokens() {
+        return promptTokens;
+    }
+
+    public long getPromptEvalNanos() {
+        return promptEvalNanos;
+    }
+
+    public int getOutputTokens() {
+        return outputTokens;
+    }
+
+    public long getEvalNanos() {
+        return evalNanos;
+    }
+
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return whether the model stopped at the {@code num_predict} limit rather than finishing the answer
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
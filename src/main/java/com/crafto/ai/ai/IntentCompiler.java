@@ -0,0 +1,429 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.action.Task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local compiler for formulaic commands - "mine 10 iron", "убей 5 зомби", "follow me",
+ * "explore 100", "create waypoint home", "построй большой дом" - straight into tasks,
+ * without an LLM round-trip.
+ *
+ * The grammar is a leading verb followed by slots (numbers, blocks, mobs, structures, names)
+ * and filler words. Any word the grammar does not know makes compile() return null, so
+ * anything beyond the simple forms still goes to TaskPlanner. Free-form names are never guessed
+ * from leftover words: a player to follow must be online or quoted, and a waypoint name must be
+ * quoted, follow "named"/"called", or be a known waypoint type ("home", "шахта").
+ */
+public class IntentCompiler {
+    private static final String REASONING = "Compiled locally from a known command pattern";
+    private static final Pattern TOKEN_SPLIT = Pattern.compile("[^\\p{L}\\p{N}_-]+");
+    private static final Pattern INTEGER = Pattern.compile("-?\\d{1,7}");
+    private static final Pattern PLAYER_NAME = Pattern.compile("[A-Za-z0-9_]{3,16}");
+    private static final Pattern QUOTED_NAME = Pattern.compile("[\"«“]([^\"«»“”]{1,32})[\"»”]");
+
+    private enum Verb { MINE, KILL, ATTACK, FOLLOW, EXPLORE, BUILD, CREATE }
+
+    private static final Map<String, Verb> VERBS = new HashMap<>();
+    private static final Map<String, String> BLOCKS = new HashMap<>();
+    private static final Map<String, String> MOBS = new HashMap<>();
+    private static final Map<String, String> STRUCTURES = new HashMap<>();
+    private static final Map<String, String> WAYPOINT_TYPES = new HashMap<>();
+    private static final Map<String, Integer> NUMBER_WORDS = new HashMap<>();
+
+    private static final Set<String> FILLER = Set.of(
+        "a", "an", "the", "please", "pls", "some", "now", "пожалуйста", "плиз", "мне", "нам", "немного"
+    );
+    private static final Set<String> ALL = Set.of("all", "every", "все", "всех");
+    private static final Set<String> BIG = Set.of("big", "large", "huge", "большой", "большую", "огромный", "огромную");
+    private static final Set<String> MINE_FILLER = Set.of(
+        "ore", "ores", "block", "blocks", "pieces", "руда", "руды", "руду", "блок", "блоков", "блока", "штук", "штуки"
+    );
+    private static final Set<String> FOLLOW_FILLER = Set.of("me", "за", "мной", "меня", "со");
+    private static final Set<String> EXPLORE_FILLER = Set.of(
+        "area", "around", "nearby", "surroundings", "radius", "block", "blocks", "in", "within", "at", "of", "to",
+        "область", "местность", "вокруг", "окрестности", "радиус", "радиусе", "в", "на", "блоков", "блока", "до"
+    );
+    private static final Set<String> WAYPOINT_NOUNS = Set.of(
+        "waypoint", "point", "mark", "marker", "точку", "точка", "метку", "метка", "вейпоинт"
+    );
+    private static final Set<String> WAYPOINT_FILLER = Set.of("here", "at", "здесь", "тут", "в", "на", "под", "с");
+    private static final Set<String> NAME_MARKERS = Set.of("named", "called", "названием", "именем");
+
+    static {
+        verbs(Verb.MINE, "mine", "dig", "добудь", "добыть", "накопай", "выкопай", "копай");
+        verbs(Verb.KILL, "kill", "slay", "убей", "убить", "уничтожь");
+        verbs(Verb.ATTACK, "attack", "fight", "атакуй", "нападай", "сражайся");
+        verbs(Verb.FOLLOW, "follow", "следуй", "иди");
+        verbs(Verb.EXPLORE, "explore", "scout", "исследуй", "исследовать", "разведай");
+        verbs(Verb.BUILD, "build", "construct", "построй", "построить", "строй", "постройте", "возведи");
+        verbs(Verb.CREATE, "create", "make", "add", "set", "mark", "создай", "сделай", "поставь", "отметь");
+
+        // Имена блоков - те, что понимает MineBlockAction.parseBlock
+        words(BLOCKS, "iron", "iron", "железо", "железа", "железную");
+        words(BLOCKS, "diamond", "diamond", "diamonds", "алмаз", "алмазы", "алмазов");
+        words(BLOCKS, "coal", "coal", "уголь", "угля");
+        words(BLOCKS, "gold", "gold", "золото", "золота");
+        words(BLOCKS, "copper", "copper", "медь", "меди");
+        words(BLOCKS, "redstone", "redstone", "редстоун", "редстоуна");
+        words(BLOCKS, "lapis", "lapis", "лазурит", "лазурита");
+        words(BLOCKS, "emerald", "emerald", "emeralds", "изумруд", "изумруды", "изумрудов");
+        words(BLOCKS, "stone", "stone", "cobblestone", "камень", "камня");
+        words(BLOCKS, "dirt", "dirt", "земля", "землю", "земли");
+        words(BLOCKS, "sand", "sand", "песок", "песка");
+        words(BLOCKS, "gravel", "gravel", "гравий", "гравия");
+        words(BLOCKS, "wood", "wood", "log", "logs", "tree", "trees", "дерево", "дерева", "древесину", "бревна", "бревен");
+
+        words(MOBS, "zombie", "zombie", "zombies", "зомби");
+        words(MOBS, "skeleton", "skeleton", "skeletons", "скелет", "скелета", "скелетов", "скелеты");
+        words(MOBS, "creeper", "creeper", "creepers", "крипер", "крипера", "криперов", "криперы");
+        words(MOBS, "spider", "spider", "spiders", "паук", "паука", "пауков", "пауки");
+        words(MOBS, "enderman", "enderman", "endermen", "эндермен", "эндермена", "эндерменов");
+        words(MOBS, "witch", "witch", "witches", "ведьму", "ведьма", "ведьм");
+        words(MOBS, "slime", "slime", "slimes", "слизень", "слизня", "слизней");
+        words(MOBS, "hostile", "hostile", "hostiles", "mob", "mobs", "monster", "monsters", "enemy", "enemies",
+            "моб", "мобов", "мобы", "монстра", "монстров", "монстры", "врага", "врагов", "враждебных");
+
+        words(STRUCTURES, "house", "house", "дом", "домик");
+        words(STRUCTURES, "big-house", "big-house", "большой-дом");
+        words(STRUCTURES, "castle", "castle", "замок");
+        words(STRUCTURES, "tower", "tower", "башня", "башню");
+        words(STRUCTURES, "cottage", "cottage", "коттедж");
+        words(STRUCTURES, "mansion", "mansion", "особняк");
+        words(STRUCTURES, "modern", "modern", "современный");
+
+        words(WAYPOINT_TYPES, "BASE", "base", "home", "дом", "база", "базу");
+        words(WAYPOINT_TYPES, "MINE", "mine", "шахта", "шахту");
+        words(WAYPOINT_TYPES, "FARM", "farm", "ферма", "ферму");
+
+        String[][] numbers = {
+            {"one", "один", "одного", "одну"}, {"two", "два", "две", "двух"}, {"three", "три", "трех"},
+            {"four", "четыре"}, {"five", "пять"}, {"six", "шесть"}, {"seven", "семь"},
+            {"eight", "восемь"}, {"nine", "девять"}, {"ten", "десять"}
+        };
+        for (int i = 0; i < numbers.length; i++) {
+            for (String word : numbers[i]) {
+                NUMBER_WORDS.put(word, i + 1);
+            }
+        }
+    }
+
+    private static void verbs(Verb verb, String... words) {
+        for (String word : words) {
+            VERBS.put(word, verb);
+        }
+    }
+
+    private static void words(Map<String, String> map, String canonical, String... words) {
+        for (String word : words) {
+            map.put(word, canonical);
+        }
+    }
+
+    /**
+     * Same as {@link #compile(String, Predicate)} with no players online: "follow" only accepts
+     * "me" or a quoted name.
+     */
+    public static ResponseParser.ParsedResponse compile(String command) {
+        return compile(command, name -> false);
+    }
+
+    /**
+     * @param isOnlinePlayer tells whether an unquoted word is the name of a player in the world
+     * @return a plan for the command, or null if it is not one of the known forms
+     */
+    public static ResponseParser.ParsedResponse compile(String command, Predicate<String> isOnlinePlayer) {
+        if (command == null) {
+            return null;
+        }
+
+        // Имя в кавычках - единственный способ дать произвольное имя; вырезаем его до разбора на слова
+        String quoted = null;
+        Matcher quote = QUOTED_NAME.matcher(command);
+        if (quote.find()) {
+            quoted = quote.group(1).trim();
+            command = command.substring(0, quote.start()) + " " + command.substring(quote.end());
+            if (quoted.isEmpty() || QUOTED_NAME.matcher(command).find()) {
+                return null;
+            }
+        }
+
+        List<String> raw = new ArrayList<>();
+        for (String token : TOKEN_SPLIT.split(command.trim())) {
+            if (!token.isEmpty() && !FILLER.contains(lower(token))) {
+                raw.add(token);
+            }
+        }
+        if (raw.isEmpty()) {
+            return null;
+        }
+
+        Verb verb = VERBS.get(lower(raw.get(0)));
+        if (verb == null) {
+            return null;
+        }
+
+        List<String> rest = raw.subList(1, raw.size());
+        boolean waypoint = verb == Verb.CREATE && containsAny(rest, WAYPOINT_NOUNS);
+        if (quoted != null && verb != Verb.FOLLOW && !waypoint) {
+            return null;
+        }
+        return switch (verb) {
+            case MINE -> compileMine(rest);
+            case KILL -> compileKill(rest);
+            case ATTACK -> compileAttack(rest);
+            case FOLLOW -> compileFollow(rest, quoted, isOnlinePlayer);
+            case EXPLORE -> compileExplore(rest);
+            case BUILD -> compileBuild(rest);
+            case CREATE -> waypoint ? compileWaypoint(rest, quoted) : compileBuild(rest);
+        };
+    }
+
+    private static ResponseParser.ParsedResponse compileMine(List<String> words) {
+        Integer quantity = null;
+        String block = null;
+        for (String token : words) {
+            String word = lower(token);
+            Integer number = number(word);
+            if (number != null && quantity == null) {
+                quantity = number;
+            } else if (BLOCKS.containsKey(word) && block == null) {
+                block = BLOCKS.get(word);
+            } else if (!MINE_FILLER.contains(word)) {
+                return null;
+            }
+        }
+        if (block == null) {
+            return null;
+        }
+
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("block", block);
+        if (quantity != null) {
+            parameters.put("quantity", quantity);
+        }
+        return single("Mine " + (quantity != null ? quantity + " " : "") + block, new Task("mine", parameters));
+    }
+
+    private static ResponseParser.ParsedResponse compileKill(List<String> words) {
+        Integer count = null;
+        String target = null;
+        boolean all = false;
+        for (String token : words) {
+            String word = lower(token);
+            Integer number = number(word);
+            if (number != null && count == null) {
+                count = number;
+            } else if (MOBS.containsKey(word) && target == null) {
+                target = MOBS.get(word);
+            } else if (ALL.contains(word)) {
+                all = true;
+            } else {
+                return null;
+            }
+        }
+        if (target == null) {
+            return null;
+        }
+
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("target", target);
+        if (count != null || !all) {
+            // "убей зомби" - один моб; "kill all zombies" - значение по умолчанию KillMobsAction
+            parameters.put("count", count != null ? count : 1);
+        }
+        String amount = count != null ? String.valueOf(count) : all ? "all" : "1";
+        return single("Kill " + amount + " " + target, new Task("kill", parameters));
+    }
+
+    private static ResponseParser.ParsedResponse compileAttack(List<String> words) {
+        String target = "hostile";
+        for (String token : words) {
+            String word = lower(token);
+            if (MOBS.containsKey(word)) {
+                target = MOBS.get(word);
+            } else if (!ALL.contains(word)) {
+                return null;
+            }
+        }
+
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("target", target);
+        return single("Attack " + target, new Task("attack", parameters));
+    }
+
+    private static ResponseParser.ParsedResponse compileFollow(List<String> words, String quoted,
+                                                               Predicate<String> isOnlinePlayer) {
+        if (quoted != null && !PLAYER_NAME.matcher(quoted).matches()) {
+            return null;
+        }
+        String player = quoted;
+        for (String token : words) {
+            if (FOLLOW_FILLER.contains(lower(token))) {
+                continue;
+            }
+            // Без кавычек именем считаем только игрока в мире - "иди домой" не должно стать "follow домой"
+            if (player != null || !PLAYER_NAME.matcher(token).matches() || !isOnlinePlayer.test(token)) {
+                return null;
+            }
+            player = token; // имя игрока - с исходным регистром
+        }
+
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        // "me" FollowPlayerAction понимает как ближайшего игрока
+        parameters.put("player", player != null ? player : "me");
+        return single("Follow " + (player != null ? player : "the nearest player"), new Task("follow", parameters));
+    }
+
+    private static ResponseParser.ParsedResponse compileExplore(List<String> words) {
+        List<Integer> numbers = new ArrayList<>();
+        for (String token : words) {
+            String word = lower(token);
+            if (INTEGER.matcher(word).matches()) {
+                numbers.add(Integer.parseInt(word)); // координаты могут быть отрицательными
+            } else if (NUMBER_WORDS.containsKey(word)) {
+                numbers.add(NUMBER_WORDS.get(word));
+            } else if (!EXPLORE_FILLER.contains(word)) {
+                return null;
+            }
+        }
+
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        switch (numbers.size()) {
+            case 0 -> parameters.put("radius", 64);
+            case 1 -> parameters.put("radius", numbers.get(0));
+            case 3, 4 -> {
+                parameters.put("x", numbers.get(0));
+                parameters.put("y", numbers.get(1));
+                parameters.put("z", numbers.get(2));
+                parameters.put("radius", numbers.size() == 4 ? numbers.get(3) : 64);
+            }
+            default -> {
+                return null;
+            }
+        }
+        if ((Integer) parameters.get("radius") <= 0) {
+            return null;
+        }
+        return single("Explore " + parameters.get("radius") + " block radius", new Task("explore", parameters));
+    }
+
+    private static ResponseParser.ParsedResponse compileBuild(List<String> words) {
+        String structure = null;
+        boolean big = false;
+        List<Integer> dimensions = new ArrayList<>();
+        for (String token : words) {
+            String word = lower(token);
+            if (INTEGER.matcher(word).matches()) {
+                dimensions.add(Integer.parseInt(word));
+            } else if (STRUCTURES.containsKey(word) && structure == null) {
+                structure = STRUCTURES.get(word);
+            } else if (BIG.contains(word)) {
+                big = true;
+            } else {
+                return null;
+            }
+        }
+        if (structure == null || (dimensions.size() != 0 && dimensions.size() != 3)) {
+            return null;
+        }
+        if (big && structure.equals("house")) {
+            structure = "big-house";
+        }
+
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        parameters.put("structure", structure);
+        String plan = "Build " + structure;
+        if (!dimensions.isEmpty()) {
+            parameters.put("width", dimensions.get(0));
+            parameters.put("height", dimensions.get(1));
+            parameters.put("depth", dimensions.get(2));
+            plan += String.format(" (%dx%dx%d)", dimensions.get(0), dimensions.get(1), dimensions.get(2));
+        }
+        return single(plan, new Task("build", parameters));
+    }
+
+    private static ResponseParser.ParsedResponse compileWaypoint(List<String> words, String quoted) {
+        List<Integer> coordinates = new ArrayList<>();
+        List<String> name = new ArrayList<>();
+        boolean named = false;
+        for (String token : words) {
+            String word = lower(token);
+            if (INTEGER.matcher(word).matches()) {
+                coordinates.add(Integer.parseInt(word));
+            } else if (NAME_MARKERS.contains(word) && quoted == null && name.isEmpty()) {
+                named = true;
+            } else if (named) {
+                name.add(token);
+            } else if (WAYPOINT_TYPES.containsKey(word) && name.isEmpty()) {
+                name.add(token);
+            } else if (!WAYPOINT_NOUNS.contains(word) && !WAYPOINT_FILLER.contains(word)) {
+                // Незнакомое слово вне кавычек и без "named" - это уже не типовая команда
+                return null;
+            }
+        }
+        if ((!coordinates.isEmpty() && coordinates.size() != 3) || (named && name.isEmpty())) {
+            return null;
+        }
+        if (quoted != null) {
+            if (!name.isEmpty()) {
+                return null;
+            }
+            name.add(quoted);
+        }
+
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        String type = "LANDMARK";
+        if (!name.isEmpty()) {
+            String waypointName = String.join(" ", name);
+            parameters.put("name", waypointName);
+            String lastWord = waypointName.substring(waypointName.lastIndexOf(' ') + 1);
+            type = WAYPOINT_TYPES.getOrDefault(lower(lastWord), "LANDMARK");
+        }
+        parameters.put("type", type);
+        if (!coordinates.isEmpty()) {
+            parameters.put("x", coordinates.get(0));
+            parameters.put("y", coordinates.get(1));
+            parameters.put("z", coordinates.get(2));
+        }
+        String plan = "Create " + type.toLowerCase(Locale.ROOT) + " waypoint"
+            + (parameters.containsKey("name") ? " " + parameters.get("name") : "");
+        return single(plan, new Task("create_waypoint", parameters));
+    }
+
+    private static ResponseParser.ParsedResponse single(String plan, Task task) {
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(task);
+        return new ResponseParser.ParsedResponse(REASONING, plan, tasks);
+    }
+
+    private static Integer number(String word) {
+        if (INTEGER.matcher(word).matches()) {
+            int value = Integer.parseInt(word);
+            return value > 0 ? value : null;
+        }
+        return NUMBER_WORDS.get(word);
+    }
+
+    private static boolean containsAny(List<String> words, Set<String> vocabulary) {
+        for (String word : words) {
+            if (vocabulary.contains(lower(word))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String lower(String token) {
+        return token.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+}
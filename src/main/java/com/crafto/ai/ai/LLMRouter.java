@@ -0,0 +1,407 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.CraftoMod;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Spreads LLM requests over several Ollama instances.
+ *
+ * Every request goes to the healthy endpoint with the fewest requests in flight. Each endpoint
+ * has its own {@link CircuitBreaker}, and {@link #probe()} (run periodically by LLMTransport)
+ * checks {@code /api/tags} to take dead instances out of rotation and bring recovered ones back.
+ * With hedging on, a non-streaming request that has not been answered by the p95 latency is
+ * duplicated to a second endpoint and the first good reply wins.
+ */
+public class LLMRouter {
+    private static final String HEALTH_PATH = "/api/tags";
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(2);
+    private static final int LATENCY_WINDOW = 128;
+    private static final int MIN_HEDGE_SAMPLES = 20;   // без истории p95 не считаем и не дублируем
+    private static final long MIN_HEDGE_DELAY_MS = 200;
+
+    private final HttpClient httpClient;
+    private final Supplier<List<String>> endpointUrls;
+    private final BooleanSupplier hedging;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTieBreak = new AtomicInteger();
+    private final AtomicLong hedgedRequests = new AtomicLong();
+
+    // Последние задержки успешных нестриминговых ответов, кольцевой буфер
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyCount;
+    private int latencyNext;
+
+    /**
+     * Per-instance state.
+     */
+    public static class Endpoint {
+        private final String url;
+        private final CircuitBreaker circuitBreaker;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong served = new AtomicLong();
+        private volatile boolean healthy = true; // до первой проверки считаем живым
+
+        Endpoint(String url) {
+            this.url = url;
+            this.circuitBreaker = new CircuitBreaker(url);
+        }
+
+        boolean isSelectable() {
+            return healthy && !circuitBreaker.isOpen();
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public long getServed() {
+            return served.get();
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public CircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+    }
+
+    /**
+     * @param endpointUrls base URLs, read on every request so config reloads apply at once
+     * @param hedging      whether slow non-streaming requests may be duplicated to a second endpoint
+     */
+    public LLMRouter(HttpClient httpClient, Supplier<List<String>> endpointUrls, BooleanSupplier hedging) {
+        this.httpClient = httpClient;
+        this.endpointUrls = endpointUrls;
+        this.hedging = hedging;
+    }
+
+    /**
+     * Sends a request whose body is fully read before returning, hedging it if enabled.
+     *
+     * @throws LLMUnavailableException if no endpoint is currently usable
+     */
+    public <T> HttpResponse<T> send(String path, byte[] body, Duration timeout,
+                                    HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        Endpoint primary = acquire(null);
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<HttpResponse<T>> first = attempt(primary, path, body, timeout, bodyHandler);
+
+        long hedgeDelay = hedgeDelayMs();
+        if (hedgeDelay < 0 || hedgeDelay >= timeout.toMillis()) {
+            return await(first, timeout.toMillis());
+        }
+
+        try {
+            return unwrap(() -> first.get(hedgeDelay, TimeUnit.MILLISECONDS));
+        } catch (HttpTimeoutException e) {
+            // Первый endpoint не уложился в p95 - дублируем запрос на другой
+        }
+
+        long remaining = timeout.toMillis() - (System.currentTimeMillis() - startTime);
+        Endpoint backup;
+        try {
+            backup = acquire(primary);
+        } catch (LLMUnavailableException e) {
+            return await(first, remaining);
+        }
+        hedgedRequests.incrementAndGet();
+        CraftoMod.LOGGER.debug("Hedging request to {} after {} ms without reply from {}", backup.url, hedgeDelay, primary.url);
+
+        CompletableFuture<HttpResponse<T>> second = attempt(backup, path, body, Duration.ofMillis(Math.max(1, remaining)),
+            bodyHandler);
+        CompletableFuture<HttpResponse<T>> winner = firstGood(first, second);
+        try {
+            return await(winner, remaining);
+        } finally {
+            first.cancel(true);
+            second.cancel(true);
+        }
+    }
+
+    /**
+     * Sends a streaming request. The endpoint counts it as in flight until the returned stream is closed.
+     *
+     * @throws LLMUnavailableException if no endpoint is currently usable
+     */
+    public HttpResponse<Stream<String>> sendStreaming(String path, byte[] body, Duration timeout)
+            throws IOException, InterruptedException {
+        Endpoint endpoint = acquire(null);
+        HttpResponse.BodyHandler<Stream<String>> lines = responseInfo -> HttpResponse.BodySubscribers.mapping(
+            HttpResponse.BodySubscribers.ofLines(StandardCharsets.UTF_8),
+            stream -> stream.onClose(() -> endpoint.outstanding.decrementAndGet()));
+        try {
+            HttpResponse<Stream<String>> response = httpClient.send(request(endpoint, path, body, timeout), lines);
+            recordOutcome(endpoint, response.statusCode());
+            return response;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            endpoint.outstanding.decrementAndGet();
+            endpoint.circuitBreaker.recordFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the same request to every configured endpoint, e.g. to load the model everywhere.
+     */
+    public List<CompletableFuture<HttpResponse<String>>> sendToAll(String path, byte[] body, Duration timeout) {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (String url : endpointUrls.get()) {
+            Endpoint endpoint = endpoint(url);
+            responses.add(httpClient.sendAsync(request(endpoint, path, body, timeout), HttpResponse.BodyHandlers.ofString()));
+        }
+        return responses;
+    }
+
+    /**
+     * Checks {@code /api/tags} on every endpoint. A failed probe takes the endpoint out of rotation;
+     * a successful one brings it back and closes its circuit.
+     */
+    public void probe() {
+        for (String url : endpointUrls.get()) {
+            Endpoint endpoint = endpoint(url);
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url + HEALTH_PATH))
+                .timeout(PROBE_TIMEOUT)
+                .GET()
+                .build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    boolean healthy = error == null && response.statusCode() == 200;
+                    if (healthy != endpoint.healthy) {
+                        CraftoMod.LOGGER.info("Ollama endpoint {} is {}", url, healthy ? "up" : "down");
+                    }
+                    endpoint.healthy = healthy;
+                    if (healthy && endpoint.circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+                        endpoint.circuitBreaker.recordSuccess();
+                    }
+                });
+        }
+    }
+
+    /**
+     * @return true if no configured endpoint can take a request right now
+     */
+    public boolean isUnavailable() {
+        for (String url : endpointUrls.get()) {
+            if (endpoint(url).isSelectable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        List<Endpoint> current = new ArrayList<>();
+        for (String url : endpointUrls.get()) {
+            current.add(endpoint(url));
+        }
+        return current;
+    }
+
+    /**
+     * @return one line per endpoint for stats output, e.g. {@code http://gpu1:11434 CLOSED, 2 in flight}
+     */
+    public String describeEndpoints() {
+        StringBuilder description = new StringBuilder();
+        for (Endpoint endpoint : getEndpoints()) {
+            if (description.length() > 0) {
+                description.append("; ");
+            }
+            description.append(endpoint.url).append(' ')
+                .append(endpoint.healthy ? endpoint.circuitBreaker.getState().name() : "DOWN")
+                .append(", ").append(endpoint.getOutstanding()).append(" in flight");
+        }
+        return description.toString();
+    }
+
+    public long getHedgedCount() {
+        return hedgedRequests.get();
+    }
+
+    public long getRejectedCount() {
+        long rejected = 0;
+        for (Endpoint endpoint : getEndpoints()) {
+            rejected += endpoint.circuitBreaker.getRejectedCount();
+        }
+        return rejected;
+    }
+
+    /**
+     * @return the p95 of recent latencies in ms, or -1 while hedging is off or there is too little history
+     */
+    long hedgeDelayMs() {
+        if (!hedging.getAsBoolean() || endpointUrls.get().size() < 2) {
+            return -1;
+        }
+        long[] window;
+        synchronized (latencies) {
+            if (latencyCount < MIN_HEDGE_SAMPLES) {
+                return -1;
+            }
+            window = Arrays.copyOf(latencies, latencyCount);
+        }
+        Arrays.sort(window);
+        return Math.max(MIN_HEDGE_DELAY_MS, window[(int) Math.ceil(window.length * 0.95) - 1]);
+    }
+
+    void recordLatency(long millis) {
+        synchronized (latencies) {
+            latencies[latencyNext] = millis;
+            latencyNext = (latencyNext + 1) % LATENCY_WINDOW;
+            latencyCount = Math.min(latencyCount + 1, LATENCY_WINDOW);
+        }
+    }
+
+    // --- internals ---
+
+    private Endpoint endpoint(String url) {
+        return endpoints.computeIfAbsent(url, Endpoint::new);
+    }
+
+    /**
+     * Picks the usable endpoint with the fewest requests in flight and reserves a slot on it.
+     */
+    private Endpoint acquire(Endpoint exclude) {
+        List<String> urls = endpointUrls.get();
+        int offset = urls.isEmpty() ? 0 : Math.floorMod(nextTieBreak.getAndIncrement(), urls.size());
+        List<Endpoint> candidates = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            // Сдвиг по кругу - при равной загрузке запросы расходятся по разным серверам
+            Endpoint endpoint = endpoint(urls.get((offset + i) % urls.size()));
+            if (endpoint != exclude && endpoint.isSelectable()) {
+                candidates.add(endpoint);
+            }
+        }
+        candidates.sort((a, b) -> Integer.compare(a.outstanding.get(), b.outstanding.get()));
+
+        for (Endpoint endpoint : candidates) {
+            if (endpoint.circuitBreaker.allowRequest()) {
+                endpoint.outstanding.incrementAndGet();
+                return endpoint;
+            }
+        }
+        throw new LLMUnavailableException("No Ollama endpoint is available");
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> attempt(Endpoint endpoint, String path, byte[] body, Duration timeout,
+                                                           HttpResponse.BodyHandler<T> bodyHandler) {
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<HttpResponse<T>> future;
+        try {
+            future = httpClient.sendAsync(request(endpoint, path, body, timeout), bodyHandler);
+        } catch (RuntimeException e) {
+            endpoint.outstanding.decrementAndGet();
+            endpoint.circuitBreaker.recordAbandoned();
+            throw e;
+        }
+        future.whenComplete((response, error) -> {
+            endpoint.outstanding.decrementAndGet();
+            if (error == null) {
+                recordOutcome(endpoint, response.statusCode());
+                if (response.statusCode() == 200) {
+                    recordLatency(System.currentTimeMillis() - startTime);
+                }
+            } else if (error instanceof CancellationException || error.getCause() instanceof CancellationException) {
+                endpoint.circuitBreaker.recordAbandoned(); // проигравший дубль - не ошибка сервера
+            } else {
+                endpoint.circuitBreaker.recordFailure();
+            }
+        });
+        return future;
+    }
+
+    private static void recordOutcome(Endpoint endpoint, int status) {
+        endpoint.served.incrementAndGet();
+        if (status < 500) {
+            endpoint.circuitBreaker.recordSuccess(); // 4xx (например, нет модели) - сервер жив
+        } else {
+            endpoint.circuitBreaker.recordFailure();
+        }
+    }
+
+    /**
+     * Completes with the first response below 500, or with the last result if neither is good.
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> firstGood(CompletableFuture<HttpResponse<T>> a,
+                                                                    CompletableFuture<HttpResponse<T>> b) {
+        CompletableFuture<HttpResponse<T>> winner = new CompletableFuture<>();
+        AtomicInteger finished = new AtomicInteger();
+        for (CompletableFuture<HttpResponse<T>> candidate : List.of(a, b)) {
+            candidate.whenComplete((response, error) -> {
+                boolean last = finished.incrementAndGet() == 2;
+                if (error == null && (response.statusCode() < 500 || last)) {
+                    winner.complete(response);
+                } else if (last) {
+                    winner.completeExceptionally(error != null ? error : new IOException("No good response"));
+                }
+            });
+        }
+        return winner;
+    }
+
+    private static <T> HttpResponse<T> await(CompletableFuture<HttpResponse<T>> future, long timeoutMillis)
+            throws IOException, InterruptedException {
+        // Не отменяем запрос по своему таймауту: его собственный timeout сработает тут же и засчитается endpoint'у как сбой
+        return unwrap(() -> future.get(Math.max(1, timeoutMillis), TimeUnit.MILLISECONDS));
+    }
+
+    private interface Wait<T> {
+        T get() throws InterruptedException, ExecutionException, TimeoutException;
+    }
+
+    private static <T> T unwrap(Wait<T> wait) throws IOException, InterruptedException {
+        try {
+            return wait.get();
+        } catch (TimeoutException e) {
+            throw new HttpTimeoutException("request timed out");
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private HttpRequest request(Endpoint endpoint, String path, byte[] body, Duration timeout) {
+        return HttpRequest.newBuilder()
+            .uri(URI.create(endpoint.url + path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .timeout(timeout)
+            .build();
+    }
+}
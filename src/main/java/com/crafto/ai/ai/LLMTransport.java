@@ -0,0 +1,156 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.CraftoMod;
+import com.crafto.ai.config.CraftoConfig;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Process-wide HTTP transport for all LLM calls. Owns the single HttpClient, so every
+ * OllamaClient shares one connection pool (keep-alive reuse) and one selector thread.
+ * Requests are spread over the configured Ollama endpoints by an {@link LLMRouter}; the
+ * endpoint list and model are read from CraftoConfig on every request, so config reloads
+ * take effect without rebuilding anything.
+ */
+public class LLMTransport {
+    // Ollama обычно на localhost или в локальной сети: если TCP не поднялся за 2 с, сервер не отвечает
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    private static final long HEALTH_CHECK_INTERVAL_SECONDS = 10;
+    private static final int MAX_POOL_THREADS = 8;
+
+    private static LLMTransport instance;
+
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final LLMRouter router;
+    private final ScheduledExecutorService healthChecks;
+
+    private LLMTransport() {
+        this.executor = createExecutor();
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(CONNECT_TIMEOUT)
+            // Ollama talks plain HTTP/1.1 - asking for HTTP/2 only adds a failed h2c upgrade to every new connection
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(executor)
+            .build();
+        this.router = new LLMRouter(httpClient, LLMTransport::getEndpointUrls, CraftoConfig.OLLAMA_HEDGING::get);
+        this.healthChecks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crafto-llm-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecks.scheduleWithFixedDelay(this::probeEndpoints, HEALTH_CHECK_INTERVAL_SECONDS,
+            HEALTH_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public static synchronized LLMTransport getInstance() {
+        if (instance == null) {
+            instance = new LLMTransport();
+        }
+        return instance;
+    }
+
+    /**
+     * @return configured endpoints, or just baseUrl when the list is empty
+     */
+    public static List<String> getEndpointUrls() {
+        List<? extends String> endpoints = CraftoConfig.OLLAMA_ENDPOINTS.get();
+        if (endpoints.isEmpty()) {
+            return List.of(CraftoConfig.OLLAMA_BASE_URL.get());
+        }
+        return List.copyOf(endpoints);
+    }
+
+    public String getModel() {
+        return CraftoConfig.OLLAMA_MODEL.get();
+    }
+
+    public LLMRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * @return true while no Ollama endpoint can take a request (all down or with an open circuit)
+     */
+    public boolean isUnavailable() {
+        return router.isUnavailable();
+    }
+
+    /**
+     * POSTs a UTF-8 JSON payload to {@code path} on the least loaded endpoint and reads the whole reply.
+     *
+     * @param timeout deadline for this request
+     * @throws LLMUnavailableException if no endpoint is usable
+     */
+    public HttpResponse<String> post(String path, byte[] jsonPayload, Duration timeout) throws IOException, InterruptedException {
+        return router.send(path, jsonPayload, timeout, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Streaming POST; the reply is read line by line (NDJSON). Close the body stream when done.
+     *
+     * @param timeout deadline until the response headers arrive
+     * @throws LLMUnavailableException if no endpoint is usable
+     */
+    public HttpResponse<Stream<String>> postStreaming(String path, byte[] jsonPayload, Duration timeout)
+            throws IOException, InterruptedException {
+        return router.sendStreaming(path, jsonPayload, timeout);
+    }
+
+    /**
+     * Non-blocking POST of the same payload to every endpoint.
+     */
+    public List<CompletableFuture<HttpResponse<String>>> postToAll(String path, String jsonPayload, Duration timeout) {
+        return router.sendToAll(path, jsonPayload.getBytes(StandardCharsets.UTF_8), timeout);
+    }
+
+    private void probeEndpoints() {
+        try {
+            router.probe();
+        } catch (RuntimeException e) {
+            // Конфиг ещё не загружен или некорректный URL - попробуем в следующий раз
+            CraftoMod.LOGGER.debug("Ollama health check skipped: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Virtual threads when running on Java 21+, otherwise a small bounded daemon pool.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService virtual = (ExecutorService) factory.invoke(null);
+            CraftoMod.LOGGER.info("LLM transport using virtual threads");
+            return virtual;
+        } catch (ReflectiveOperationException e) {
+            // Java 17 - no virtual threads
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "crafto-llm-http-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_POOL_THREADS, MAX_POOL_THREADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
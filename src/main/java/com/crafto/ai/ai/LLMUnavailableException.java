@@ -0,0 +1,10 @@
+package com.crafto.ai.ai;
+
+/**
+ * The LLM endpoint is known to be down (its circuit breaker is open), so the request was not sent.
+ */
+public class LLMUnavailableException extends RuntimeException {
+    public LLMUnavailableException(String message) {
+        super(message);
+    }
+}
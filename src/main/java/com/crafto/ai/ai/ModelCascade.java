@@ -0,0 +1,197 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.CraftoMod;
+import com.crafto.ai.action.Task;
+import com.crafto.ai.config.CraftoConfig;
+import com.crafto.ai.optimization.RequestPriority;
+import com.crafto.ai.optimization.SystemMonitor;
+import com.crafto.ai.optimization.ThroughputTracker;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier planner: every plan is first generated by the small {@code fastModel} with a tight
+ * {@code num_predict}, and goes to the main model only if the fast plan is unusable - it does not
+ * parse, was cut off by {@code num_predict}, uses an action that does not exist or fails
+ * {@link PlanSchema#validate}.
+ *
+ * Under high system load a second generation costs more than a slightly imperfect plan, so then
+ * only plans without a single usable task are escalated. The same holds when the main model's
+ * measured token rate says it would not finish before the request deadline.
+ */
+public class ModelCascade {
+    private static final Duration FAST_TIMEOUT = Duration.ofSeconds(20);
+
+    /**
+     * Outcome of checking a fast-tier response.
+     */
+    public enum Review {
+        ACCEPTED,
+        PARSE_FAILURE,   // не JSON или нет ни одной задачи
+        TRUNCATED,       // оборван по num_predict - последней задачи нет
+        UNKNOWN_ACTION,
+        INVALID_TASK
+    }
+
+    private final OllamaClient fullClient = OllamaClient.forPlans();
+    private final Supplier<SystemMonitor.SystemLoadLevel> loadLevel;
+    private final ThroughputTracker throughput = ThroughputTracker.getInstance();
+    private final Map<Review, AtomicInteger> reviews = new EnumMap<>(Review.class);
+    private final AtomicInteger escalated = new AtomicInteger(0);
+    private final AtomicInteger fullOnly = new AtomicInteger(0);
+
+    public ModelCascade() {
+        this.loadLevel = SystemMonitor.getInstance()::getLoadLevel;
+        for (Review review : Review.values()) {
+            reviews.put(review, new AtomicInteger(0));
+        }
+    }
+
+    /**
+     * Generates a plan response, trying the fast model first.
+     *
+     * @param chunkListener receives the response text (streamed from the main model, in one piece
+     *                      from an accepted fast plan), or null
+     * @param statsListener receives the token counters of every generation (both tiers), or null
+     * @param deadline      absolute time (ms) by which the response is needed; both tiers share it
+     * @return the raw response text, or null if the main model failed as well or the deadline passed
+     */
+    public String generate(String systemPrompt, String userPrompt, RequestPriority priority,
+                           Consumer<String> chunkListener, Consumer<GenerationStats> statsListener, long deadline) {
+        OllamaClient fastClient = fastClient();
+        // Перепланирование после неудачи - сразу на основную модель
+        if (fastClient != null && priority != RequestPriority.REPLAN) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            AtomicBoolean cutOff = new AtomicBoolean(false);
+            String response = fastClient.sendRequest(systemPrompt, userPrompt,
+                Duration.ofMillis(Math.min(FAST_TIMEOUT.toMillis(), remaining)), stats -> {
+                    cutOff.set(stats.isTruncated());
+                    if (statsListener != null) {
+                        statsListener.accept(stats);
+                    }
+                });
+            if (response == null && LLMTransport.getInstance().isUnavailable()) {
+                return null; // сервер недоступен - основной модели тоже не ответить
+            }
+            Review review = review(response, cutOff.get());
+            reviews.get(review).incrementAndGet();
+
+            SystemMonitor.SystemLoadLevel load = loadLevel.get();
+            long expectedFullMs = throughput.forModel(fullClient.getModel()).estimateGenerationMs();
+            if (!shouldEscalate(review, load, expectedFullMs, deadline - System.currentTimeMillis())) {
+                if (review != Review.ACCEPTED) {
+                    CraftoMod.LOGGER.info("Keeping fast model plan despite {} under {} load (main model needs ~{} ms)",
+                        review, load, expectedFullMs);
+                }
+                if (chunkListener != null) {
+                    chunkListener.accept(response);
+                }
+                return response;
+            }
+            escalated.incrementAndGet();
+            CraftoMod.LOGGER.info("Fast model '{}' plan rejected ({}), escalating to '{}'",
+                fastClient.getModel(), review, fullClient.getModel());
+        } else {
+            fullOnly.incrementAndGet();
+        }
+
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            CraftoMod.LOGGER.warn("No time left for the main model before the request deadline");
+            return null;
+        }
+        Duration timeout = Duration.ofMillis(remaining);
+        return chunkListener != null
+            ? fullClient.sendStreamingRequest(systemPrompt, userPrompt, chunkListener, timeout, statsListener)
+            : fullClient.sendRequest(systemPrompt, userPrompt, timeout, statsListener);
+    }
+
+    /**
+     * @param cutOff whether Ollama reported {@code done_reason} "length" for the response
+     */
+    static Review review(String response, boolean cutOff) {
+        ResponseParser.ParsedResponse parsed = response != null ? ResponseParser.parseAIResponse(response) : null;
+        if (parsed == null || parsed.getTasks().isEmpty()) {
+            return Review.PARSE_FAILURE;
+        }
+        // Оборванный план выглядит корректным, но без последней задачи
+        if (cutOff || parsed.isTruncated()) {
+            return Review.TRUNCATED;
+        }
+        Review result = Review.ACCEPTED;
+        for (Task task : parsed.getTasks()) {
+            if (!PlanSchema.isKnownAction(task.getAction())) {
+                return Review.UNKNOWN_ACTION;
+            }
+            String problem = PlanSchema.validate(task);
+            if (problem != null) {
+                CraftoMod.LOGGER.debug("Fast model task rejected: {}", problem);
+                result = Review.INVALID_TASK;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param expectedFullMs main model generation time estimated from its token rate, or -1 if unknown
+     * @param remainingMs    time left until the request deadline
+     */
+    static boolean shouldEscalate(Review review, SystemMonitor.SystemLoadLevel load, long expectedFullMs, long remainingMs) {
+        return switch (review) {
+            case ACCEPTED -> false;
+            case PARSE_FAILURE, TRUNCATED -> true;
+            // Неидеальный план лучше ответа основной модели, который не успеет к сроку
+            case UNKNOWN_ACTION, INVALID_TASK ->
+                load != SystemMonitor.SystemLoadLevel.HIGH && load != SystemMonitor.SystemLoadLevel.CRITICAL
+                    && expectedFullMs < remainingMs;
+        };
+    }
+
+    /**
+     * @return client for the fast tier, or null if it is disabled or the same model as the main one
+     */
+    private static OllamaClient fastClient() {
+        String fastModel = CraftoConfig.OLLAMA_FAST_MODEL.get().trim();
+        if (fastModel.isEmpty() || fastModel.equals(CraftoConfig.OLLAMA_MODEL.get())) {
+            return null;
+        }
+        return OllamaClient.forPlans(fastModel, CraftoConfig.OLLAMA_FAST_MODEL_MAX_TOKENS.get());
+    }
+
+    /**
+     * Loads both tiers into Ollama ahead of the first command.
+     */
+    public static void warmUpModels() {
+        String systemPrompt = PromptBuilder.buildSystemPrompt();
+        OllamaClient.forPlans().warmUp(systemPrompt);
+        OllamaClient fastClient = fastClient();
+        if (fastClient != null) {
+            fastClient.warmUp(systemPrompt);
+        }
+    }
+
+    public int getReviewCount(Review review) {
+        return reviews.get(review).get();
+    }
+
+    public int getFastAccepted() {
+        return reviews.get(Review.ACCEPTED).get();
+    }
+
+    public int getEscalations() {
+        return escalated.get();
+    }
+
+    public int getFullOnly() {
+        return fullOnly.get();
+    }
+}
@@ -3,87 +3,137 @@ package com.crafto.ai.ai;
 import com.crafto.ai.CraftoMod;
 import com.crafto.ai.config.CraftoConfig;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
+import java.io.UncheckedIOException;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Thin Ollama API wrapper. Cheap to create - all instances share the connection pool of {@link LLMTransport}.
+ *
+ * Requests go to {@code /api/chat} with the system prompt as its own message, byte-identical from
+ * request to request, so Ollama can reuse the evaluated prompt prefix from its KV cache and only
+ * evaluate the user message. {@code keep_alive} keeps the model loaded between commands.
+ */
 public class OllamaClient {
-    private final HttpClient httpClient;
-    private final String baseUrl;
-    private final String model;
+    private static final String CHAT_PATH = "/api/chat";
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration WARM_UP_TIMEOUT = Duration.ofMinutes(5);
+    private static final int CHAT_TEMPLATE_TOKENS = 32; // роли и служебные токены шаблона чата
+
+    // Только для кодирования строк: без HTML-экранирования '<', '>' и '=' промпт уходит как есть
+    private static final Gson JSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    // Закодированное начало запроса по модели - общее для всех клиентов, пересобирается только при смене настроек
+    private static final Map<String, PayloadPrefix> cachedPrefixes = new ConcurrentHashMap<>();
+    private static final Map<String, ContextWindow> contextWindows = new ConcurrentHashMap<>();
+    // Срок стриминга: закрывает тело ответа, даже если сервер перестал писать
+    private static final ScheduledExecutorService STREAM_DEADLINES = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "crafto-llm-stream-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LLMTransport transport;
+    private final Supplier<String> format; // значение поля "format" или null
+    private final String model;            // null - модель из конфига
+    private final int maxTokens;           // 0 - num_predict из конфига
 
     public OllamaClient() {
-        this.httpClient = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(30))  // Reduced for faster failure detection
-            .version(HttpClient.Version.HTTP_2)      // HTTP/2 for better performance
-            .build();
-        this.baseUrl = CraftoConfig.OLLAMA_BASE_URL.get();
-        this.model = CraftoConfig.OLLAMA_MODEL.get();
+        this(() -> null);
+    }
+
+    /**
+     * @param format supplies Ollama's {@code format} (a JSON schema) per request, or null for free-form output
+     */
+    public OllamaClient(Supplier<String> format) {
+        this(format, null, 0);
+    }
+
+    /**
+     * @param model     model to use instead of the configured one, or null
+     * @param maxTokens {@code num_predict} to use instead of the configured one, or 0
+     */
+    public OllamaClient(Supplier<String> format, String model, int maxTokens) {
+        this.transport = LLMTransport.getInstance();
+        this.format = format;
+        this.model = model;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Client for plan requests: output is constrained to {@link PlanSchema} while structured output is enabled.
+     */
+    public static OllamaClient forPlans() {
+        return new OllamaClient(PlanSchema::formatIfEnabled);
+    }
+
+    /**
+     * Plan client for a specific model, e.g. the fast tier of {@link ModelCascade}.
+     */
+    public static OllamaClient forPlans(String model, int maxTokens) {
+        return new OllamaClient(PlanSchema::formatIfEnabled, model, maxTokens);
+    }
+
+    public String getModel() {
+        return model != null ? model : transport.getModel();
     }
 
     public String sendRequest(String systemPrompt, String userPrompt) {
+        return sendRequest(systemPrompt, userPrompt, DEFAULT_TIMEOUT);
+    }
+
+    public String sendRequest(String systemPrompt, String userPrompt, Duration timeout) {
+        return sendRequest(systemPrompt, userPrompt, timeout, null);
+    }
+
+    /**
+     * @param onStats receives the token counters of the generation, or null
+     */
+    public String sendRequest(String systemPrompt, String userPrompt, Duration timeout, Consumer<GenerationStats> onStats) {
         try {
-            String fullPrompt = systemPrompt + "\n\n" + userPrompt;
-
-            // Properly escape the prompt for JSON
-            String escapedPrompt = fullPrompt
-                .replace("\\", "\\\\")  // Escape backslashes first
-                .replace("\"", "\\\"")  // Escape quotes
-                .replace("\n", "\\n")   // Escape newlines
-                .replace("\r", "\\r")   // Escape carriage returns
-                .replace("\t", "\\t")   // Escape tabs
-                .replace("\b", "\\b")   // Escape backspace
-                .replace("\f", "\\f");  // Escape form feed
-
-            // Explicitly format numbers to avoid locale issues (comma vs dot)
-            String temperatureStr = String.format("%.1f", CraftoConfig.OLLAMA_TEMPERATURE.get()).replace(',', '.');
-            String maxTokensStr = String.valueOf(CraftoConfig.OLLAMA_MAX_TOKENS.get());
-
-            // Optimized for M2 MacBook - faster inference settings
-            String jsonPayload = String.format(
-                "{\"model\":\"%s\",\"prompt\":\"%s\",\"stream\":false,\"options\":{\"temperature\":%s,\"num_predict\":%s,\"num_ctx\":2048,\"num_thread\":8,\"repeat_penalty\":1.1,\"top_k\":40,\"top_p\":0.9}}",
-                model,
-                escapedPrompt,
-                temperatureStr,
-                maxTokensStr
-            );
-
-            CraftoMod.LOGGER.info("Sending to Ollama (JSON escaped prompt), payload length: {}", jsonPayload.length());
-
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/api/generate"))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(jsonPayload))
-                .timeout(Duration.ofSeconds(60))   // Reduced timeout for faster responses
-                .build();
-
-            CraftoMod.LOGGER.info("HTTP request created, sending...");
+            byte[] jsonPayload = buildPayload(systemPrompt, userPrompt, false);
+
+            CraftoMod.LOGGER.info("Sending to Ollama, payload length: {}", jsonPayload.length);
             long startTime = System.currentTimeMillis();
 
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = transport.post(CHAT_PATH, jsonPayload, timeout);
 
             long endTime = System.currentTimeMillis();
             CraftoMod.LOGGER.info("HTTP response received in {} ms, status: {}", (endTime - startTime), response.statusCode());
 
             if (response.statusCode() == 200) {
-                // Ollama returns a stream of JSON objects, we need to parse the final one
                 String responseBody = response.body();
                 CraftoMod.LOGGER.info("Ollama response received (length: {})", responseBody.length());
 
-                // Parse the Ollama JSON response properly
                 try {
-                    JsonObject ollamaResponse = JsonParser.parseString(responseBody).getAsJsonObject();
-                    if (ollamaResponse.has("response")) {
-                        String rawResponse = ollamaResponse.get("response").getAsString();
-                        // The response is already a JSON string from Mistral, no need to unescape
-                        CraftoMod.LOGGER.info("Extracted response from Ollama: {}", rawResponse);
-                        return rawResponse;
+                    JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
+                    reportStats(json, onStats);
+                    String content = messageContent(json);
+                    if (content != null) {
+                        CraftoMod.LOGGER.info("Extracted response from Ollama: {}", content);
+                        return content;
                     }
                 } catch (Exception e) {
                     CraftoMod.LOGGER.error("Failed to parse Ollama JSON response", e);
@@ -97,9 +147,318 @@ public class OllamaClient {
                 return null;
             }
 
+        } catch (LLMUnavailableException e) {
+            CraftoMod.LOGGER.debug("Ollama request not sent: {}", e.getMessage());
+            return null;
         } catch (IOException | InterruptedException e) {
-            CraftoMod.LOGGER.error("Failed to communicate with Ollama", e);
+            CraftoMod.LOGGER.error("Failed to communicate with Ollama: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #sendRequest}. Ollama answers with one NDJSON object per
+     * generated fragment; every fragment is passed to {@code onChunk} as soon as it arrives,
+     * and the concatenated text is returned once the model reports {@code done}.
+     */
+    public String sendStreamingRequest(String systemPrompt, String userPrompt, Consumer<String> onChunk) {
+        return sendStreamingRequest(systemPrompt, userPrompt, onChunk, DEFAULT_TIMEOUT);
+    }
+
+    public String sendStreamingRequest(String systemPrompt, String userPrompt, Consumer<String> onChunk, Duration timeout) {
+        return sendStreamingRequest(systemPrompt, userPrompt, onChunk, timeout, null);
+    }
+
+    /**
+     * @param onStats receives the token counters from the final fragment, or null
+     */
+    public String sendStreamingRequest(String systemPrompt, String userPrompt, Consumer<String> onChunk, Duration timeout,
+                                       Consumer<GenerationStats> onStats) {
+        try {
+            byte[] jsonPayload = buildPayload(systemPrompt, userPrompt, true);
+            CraftoMod.LOGGER.info("Sending streaming request to Ollama, payload length: {}", jsonPayload.length);
+
+            long startTime = System.currentTimeMillis();
+            // Таймаут запроса действует только до заголовков ответа - дальше срок держит readStream
+            long deadline = startTime + timeout.toMillis();
+            HttpResponse<Stream<String>> response = transport.postStreaming(CHAT_PATH, jsonPayload, timeout);
+
+            if (response.statusCode() != 200) {
+                String body;
+                try (Stream<String> lines = response.body()) {
+                    body = lines.collect(Collectors.joining("\n"));
+                }
+                CraftoMod.LOGGER.error("Ollama API error: {} - {}", response.statusCode(), body);
+                return null;
+            }
+
+            String text = readStream(response.body(), deadline, onChunk, chunk -> reportStats(chunk, onStats));
+            if (text == null) {
+                return null;
+            }
+
+            CraftoMod.LOGGER.info("Ollama stream finished in {} ms (length: {})",
+                System.currentTimeMillis() - startTime, text.length());
+            return text;
+
+        } catch (LLMUnavailableException e) {
+            CraftoMod.LOGGER.debug("Ollama request not sent: {}", e.getMessage());
+            return null;
+        } catch (IOException | InterruptedException e) {
+            CraftoMod.LOGGER.error("Failed to stream from Ollama: {}", e.toString());
+            return null;
+        } catch (RuntimeException e) {
+            CraftoMod.LOGGER.error("Failed to stream from Ollama", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads an NDJSON chat stream until the model reports {@code done}. At {@code deadlineMillis} a timer
+     * closes the body, which also unblocks a read waiting on a stream that stopped writing.
+     *
+     * @param onDone receives the final fragment, the one carrying the token counters
+     * @return the concatenated text, or null on an error fragment or once the deadline passed
+     */
+    static String readStream(Stream<String> lines, long deadlineMillis, Consumer<String> onChunk,
+                             Consumer<JsonObject> onDone) {
+        AtomicBoolean expired = new AtomicBoolean();
+        ScheduledFuture<?> watchdog = STREAM_DEADLINES.schedule(() -> {
+            expired.set(true);
+            lines.close();
+        }, Math.max(0, deadlineMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+        StringBuilder fullResponse = new StringBuilder();
+        boolean done = false;
+        try {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                String line = iterator.next();
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                JsonObject chunk = JsonParser.parseString(line).getAsJsonObject();
+                if (chunk.has("error")) {
+                    CraftoMod.LOGGER.error("Ollama stream error: {}", chunk.get("error").getAsString());
+                    return null;
+                }
+                String fragment = messageContent(chunk);
+                if (fragment != null && !fragment.isEmpty()) {
+                    fullResponse.append(fragment);
+                    onChunk.accept(fragment);
+                }
+                if (chunk.has("done") && chunk.get("done").getAsBoolean()) {
+                    onDone.accept(chunk);
+                    done = true;
+                    break;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            if (!expired.get()) {
+                throw e;
+            }
+        } finally {
+            // Поток закрывает кто-то один: таймер, если он уже сработал, иначе мы
+            if (watchdog.cancel(false)) {
+                lines.close();
+            }
+        }
+
+        if (expired.get() && !done) {
+            CraftoMod.LOGGER.warn("Ollama stream passed its deadline after {} chars, abandoning it", fullResponse.length());
             return null;
         }
+        return fullResponse.toString();
+    }
+
+    /**
+     * Loads the model on every endpoint and pins it for {@code keep_alive} without generating
+     * anything, so the first player command does not pay the model load time. The model is loaded
+     * with the {@code num_ctx} a full-budget prompt needs, otherwise the first command would reload it.
+     *
+     * @return true once at least one endpoint has the model loaded
+     */
+    public CompletableFuture<Boolean> warmUp(String systemPrompt) {
+        int numCtx = contextWindow().select(getModel(), PromptAssembler.estimateTokens(systemPrompt)
+            + CraftoConfig.OLLAMA_PROMPT_TOKEN_BUDGET.get() + maxTokens() + CHAT_TEMPLATE_TOKENS);
+        String payload = "{\"model\":" + JSON.toJson(getModel())
+            + ",\"messages\":[],\"keep_alive\":" + keepAliveJson()
+            + ",\"options\":{\"num_ctx\":" + numCtx + "}}";
+        long startTime = System.currentTimeMillis();
+
+        List<CompletableFuture<Boolean>> loads = new ArrayList<>();
+        for (CompletableFuture<HttpResponse<String>> request : transport.postToAll(CHAT_PATH, payload, WARM_UP_TIMEOUT)) {
+            loads.add(request
+                .thenApply(response -> {
+                    boolean loaded = response.statusCode() == 200;
+                    if (loaded) {
+                        CraftoMod.LOGGER.info("Ollama model '{}' loaded at {} in {} ms", getModel(), response.uri().getAuthority(),
+                            System.currentTimeMillis() - startTime);
+                    } else {
+                        CraftoMod.LOGGER.warn("Ollama warm-up failed: {} - {}", response.statusCode(), response.body());
+                    }
+                    return loaded;
+                })
+                .exceptionally(e -> {
+                    CraftoMod.LOGGER.warn("Ollama warm-up failed: {}", e.getMessage());
+                    return false;
+                }));
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture[0]))
+            .thenApply(done -> loads.stream().anyMatch(CompletableFuture::join));
+    }
+
+    private void reportStats(JsonObject response, Consumer<GenerationStats> onStats) {
+        GenerationStats stats = GenerationStats.from(getModel(), response);
+        if (stats == null) {
+            return;
+        }
+        CraftoMod.LOGGER.debug("Ollama '{}': {} prompt tokens, {} output tokens at {} tok/s",
+            stats.getModel(), stats.getPromptTokens(), stats.getOutputTokens(), Math.round(stats.getTokensPerSecond()));
+        if (onStats != null) {
+            onStats.accept(stats);
+        }
+    }
+
+    // Текст ответа: message.content в /api/chat
+    private static String messageContent(JsonObject response) {
+        if (response.has("message") && response.get("message").isJsonObject()) {
+            JsonObject message = response.getAsJsonObject("message");
+            if (message.has("content")) {
+                return message.get("content").getAsString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Payload layout: everything up to the user message content is the constant prefix
+     * (model, keep_alive, options, system message) and is encoded once; per request only
+     * the user message and the tail are encoded.
+     */
+    private byte[] buildPayload(String systemPrompt, String userPrompt, boolean stream) {
+        int maxTokens = maxTokens();
+        int numCtx = contextWindow().select(getModel(), PromptAssembler.estimateTokens(systemPrompt)
+            + PromptAssembler.estimateTokens(userPrompt) + maxTokens + CHAT_TEMPLATE_TOKENS);
+        byte[] prefix = prefixFor(systemPrompt, maxTokens, numCtx);
+
+        String schema = format.get();
+        String tail = JSON.toJson(userPrompt) + "}],\"stream\":" + stream
+            + (schema != null ? ",\"format\":" + schema : "") + "}";
+        byte[] suffix = tail.getBytes(StandardCharsets.UTF_8);
+
+        byte[] payload = new byte[prefix.length + suffix.length];
+        System.arraycopy(prefix, 0, payload, 0, prefix.length);
+        System.arraycopy(suffix, 0, payload, prefix.length, suffix.length);
+        return payload;
+    }
+
+    private int maxTokens() {
+        return maxTokens > 0 ? maxTokens : CraftoConfig.OLLAMA_MAX_TOKENS.get();
+    }
+
+    private ContextWindow contextWindow() {
+        return contextWindows.computeIfAbsent(getModel(), model -> new ContextWindow());
+    }
+
+    private byte[] prefixFor(String systemPrompt, int maxTokens, int numCtx) {
+        String model = getModel();
+        String keepAlive = CraftoConfig.OLLAMA_KEEP_ALIVE.get();
+        double temperature = CraftoConfig.OLLAMA_TEMPERATURE.get();
+
+        PayloadPrefix prefix = cachedPrefixes.get(model);
+        if (prefix != null && prefix.matches(model, keepAlive, temperature, maxTokens, numCtx, systemPrompt)) {
+            return prefix.bytes;
+        }
+
+        // Числа форматируем явно, чтобы локаль не подставила запятую вместо точки
+        String options = String.format(Locale.ROOT,
+            "{\"temperature\":%.1f,\"num_predict\":%d,\"num_ctx\":%d,\"num_thread\":8,\"repeat_penalty\":1.1,\"top_k\":40,\"top_p\":0.9}",
+            temperature, maxTokens, numCtx);
+        String json = "{\"model\":" + JSON.toJson(model)
+            + ",\"keep_alive\":" + keepAliveJson()
+            + ",\"options\":" + options
+            + ",\"messages\":[{\"role\":\"system\",\"content\":" + JSON.toJson(systemPrompt)
+            + "},{\"role\":\"user\",\"content\":";
+
+        prefix = new PayloadPrefix(model, keepAlive, temperature, maxTokens, numCtx, systemPrompt,
+            json.getBytes(StandardCharsets.UTF_8));
+        cachedPrefixes.put(model, prefix);
+        CraftoMod.LOGGER.debug("Encoded Ollama payload prefix ({} bytes)", prefix.bytes.length);
+        return prefix.bytes;
+    }
+
+    // "30m", "1h" - строка; "-1" или "0" Ollama ждёт числом
+    private static String keepAliveJson() {
+        String keepAlive = CraftoConfig.OLLAMA_KEEP_ALIVE.get().trim();
+        return keepAlive.matches("-?\\d+") ? keepAlive : JSON.toJson(keepAlive);
+    }
+
+    private static final class PayloadPrefix {
+        final String model;
+        final String keepAlive;
+        final double temperature;
+        final int maxTokens;
+        final int numCtx;
+        final String systemPrompt;
+        final byte[] bytes;
+
+        PayloadPrefix(String model, String keepAlive, double temperature, int maxTokens, int numCtx, String systemPrompt,
+                      byte[] bytes) {
+            this.model = model;
+            this.keepAlive = keepAlive;
+            this.temperature = temperature;
+            this.maxTokens = maxTokens;
+            this.numCtx = numCtx;
+            this.systemPrompt = systemPrompt;
+            this.bytes = bytes;
+        }
+
+        boolean matches(String model, String keepAlive, double temperature, int maxTokens, int numCtx, String systemPrompt) {
+            // Системный промпт - обычно тот же экземпляр строки, сравнение по ссылке срабатывает первым
+            return (this.systemPrompt == systemPrompt || this.systemPrompt.equals(systemPrompt))
+                && this.model.equals(model)
+                && this.keepAlive.equals(keepAlive)
+                && this.temperature == temperature
+                && this.maxTokens == maxTokens
+                && this.numCtx == numCtx;
+        }
+    }
+
+    /**
+     * {@code num_ctx} currently used for one model. Every change makes Ollama reload the model with a
+     * new KV cache (seconds, and the cached prompt prefix is lost), so the window grows as soon as a
+     * prompt needs it but shrinks only after a long run of requests that would all fit a smaller one.
+     */
+    static final class ContextWindow {
+        private static final int SHRINK_AFTER = 50;
+
+        private int current;
+        private int smallerStreak;
+        private int streakMax;
+
+        synchronized int select(String model, int neededTokens) {
+            int bucket = PromptAssembler.contextBucket(neededTokens);
+            if (bucket > current) {
+                if (current != 0) {
+                    CraftoMod.LOGGER.info("Raising num_ctx of '{}' from {} to {} for a ~{} token request - Ollama reloads the model",
+                        model, current, bucket, neededTokens);
+                }
+                current = bucket;
+                smallerStreak = 0;
+            } else if (bucket < current) {
+                streakMax = smallerStreak == 0 ? bucket : Math.max(streakMax, bucket);
+                if (++smallerStreak >= SHRINK_AFTER) {
+                    CraftoMod.LOGGER.info("Lowering num_ctx of '{}' from {} to {} - Ollama reloads the model",
+                        model, current, streakMax);
+                    current = streakMax;
+                    smallerStreak = 0;
+                }
+            } else {
+                smallerStreak = 0;
+            }
+            return current;
+        }
     }
 }
@@ -0,0 +1,201 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.action.Task;
+import com.crafto.ai.config.CraftoConfig;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON schema of the plan contract {"reasoning", "plan", "tasks": [{"action", "parameters"}]},
+ * sent as Ollama's {@code format} so the model can only generate valid plans.
+ * Every action has its own parameter schema with the keys its BaseAction reads; the same
+ * definitions validate tasks from models that ran without the schema.
+ */
+public final class PlanSchema {
+    // Параметры действий: action -> (properties, required); заполняются в buildSchema()
+    private static final Map<String, JsonObject> ACTION_PARAMETERS = new HashMap<>();
+    private static final Map<String, List<String>> ACTION_REQUIRED = new HashMap<>();
+    private static final String SCHEMA_JSON = buildSchema().toString();
+
+    private PlanSchema() {
+    }
+
+    public static boolean isEnabled() {
+        return CraftoConfig.OLLAMA_STRUCTURED_OUTPUT.get();
+    }
+
+    /**
+     * @return the schema when constrained generation is on, otherwise null (free-form JSON mode)
+     */
+    public static String formatIfEnabled() {
+        return isEnabled() ? SCHEMA_JSON : null;
+    }
+
+    public static String getSchemaJson() {
+        return SCHEMA_JSON;
+    }
+
+    public static boolean isKnownAction(String action) {
+        return ACTION_PARAMETERS.containsKey(action);
+    }
+
+    /**
+     * Checks a task against its action's schema: the action exists, required parameters are present
+     * and typed parameters have the right type. Parameters the schema does not list are ignored.
+     *
+     * @return null if the task is valid, otherwise a short description of the problem
+     */
+    public static String validate(Task task) {
+        JsonObject properties = ACTION_PARAMETERS.get(task.getAction());
+        if (properties == null) {
+            return "unknown action '" + task.getAction() + "'";
+        }
+        for (String key : ACTION_REQUIRED.get(task.getAction())) {
+            if (task.getParameter(key) == null) {
+                return task.getAction() + ": missing '" + key + "'";
+            }
+        }
+        for (Map.Entry<String, Object> parameter : task.getParameters().entrySet()) {
+            JsonElement schema = properties.get(parameter.getKey());
+            if (schema != null && !hasType(parameter.getValue(), schema.getAsJsonObject().get("type").getAsString())) {
+                return task.getAction() + ": '" + parameter.getKey() + "' is not " + schema.getAsJsonObject().get("type").getAsString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whole-response check used before a plan is cached: it parses into at least one task and
+     * every task passes {@link #validate}.
+     */
+    public static boolean isValidPlan(String response) {
+        ResponseParser.ParsedResponse parsed = response != null ? ResponseParser.parseAIResponse(response) : null;
+        if (parsed == null || parsed.getTasks().isEmpty()) {
+            return false;
+        }
+        for (Task task : parsed.getTasks()) {
+            if (validate(task) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasType(Object value, String type) {
+        return switch (type) {
+            case "integer" -> value instanceof Number;
+            case "string" -> value instanceof String || value instanceof Number;
+            case "array" -> value instanceof List;
+            default -> true;
+        };
+    }
+
+    private static JsonObject buildSchema() {
+        JsonArray actions = new JsonArray();
+        actions.add(action("mine", params("block", "string", "quantity", "integer"), "block", "quantity"));
+        actions.add(action("build", buildParams(), "structure"));
+        actions.add(action("attack", params("target", "string"), "target"));
+        actions.add(action("kill", params("target", "string", "count", "integer"), "target", "count"));
+        actions.add(action("spawn", params("count", "integer"), "count"));
+        actions.add(action("follow", params("player", "string"), "player"));
+        actions.add(action("pathfind", params("x", "integer", "y", "integer", "z", "integer"), "x", "y", "z"));
+        actions.add(action("place", params("block", "string", "x", "integer", "y", "integer", "z", "integer"),
+            "block", "x", "y", "z"));
+        actions.add(action("craft", params("item", "string", "quantity", "integer"), "item", "quantity"));
+        actions.add(action("gather", params("resource", "string", "quantity", "integer"), "resource", "quantity"));
+        actions.add(action("explore", params("radius", "integer", "x", "integer", "y", "integer", "z", "integer")));
+        actions.add(action("create_waypoint", waypointParams(), "name"));
+
+        JsonObject taskItems = new JsonObject();
+        taskItems.add("anyOf", actions);
+
+        JsonObject tasks = new JsonObject();
+        tasks.addProperty("type", "array");
+        tasks.add("items", taskItems);
+
+        JsonObject properties = new JsonObject();
+        properties.add("reasoning", type("string"));
+        properties.add("plan", type("string"));
+        properties.add("tasks", tasks);
+
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+        schema.add("properties", properties);
+        schema.add("required", strings("reasoning", "plan", "tasks"));
+        return schema;
+    }
+
+    private static JsonObject buildParams() {
+        JsonObject properties = params("structure", "string", "material", "string");
+
+        JsonObject blocks = type("array");
+        blocks.add("items", type("string"));
+        properties.add("blocks", blocks);
+
+        JsonObject dimensions = type("array");
+        dimensions.add("items", type("integer"));
+        dimensions.addProperty("minItems", 3);
+        dimensions.addProperty("maxItems", 3);
+        properties.add("dimensions", dimensions);
+        return properties;
+    }
+
+    private static JsonObject waypointParams() {
+        JsonObject properties = params("name", "string", "x", "integer", "y", "integer", "z", "integer",
+            "description", "string");
+        JsonObject type = type("string");
+        type.add("enum", strings("BASE", "MINE", "FARM", "LANDMARK", "TRADING_POST", "DANGER_ZONE"));
+        properties.add("type", type);
+        return properties;
+    }
+
+    private static JsonObject action(String name, JsonObject parameterProperties, String... required) {
+        ACTION_PARAMETERS.put(name, parameterProperties);
+        ACTION_REQUIRED.put(name, List.of(required));
+
+        JsonObject parameters = type("object");
+        parameters.add("properties", parameterProperties);
+        parameters.add("required", strings(required));
+        parameters.addProperty("additionalProperties", false);
+
+        JsonObject actionName = type("string");
+        actionName.add("enum", strings(name));
+
+        JsonObject properties = new JsonObject();
+        properties.add("action", actionName);
+        properties.add("parameters", parameters);
+
+        JsonObject task = type("object");
+        task.add("properties", properties);
+        task.add("required", strings("action", "parameters"));
+        return task;
+    }
+
+    // Пары "имя, тип"
+    private static JsonObject params(String... namesAndTypes) {
+        JsonObject properties = new JsonObject();
+        for (int i = 0; i + 1 < namesAndTypes.length; i += 2) {
+            properties.add(namesAndTypes[i], type(namesAndTypes[i + 1]));
+        }
+        return properties;
+    }
+
+    private static JsonObject type(String type) {
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", type);
+        return schema;
+    }
+
+    private static JsonArray strings(String... values) {
+        JsonArray array = new JsonArray();
+        for (String value : values) {
+            array.add(value);
+        }
+        return array;
+    }
+}
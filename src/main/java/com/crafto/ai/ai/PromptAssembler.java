@@ -0,0 +1,163 @@
+package com.crafto.ai.ai;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds a prompt from prioritized sections under a token budget. Sections keep the order they
+ * were added in; when the prompt does not fit, the lowest-priority section loses its items from
+ * the end first and is dropped completely once it has none left. Required sections are never cut.
+ */
+public class PromptAssembler {
+    /** {@code num_ctx} values to choose from; every distinct value is a separate model load in Ollama. */
+    static final int[] CONTEXT_BUCKETS = {1024, 2048, 4096, 8192};
+
+    private final List<Section> sections = new ArrayList<>();
+    private final String footer;
+
+    /**
+     * @param footer text always appended after all sections, e.g. the response header
+     */
+    public PromptAssembler(String footer) {
+        this.footer = footer;
+    }
+
+    private static final class Section {
+        final String header;
+        final List<String> items;
+        final String separator;
+        final int priority;
+        final boolean required;
+
+        Section(String header, List<String> items, String separator, int priority, boolean required) {
+            this.header = header;
+            this.items = new ArrayList<>(items);
+            this.separator = separator;
+            this.priority = priority;
+            this.required = required;
+        }
+
+        String text() {
+            return items.isEmpty() ? "" : header + String.join(separator, items) + "\n";
+        }
+    }
+
+    /**
+     * Adds a section that is always kept in full.
+     */
+    public PromptAssembler require(String text) {
+        sections.add(new Section("", List.of(text), "", Integer.MAX_VALUE, true));
+        return this;
+    }
+
+    /**
+     * Adds a single-line section that is either kept whole or dropped.
+     *
+     * @param priority higher values are kept longer
+     */
+    public PromptAssembler add(int priority, String text) {
+        return add(priority, "", List.of(text), "");
+    }
+
+    /**
+     * Adds a list section; items at the end are trimmed first.
+     */
+    public PromptAssembler add(int priority, String header, List<String> items, String separator) {
+        if (!items.isEmpty()) {
+            sections.add(new Section(header, items, separator, priority, false));
+        }
+        return this;
+    }
+
+    /**
+     * Assembles the prompt, trimming sections until its estimate fits {@code budgetTokens}. If the
+     * required sections alone exceed the budget they are returned anyway.
+     */
+    public Result build(int budgetTokens) {
+        List<Section> working = new ArrayList<>(sections.size());
+        for (Section section : sections) {
+            working.add(new Section(section.header, section.items, section.separator, section.priority, section.required));
+        }
+        List<Section> byValue = new ArrayList<>(working);
+        byValue.sort(Comparator.comparingInt(section -> section.priority));
+
+        int tokens = estimateTokens(render(working));
+        int trimmed = 0;
+        for (Section section : byValue) {
+            if (tokens <= budgetTokens) {
+                break;
+            }
+            if (section.required) {
+                continue;
+            }
+            while (tokens > budgetTokens && !section.items.isEmpty()) {
+                section.items.remove(section.items.size() - 1);
+                trimmed++;
+                tokens = estimateTokens(render(working));
+            }
+        }
+        return new Result(render(working), tokens, trimmed);
+    }
+
+    private String render(List<Section> sections) {
+        StringBuilder prompt = new StringBuilder();
+        for (Section section : sections) {
+            prompt.append(section.text());
+        }
+        return prompt.append(footer).toString();
+    }
+
+    /**
+     * Rough token count without a tokenizer: about 4 characters per token for Latin text and 2 for
+     * Cyrillic and other non-ASCII text, which BPE vocabularies split more finely.
+     */
+    public static int estimateTokens(String text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 128) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + (other + 1) / 2;
+    }
+
+    /**
+     * @return the smallest {@code num_ctx} bucket holding {@code tokens}, or the largest one
+     */
+    public static int contextBucket(int tokens) {
+        for (int bucket : CONTEXT_BUCKETS) {
+            if (tokens <= bucket) {
+                return bucket;
+            }
+        }
+        return CONTEXT_BUCKETS[CONTEXT_BUCKETS.length - 1];
+    }
+
+    public static class Result {
+        private final String text;
+        private final int estimatedTokens;
+        private final int trimmedItems;
+
+        Result(String text, int estimatedTokens, int trimmedItems) {
+            this.text = text;
+            this.estimatedTokens = estimatedTokens;
+            this.trimmedItems = trimmedItems;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getEstimatedTokens() {
+            return estimatedTokens;
+        }
+
+        public int getTrimmedItems() {
+            return trimmedItems;
+        }
+    }
+}
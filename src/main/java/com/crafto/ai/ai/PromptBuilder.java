@@ -21,7 +21,7 @@ public class PromptBuilder {
             - attack: {"target": "hostile"}
             - kill: {"target": "mob_type", "count": number}
             - spawn: {"count": number}
-            - follow: {"player": "player_name"}
+            - follow: {"player": "player_name"} ("me" for the player who gave the command)
 
             SUPPORTED STRUCTURES:
             - house/дом: Basic simple house (use ONLY for "build house", NOT for "build big house")
@@ -64,7 +64,7 @@ public class PromptBuilder {
             "построй огромный дом" -> {"reasoning": "Строю большой дом из NBT шаблона", "plan": "Построить большой двухэтажный дом", "tasks": [{"action": "build", "parameters": {"structure": "big-house"}}]}
             "найди алмазы" -> {"reasoning": "Ищу алмазы", "plan": "Исследовать область для поиска алмазов", "tasks": [{"action": "explore", "parameters": {"radius": 100}}]}
             "убей зомби" -> {"reasoning": "Атакую зомби", "plan": "Найти и убить зомби", "tasks": [{"action": "kill", "parameters": {"target": "zombie", "count": 1}}]}
-            "следуй за мной" -> {"reasoning": "Следую за игроком", "plan": "Следовать за игроком", "tasks": [{"action": "follow", "parameters": {}}]}
+            "следуй за мной" -> {"reasoning": "Следую за игроком", "plan": "Следовать за игроком", "tasks": [{"action": "follow", "parameters": {"player": "me"}}]}
             "построй замок" -> {"reasoning": "Строю замок", "plan": "Построить замок с башнями", "tasks": [{"action": "build", "parameters": {"structure": "castle"}}]}
             "построй башню" -> {"reasoning": "Строю башню", "plan": "Построить высокую башню", "tasks": [{"action": "build", "parameters": {"structure": "tower"}}]}
 
@@ -72,23 +72,31 @@ public class PromptBuilder {
             """;
     }
 
-    public static String buildUserPrompt(CraftoEntity crafto, String command, WorldKnowledge worldKnowledge) {
-        StringBuilder prompt = new StringBuilder();
-        
-        // Give agents FULL situational awareness
-        prompt.append("=== YOUR SITUATION ===\n");
-        prompt.append("Position: ").append(formatPosition(crafto.blockPosition())).append("\n");
-        prompt.append("Nearby Players: ").append(worldKnowledge.getNearbyPlayerNames()).append("\n");
-        prompt.append("Nearby Entities: ").append(worldKnowledge.getNearbyEntitiesSummary()).append("\n");
-        prompt.append("Nearby Blocks: ").append(worldKnowledge.getNearbyBlocksSummary()).append("\n");
-        prompt.append("Biome: ").append(worldKnowledge.getBiomeName()).append("\n");
-        
-        prompt.append("\n=== PLAYER COMMAND ===\n");
-        prompt.append("\"").append(command).append("\"\n");
-        
-        prompt.append("\n=== YOUR RESPONSE (with reasoning) ===\n");
-        
-        return prompt.toString();
+    /**
+     * Per-command prompt as prioritized sections, so TaskPlanner can add memory context and fit
+     * the whole prompt into the token budget. The command itself and the position are never cut.
+     */
+    public static PromptAssembler assembleUserPrompt(CraftoEntity crafto, String command, WorldKnowledge worldKnowledge) {
+        // Give agents FULL situational awareness - as much of it as the budget allows
+        return new PromptAssembler("\n=== YOUR RESPONSE (with reasoning) ===\n")
+            .require("=== YOUR SITUATION ===\nPosition: " + formatPosition(crafto.blockPosition()))
+            .add(80, "Nearby Players: ", summaryItems(worldKnowledge.getNearbyPlayerNames()), ", ")
+            .add(70, "Nearby Entities: ", summaryItems(worldKnowledge.getNearbyEntitiesSummary()), ", ")
+            .add(50, "Nearby Blocks: ", summaryItems(worldKnowledge.getNearbyBlocksSummary()), ", ")
+            .add(90, "Biome: " + worldKnowledge.getBiomeName())
+            .require("\n=== PLAYER COMMAND ===\n\"" + command + "\"");
+    }
+
+    /**
+     * Section that tells the model why the previous plan for the same command failed.
+     */
+    public static String previousFailureSection(String failure) {
+        return "\n=== PREVIOUS ATTEMPT FAILED ===\n" + failure + "\nMake a different plan that avoids this problem.";
+    }
+
+    // Сводки WorldKnowledge - элементы через запятую, от самых частых к редким
+    private static List<String> summaryItems(String summary) {
+        return List.of(summary.split(", "));
     }
 
     private static String formatPosition(BlockPos pos) {
@@ -1,136 +1,53 @@
 package com.crafto.ai.ai;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.crafto.ai.CraftoMod;
 import com.crafto.ai.action.Task;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 public class ResponseParser {
     
+    /**
+     * Parses a plan in one pass with {@link TolerantJsonReader}. Works the same for schema-constrained
+     * output and for free-form output with fences, comments or comma mistakes.
+     */
     public static ParsedResponse parseAIResponse(String response) {
         if (response == null || response.isEmpty()) {
             return null;
         }
 
         try {
-            CraftoMod.LOGGER.info("ResponseParser input: {}", response);
-            String jsonString = extractJSON(response);
-            CraftoMod.LOGGER.info("ResponseParser extracted JSON: {}", jsonString);
-
-            JsonObject json = JsonParser.parseString(jsonString).getAsJsonObject();
-            
-            String reasoning = json.has("reasoning") ? json.get("reasoning").getAsString() : "";
-            String plan = json.has("plan") ? json.get("plan").getAsString() : "";
-            List<Task> tasks = new ArrayList<>();
-            
-            if (json.has("tasks") && json.get("tasks").isJsonArray()) {
-                JsonArray tasksArray = json.getAsJsonArray("tasks");
-                
-                for (JsonElement taskElement : tasksArray) {
-                    if (taskElement.isJsonObject()) {
-                        JsonObject taskObj = taskElement.getAsJsonObject();
-                        Task task = parseTask(taskObj);
-                        if (task != null) {
-                            tasks.add(task);
-                        }
-                    }
-                }
+            CraftoMod.LOGGER.debug("ResponseParser input: {}", response);
+            ParsedResponse parsed = TolerantJsonReader.readPlan(response);
+            if (parsed == null) {
+                CraftoMod.LOGGER.error("No JSON object in AI response: {}", response);
+                return null;
             }
             
+            List<Task> tasks = parsed.getTasks();
             // Filter out mining tasks for build commands to prevent complex plans
             if (hasBuildTask(tasks)) {
-                tasks = filterOutMiningTasks(tasks);
+                return filterOutMiningTasks(parsed);
             }
-
-            if (!reasoning.isEmpty()) {            }
-
-            return new ParsedResponse(reasoning, plan, tasks);
+            return parsed;
             
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
             CraftoMod.LOGGER.error("Failed to parse AI response: {}", response, e);
             return null;
         }
     }
 
-    private static String extractJSON(String response) {
-        String cleaned = response.trim();
-
-        if (cleaned.startsWith("```json")) {
-            cleaned = cleaned.substring(7);
-        } else if (cleaned.startsWith("```")) {
-            cleaned = cleaned.substring(3);
-        }
-
-        if (cleaned.endsWith("```")) {
-            cleaned = cleaned.substring(0, cleaned.length() - 3);
-        }
-
-        cleaned = cleaned.trim();
-
-        // Remove comments (// ... and /* ... */)
-        cleaned = cleaned.replaceAll("//.*$", ""); // Remove single-line comments
-        cleaned = cleaned.replaceAll("/\\*.*?\\*/", ""); // Remove multi-line comments
-
-        // Fix common JSON formatting issues
-        cleaned = cleaned.replaceAll("\\n\\s*", " ");
-
-        // Fix missing commas between array/object elements (common AI mistake)
-        cleaned = cleaned.replaceAll("}\\s+\\{", "},{");
-        cleaned = cleaned.replaceAll("}\\s+\\[", "},[");
-        cleaned = cleaned.replaceAll("]\\s+\\{", "],{");
-        cleaned = cleaned.replaceAll("]\\s+\\[", "],[");
-        cleaned = cleaned.replaceAll(",\\s*}", "}"); // Remove trailing commas
-        cleaned = cleaned.replaceAll(",\\s*]", "]"); // Remove trailing commas
-
-        return cleaned;
-    }
-
-    private static Task parseTask(JsonObject taskObj) {
-        if (!taskObj.has("action")) {
+    /**
+     * Parses a single element of the "tasks" array, used by {@link StreamingTaskParser}.
+     */
+    static Task parseTaskElement(String taskJson) {
+        try {
+            return TolerantJsonReader.readTask(taskJson);
+        } catch (RuntimeException e) {
             return null;
         }
-        
-        String action = taskObj.get("action").getAsString();
-        Map<String, Object> parameters = new HashMap<>();
-        
-        if (taskObj.has("parameters") && taskObj.get("parameters").isJsonObject()) {
-            JsonObject paramsObj = taskObj.getAsJsonObject("parameters");
-            
-            for (String key : paramsObj.keySet()) {
-                JsonElement value = paramsObj.get(key);
-                
-                if (value.isJsonPrimitive()) {
-                    if (value.getAsJsonPrimitive().isNumber()) {
-                        parameters.put(key, value.getAsNumber());
-                    } else if (value.getAsJsonPrimitive().isBoolean()) {
-                        parameters.put(key, value.getAsBoolean());
-                    } else {
-                        parameters.put(key, value.getAsString());
-                    }
-                } else if (value.isJsonArray()) {
-                    List<Object> list = new ArrayList<>();
-                    for (JsonElement element : value.getAsJsonArray()) {
-                        if (element.isJsonPrimitive()) {
-                            if (element.getAsJsonPrimitive().isNumber()) {
-                                list.add(element.getAsNumber());
-                            } else {
-                                list.add(element.getAsString());
-                            }
-                        }
-                    }
-                    parameters.put(key, list);
-                }
-            }
-        }
-        
-        return new Task(action, parameters);
     }
 
     /**
@@ -140,31 +57,62 @@ public class ResponseParser {
         return tasks.stream().anyMatch(task -> "build".equals(task.getAction()));
     }
 
+    /**
+     * Whether the build-command filter keeps the task no matter what else the plan contains
+     */
+    static boolean keptByBuildFilter(Task task) {
+        return "build".equals(task.getAction());
+    }
+
     /**
      * Filter out non-build tasks from the task list when build tasks are present
      */
-    private static List<Task> filterOutMiningTasks(List<Task> tasks) {
+    private static ParsedResponse filterOutMiningTasks(ParsedResponse parsed) {
+        List<Task> tasks = parsed.getTasks();
         List<Task> filteredTasks = new ArrayList<>();
-        for (Task task : tasks) {
-            String action = task.getAction();
-            if ("build".equals(action)) {
+        int[] elementIndices = new int[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (keptByBuildFilter(task)) {
+                elementIndices[filteredTasks.size()] = parsed.getElementIndex(i);
                 filteredTasks.add(task);
             } else {
-                CraftoMod.LOGGER.info("Filtered out non-build task from build command: {}", task);
+                CraftoMod.LOGGER.debug("Filtered out non-build task from build command: {}", task);
             }
         }
-        return filteredTasks;
+        return new ParsedResponse(parsed.getReasoning(), parsed.getPlan(), filteredTasks,
+            Arrays.copyOf(elementIndices, filteredTasks.size()), parsed.isTruncated());
     }
 
     public static class ParsedResponse {
         private final String reasoning;
         private final String plan;
         private final List<Task> tasks;
+        private final int[] elementIndices;  // null - задачи идут подряд, без пропусков
+        private final boolean truncated;     // текст оборвался посреди JSON
 
         public ParsedResponse(String reasoning, String plan, List<Task> tasks) {
+            this(reasoning, plan, tasks, null);
+        }
+
+        /**
+         * @param elementIndices index of each task among the object elements of the model's "tasks"
+         *                       array; elements that did not parse leave gaps
+         */
+        public ParsedResponse(String reasoning, String plan, List<Task> tasks, int[] elementIndices) {
+            this(reasoning, plan, tasks, elementIndices, false);
+        }
+
+        /**
+         * @param truncated whether the text ended inside the JSON object - an unfinished last task
+         *                  is then missing from {@code tasks}
+         */
+        public ParsedResponse(String reasoning, String plan, List<Task> tasks, int[] elementIndices, boolean truncated) {
             this.reasoning = reasoning;
             this.plan = plan;
             this.tasks = tasks;
+            this.elementIndices = elementIndices;
+            this.truncated = truncated;
         }
 
         public String getReasoning() {
@@ -178,5 +126,17 @@ public class ResponseParser {
         public List<Task> getTasks() {
             return tasks;
         }
+
+        /**
+         * @return index of the {@code task}-th task among the object elements of the response's "tasks"
+         * array, the numbering {@link StreamingTaskParser.Listener} reports
+         */
+        public int getElementIndex(int task) {
+            return elementIndices != null ? elementIndices[task] : task;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
     }
 }
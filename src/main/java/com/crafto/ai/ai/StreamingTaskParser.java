@@ -0,0 +1,126 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.CraftoMod;
+import com.crafto.ai.action.Task;
+
+/**
+ * Incremental scanner for a streamed {"reasoning", "plan", "tasks": [...]} response.
+ * Text fragments are fed as they arrive from Ollama; every element of the top-level
+ * "tasks" array is parsed the moment its closing brace arrives. Only tasks the final parse is sure
+ * to keep are handed to the listener: those that pass {@link PlanSchema#validate} and survive the
+ * build-command filter of {@link ResponseParser} whatever comes later in the array. The rest wait
+ * for the full plan.
+ */
+public class StreamingTaskParser {
+    /**
+     * Receives each streamed task together with its index among the object elements of the
+     * "tasks" array, so the final parse can be matched up even when some elements were skipped.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onTask(int elementIndex, Task task);
+    }
+
+    private final Listener taskListener;
+    private final StringBuilder buffer = new StringBuilder();
+
+    private int scanPosition = 0;
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+    private int stringStart = -1;
+    private String lastRootString = null;   // последняя строка на верхнем уровне объекта (кандидат в ключ)
+    private int tasksArrayDepth = -1;       // глубина массива "tasks", -1 пока не найден
+    private int elementStart = -1;
+    private boolean tasksFinished = false;
+    private int emittedTasks = 0;
+    private int elementCount = 0;           // все объекты массива "tasks", включая пропущенные
+
+    public StreamingTaskParser(Listener taskListener) {
+        this.taskListener = taskListener;
+    }
+
+    public void feed(String fragment) {
+        if (fragment == null || fragment.isEmpty() || tasksFinished) {
+            return;
+        }
+        buffer.append(fragment);
+
+        for (; scanPosition < buffer.length(); scanPosition++) {
+            char c = buffer.charAt(scanPosition);
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                    if (depth == 1) {
+                        lastRootString = buffer.substring(stringStart + 1, scanPosition);
+                    }
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '"' -> {
+                    inString = true;
+                    stringStart = scanPosition;
+                }
+                case '{' -> {
+                    if (depth == tasksArrayDepth && elementStart < 0) {
+                        elementStart = scanPosition;
+                    }
+                    depth++;
+                }
+                case '[' -> {
+                    if (depth == 1 && tasksArrayDepth < 0 && "tasks".equals(lastRootString)) {
+                        tasksArrayDepth = depth + 1;
+                    }
+                    depth++;
+                }
+                case '}' -> {
+                    depth--;
+                    if (depth == tasksArrayDepth && elementStart >= 0) {
+                        emit(buffer.substring(elementStart, scanPosition + 1));
+                        elementStart = -1;
+                    }
+                }
+                case ']' -> {
+                    depth--;
+                    if (tasksArrayDepth > 0 && depth < tasksArrayDepth) {
+                        tasksFinished = true;
+                        return;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private void emit(String element) {
+        int elementIndex = elementCount++;
+        Task task = ResponseParser.parseTaskElement(element);
+        if (task == null) {
+            CraftoMod.LOGGER.warn("Skipping unparseable streamed task: {}", element);
+            return;
+        }
+        String problem = PlanSchema.validate(task);
+        if (problem != null) {
+            CraftoMod.LOGGER.warn("Skipping invalid streamed task: {}", problem);
+            return;
+        }
+        if (!ResponseParser.keptByBuildFilter(task)) {
+            // Фильтр ещё может убрать задачу, если дальше в массиве появится build - ждём полный план
+            return;
+        }
+        emittedTasks++;
+        taskListener.onTask(elementIndex, task);
+    }
+
+    public int getEmittedTasks() {
+        return emittedTasks;
+    }
+}
@@ -5,28 +5,54 @@ import com.crafto.ai.action.Task;
 import com.crafto.ai.config.CraftoConfig;
 import com.crafto.ai.entity.CraftoEntity;
 import com.crafto.ai.memory.WorldKnowledge;
+import com.crafto.ai.optimization.LatencyTracker;
 import com.crafto.ai.optimization.PerformanceManager;
+import com.crafto.ai.optimization.PlanCacheKey;
+import com.crafto.ai.optimization.RequestPriority;
 import com.crafto.ai.memory.AgentMemory;
 import net.minecraft.core.BlockPos;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 public class TaskPlanner {
     private final OllamaClient ollamaClient;
     private final PerformanceManager performanceManager;
 
     public TaskPlanner() {
-        this.ollamaClient = new OllamaClient();
+        this.ollamaClient = OllamaClient.forPlans();
         this.performanceManager = PerformanceManager.getInstance();
     }
 
+    /**
+     * Blocking variant - waits for the whole LLM round-trip. Never call this from the server thread,
+     * ActionExecutor uses {@link #planTasksAsync} and picks the result up in tick().
+     */
     public ResponseParser.ParsedResponse planTasks(CraftoEntity crafto, String command) {
         return planTasksAsync(crafto, command).join();
     }
     
     public CompletableFuture<ResponseParser.ParsedResponse> planTasksAsync(CraftoEntity crafto, String command) {
+        return planTasksAsync(crafto, command, null, null, RequestPriority.INTERACTIVE);
+    }
+    
+    /**
+     * Plans asynchronously. When {@code taskListener} is set and streaming is enabled, each task is
+     * handed to it as soon as the model finishes generating that entry of the "tasks" array, and the
+     * returned future still completes with the full parsed plan. The listener is called from the
+     * HTTP thread. {@code priority} decides the request's place in the LLM queue; cancelling the
+     * returned future takes the request out of that queue.
+     *
+     * @param previousFailure why the last plan for this command failed, or null; it goes into its own
+     *                        prompt section, so the command - and with it the cache key - stays the same
+     */
+    public CompletableFuture<ResponseParser.ParsedResponse> planTasksAsync(CraftoEntity crafto, String command,
+                                                                          String previousFailure,
+                                                                          StreamingTaskParser.Listener taskListener,
+                                                                          RequestPriority priority) {
         long startTime = System.currentTimeMillis();
         String agentName = crafto.getCraftoName();
         
@@ -53,22 +79,44 @@ public class TaskPlanner {
         try {
             String systemPrompt = PromptBuilder.buildSystemPrompt();
             WorldKnowledge worldKnowledge = new WorldKnowledge(crafto);
-            String userPrompt = PromptBuilder.buildUserPrompt(crafto, command, worldKnowledge);
+            PromptAssembler userPrompt = PromptBuilder.assembleUserPrompt(crafto, command, worldKnowledge);
+            if (previousFailure != null) {
+                userPrompt.require(PromptBuilder.previousFailureSection(previousFailure));
+            }
             
-            // Добавляем контекст из памяти
-            String enhancedPrompt = enhancePromptWithMemory(userPrompt, memory, command);
+            // Добавляем контекст из памяти и укладываем промпт в бюджет токенов
+            addMemoryContext(userPrompt, memory, command);
+            PromptAssembler.Result prompt = userPrompt.build(CraftoConfig.OLLAMA_PROMPT_TOKEN_BUDGET.get());
+            if (prompt.getTrimmedItems() > 0) {
+                CraftoMod.LOGGER.debug("Prompt for '{}' trimmed by {} context items to ~{} tokens",
+                    command, prompt.getTrimmedItems(), prompt.getEstimatedTokens());
+            }
+            String enhancedPrompt = prompt.getText();
+            
+            // Ключ кэша: нормализованная команда + грубый контекст мира, позиция для подстановки в план
+            PlanCacheKey cacheKey = PlanCacheKey.of(command,
+                PlanCacheKey.coarseContext(worldKnowledge.getBiomeName(), worldKnowledge.hasNearbyHostiles()),
+                new int[] {pos.getX(), pos.getY(), pos.getZ()});
             
             CraftoMod.LOGGER.info("Requesting AI plan for Crafto '{}' using Ollama: {}", agentName, command);
             
+            Consumer<String> chunkListener = taskListener != null
+                ? new StreamingTaskParser(taskListener)::feed
+                : null;
+            
             // Используем только Ollama
-            return performanceManager.processAIRequest(agentName, command, enhancedPrompt)
+            CompletableFuture<String> request = performanceManager.processAIRequest(agentName, command, cacheKey,
+                enhancedPrompt, chunkListener, priority);
+            CompletableFuture<ResponseParser.ParsedResponse> plan = request
                 .thenApply(response -> {
                     if (response == null) {
                         CraftoMod.LOGGER.error("Failed to get AI response for command: {}", command);
                         return null;
                     }
                     
+                    long parseStart = System.nanoTime();
                     ResponseParser.ParsedResponse parsedResponse = ResponseParser.parseAIResponse(response);
+                    LatencyTracker.getInstance().record(agentName, LatencyTracker.Stage.PARSE, System.nanoTime() - parseStart);
                     
                     if (parsedResponse == null) {
                         CraftoMod.LOGGER.error("Failed to parse AI response");
@@ -86,12 +134,25 @@ public class TaskPlanner {
                     
                     return parsedResponse;
                 })
-                .exceptionally(throwable -> {
-                    long executionTime = System.currentTimeMillis() - startTime;
-                    performanceManager.recordStrategy(agentName, command, "failed", executionTime, false);
-                    CraftoMod.LOGGER.error("Error planning tasks for " + agentName, throwable);
-                    return null;
+                .handle((parsedResponse, throwable) -> {
+                    if (throwable != null) {
+                        long executionTime = System.currentTimeMillis() - startTime;
+                        performanceManager.recordStrategy(agentName, command, "failed", executionTime, false);
+                        if (isUnavailable(throwable)) {
+                            CraftoMod.LOGGER.warn("Ollama unavailable, planning '{}' for {} without it", command, agentName);
+                        } else {
+                            CraftoMod.LOGGER.error("Error planning tasks for " + agentName, throwable);
+                        }
+                    }
+                    return parsedResponse != null ? parsedResponse : fallbackPlan(command, cacheKey, priority, throwable);
                 });
+            // Отменённый план (новая команда, /crafto stop) снимает и запрос из очереди LLM
+            plan.whenComplete((parsedResponse, throwable) -> {
+                if (plan.isCancelled()) {
+                    request.cancel(false);
+                }
+            });
+            return plan;
             
         } catch (Exception e) {
             CraftoMod.LOGGER.error("Error planning tasks", e);
@@ -99,29 +160,58 @@ public class TaskPlanner {
         }
     }
     
-    private String enhancePromptWithMemory(String basePrompt, AgentMemory memory, String command) {
-        StringBuilder enhanced = new StringBuilder(basePrompt);
-        
+    private ResponseParser.ParsedResponse fallbackPlan(String command, PlanCacheKey cacheKey, RequestPriority priority,
+                                                       Throwable error) {
+        // При перепланировании закэшированный план и есть тот, что не сработал
+        String stalePlan = priority != RequestPriority.REPLAN ? performanceManager.getFallbackResponse(cacheKey) : null;
+        return fallbackPlan(command, stalePlan, isUnavailable(error));
+    }
+
+    /**
+     * Fallback for when the LLM gave no usable plan: the last cached plan for the same command
+     * (even past its TTL), if it still passes {@link PlanSchema}. If there is none and the LLM is
+     * unreachable, throws {@link LLMUnavailableException} so the agent can say so at once.
+     * Commands the {@link IntentCompiler} knows never get here - ActionExecutor compiles them
+     * before any LLM request.
+     *
+     * @param stalePlan cached response for the command, or null
+     */
+    static ResponseParser.ParsedResponse fallbackPlan(String command, String stalePlan, boolean llmUnavailable) {
+        if (stalePlan != null) {
+            if (PlanSchema.isValidPlan(stalePlan)) {
+                CraftoMod.LOGGER.info("Using stale cached plan for: {}", command);
+                return ResponseParser.parseAIResponse(stalePlan);
+            }
+            CraftoMod.LOGGER.warn("Stale cached plan for '{}' fails the plan schema, not using it", command);
+        }
+
+        if (llmUnavailable) {
+            throw new LLMUnavailableException("Ollama is not responding and no fallback plan exists for: " + command);
+        }
+        return null;
+    }
+
+    static boolean isUnavailable(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof LLMUnavailableException || LLMTransport.getInstance().isUnavailable();
+    }
+
+    // Память - наименее ценный контекст: при нехватке бюджета срезается первой, локации раньше стратегии
+    private void addMemoryContext(PromptAssembler prompt, AgentMemory memory, String command) {
         // Добавляем информацию о предыдущих успешных стратегиях
         Optional<AgentMemory.SuccessfulStrategy> bestStrategy = memory.getBestStrategy(command);
         if (bestStrategy.isPresent()) {
-            enhanced.append("\n\nPrevious successful strategy for this task: ")
-                    .append(bestStrategy.get().strategy)
-                    .append(" (Success rate: ")
-                    .append(String.format("%.1f%%", bestStrategy.get().successRate * 100))
-                    .append(")");
+            prompt.add(40, "\nPrevious successful strategy for this task: " + bestStrategy.get().strategy
+                + " (Success rate: " + String.format("%.1f%%", bestStrategy.get().successRate * 100) + ")");
         }
         
         // Добавляем информацию об изученных локациях
-        List<AgentMemory.LocationInfo> locations = memory.getExploredLocations();
-        if (!locations.isEmpty()) {
-            enhanced.append("\n\nKnown locations: ");
-            locations.stream().limit(3).forEach(loc -> 
-                enhanced.append(String.format("(%d,%d,%d) - %s; ", 
-                    loc.position.getX(), loc.position.getY(), loc.position.getZ(), loc.biome)));
-        }
-        
-        return enhanced.toString();
+        List<String> locations = memory.getExploredLocations().stream()
+            .limit(3)
+            .map(loc -> String.format("(%d,%d,%d) - %s",
+                loc.position.getX(), loc.position.getY(), loc.position.getZ(), loc.biome))
+            .toList();
+        prompt.add(20, "\nKnown locations: ", locations, "; ");
     }
 
     private String getAIResponse(String systemPrompt, String userPrompt) {
@@ -129,25 +219,12 @@ public class TaskPlanner {
     }
 
     public boolean validateTask(Task task) {
-        String action = task.getAction();
-        
-        return switch (action) {
-            case "pathfind" -> task.hasParameters("x", "y", "z");
-            case "mine" -> task.hasParameters("block", "quantity");
-            case "place" -> task.hasParameters("block", "x", "y", "z");
-            case "craft" -> task.hasParameters("item", "quantity");
-            case "attack" -> task.hasParameters("target");
-            case "follow" -> task.hasParameters("player");
-            case "gather" -> task.hasParameters("resource", "quantity");
-            case "build" -> task.hasParameters("structure", "blocks", "dimensions");
-            // Новые действия для системы исследования
-            case "explore" -> true; // Может работать с текущей позицией по умолчанию
-            case "create_waypoint" -> true; // Может использовать текущую позицию и автогенерированное имя
-            default -> {
-                CraftoMod.LOGGER.warn("Unknown action type: {}", action);
-                yield false;
-            }
-        };
+        String problem = PlanSchema.validate(task);
+        if (problem != null) {
+            CraftoMod.LOGGER.warn("Invalid task: {}", problem);
+            return false;
+        }
+        return true;
     }
 
     public List<Task> validateAndFilterTasks(List<Task> tasks) {
@@ -0,0 +1,454 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.action.Task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass reader for model output that turns the plan JSON straight into {@link Task}s.
+ *
+ * It forgives the usual model mistakes while reading instead of rewriting the text first:
+ * markdown fences and prose around the object, // and /* *&#47; comments, trailing commas,
+ * missing commas between values, single-quoted strings and a response cut off mid-task
+ * (the unfinished task is dropped). Keys the plan does not use are skipped without
+ * materializing their values.
+ */
+final class TolerantJsonReader {
+    private static final Object NO_VALUE = new Object();
+
+    private final String text;
+    private int pos;
+    private boolean truncated;
+
+    private TolerantJsonReader(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return the plan, or null if the text contains no JSON object
+     */
+    static ResponseParser.ParsedResponse readPlan(String text) {
+        TolerantJsonReader reader = new TolerantJsonReader(text);
+        if (!reader.seekObject()) {
+            return null;
+        }
+
+        String reasoning = "";
+        String plan = "";
+        List<Task> tasks = new ArrayList<>();
+        List<Integer> elementIndices = new ArrayList<>();
+
+        reader.pos++; // '{'
+        while (reader.nextMember()) {
+            String key = reader.readKey();
+            switch (key) {
+                case "reasoning" -> reasoning = reader.readText();
+                case "plan" -> plan = reader.readText();
+                case "tasks" -> reader.readTasks(tasks, elementIndices);
+                default -> reader.skipValue();
+            }
+        }
+        return new ResponseParser.ParsedResponse(reasoning, plan, tasks,
+            elementIndices.stream().mapToInt(Integer::intValue).toArray(), reader.truncated);
+    }
+
+    /**
+     * Reads one element of the "tasks" array.
+     *
+     * @return the task, or null if the text is not a complete task object
+     */
+    static Task readTask(String text) {
+        TolerantJsonReader reader = new TolerantJsonReader(text);
+        return reader.seekObject() ? reader.readTaskObject() : null;
+    }
+
+    // --- plan structure ---
+
+    /**
+     * @param elementIndices receives, for each task, its index among the object elements of the array -
+     *                       the same numbering {@link StreamingTaskParser} uses
+     */
+    private void readTasks(List<Task> tasks, List<Integer> elementIndices) {
+        skipSpace();
+        if (!consume('[')) {
+            skipValue();
+            return;
+        }
+        int elementIndex = 0;
+        while (nextElement(']')) {
+            if (peek() == '{') {
+                Task task = readTaskObject();
+                if (task != null) {
+                    tasks.add(task);
+                    elementIndices.add(elementIndex);
+                }
+                elementIndex++;
+            } else {
+                skipValue();
+            }
+        }
+    }
+
+    private Task readTaskObject() {
+        String action = null;
+        Map<String, Object> parameters = new HashMap<>();
+
+        pos++; // '{'
+        while (nextMember()) {
+            String key = readKey();
+            if (key.equals("action")) {
+                action = readText();
+            } else if (key.equals("parameters") && peekAfterSpace() == '{') {
+                readParameters(parameters);
+            } else {
+                skipValue();
+            }
+        }
+        return action == null || action.isEmpty() || truncated ? null : new Task(action, parameters);
+    }
+
+    private void readParameters(Map<String, Object> parameters) {
+        pos++; // '{'
+        while (nextMember()) {
+            String key = readKey();
+            skipSpace();
+            char c = peek();
+            if (c == '[') {
+                parameters.put(key, readPrimitiveList());
+            } else if (c == '{') {
+                skipValue(); // вложенные объекты действиям не нужны
+            } else {
+                Object value = readPrimitive();
+                if (value != NO_VALUE && value != null) {
+                    parameters.put(key, value);
+                }
+            }
+        }
+    }
+
+    private List<Object> readPrimitiveList() {
+        List<Object> list = new ArrayList<>();
+        pos++; // '['
+        while (nextElement(']')) {
+            char c = peek();
+            if (c == '[' || c == '{') {
+                skipValue();
+            } else {
+                Object value = readPrimitive();
+                if (value != NO_VALUE && value != null) {
+                    list.add(value);
+                }
+            }
+        }
+        return list;
+    }
+
+    // --- members and separators ---
+
+    /**
+     * Moves to the next key of the current object, swallowing commas, or past the closing brace.
+     *
+     * @return false at the end of the object or the input
+     */
+    private boolean nextMember() {
+        return nextElement('}');
+    }
+
+    private boolean nextElement(char close) {
+        while (true) {
+            skipSpace();
+            if (pos >= text.length()) {
+                truncated = true;
+                return false;
+            }
+            char c = text.charAt(pos);
+            if (c == close) {
+                pos++;
+                return false;
+            }
+            if (c == ',') {
+                pos++; // лишние и висячие запятые просто пропускаем
+                continue;
+            }
+            if (c == '}' || c == ']') {
+                // Несбалансированная скобка - считаем, что текущий контейнер закрыт
+                pos++;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private String readKey() {
+        skipSpace();
+        String key;
+        char c = peek();
+        if (c == '"' || c == '\'') {
+            key = readString();
+        } else {
+            int start = pos;
+            while (pos < text.length() && isBareChar(text.charAt(pos))) {
+                pos++;
+            }
+            key = text.substring(start, pos);
+            if (key.isEmpty() && pos < text.length()) {
+                pos++; // мусорный символ - не зацикливаемся на нём
+            }
+        }
+        skipSpace();
+        consume(':');
+        return key;
+    }
+
+    // --- values ---
+
+    /**
+     * Reads a value that should be a string; numbers and other primitives are returned as text.
+     */
+    private String readText() {
+        skipSpace();
+        char c = peek();
+        if (c == '{' || c == '[') {
+            skipValue();
+            return "";
+        }
+        Object value = readPrimitive();
+        return value == NO_VALUE || value == null ? "" : value.toString();
+    }
+
+    private Object readPrimitive() {
+        skipSpace();
+        if (pos >= text.length()) {
+            truncated = true;
+            return NO_VALUE;
+        }
+        char c = text.charAt(pos);
+        if (c == '"' || c == '\'') {
+            return readString();
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            return readNumber();
+        }
+        int start = pos;
+        while (pos < text.length() && isBareChar(text.charAt(pos))) {
+            pos++;
+        }
+        if (start == pos) {
+            pos++; // неожиданный символ
+            return NO_VALUE;
+        }
+        if (text.startsWith("true", start) && pos - start == 4) return Boolean.TRUE;
+        if (text.startsWith("false", start) && pos - start == 5) return Boolean.FALSE;
+        if (text.startsWith("null", start) && pos - start == 4) return null;
+        return text.substring(start, pos); // слово без кавычек
+    }
+
+    private String readString() {
+        char quote = text.charAt(pos++);
+        int start = pos;
+        StringBuilder escaped = null;
+
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == quote) {
+                String value = escaped == null ? text.substring(start, pos) : escaped.append(text, start, pos).toString();
+                pos++;
+                return value;
+            }
+            if (c == '\\' && pos + 1 < text.length()) {
+                if (escaped == null) {
+                    escaped = new StringBuilder();
+                }
+                escaped.append(text, start, pos);
+                pos = appendEscape(escaped, pos + 1);
+                start = pos;
+                continue;
+            }
+            pos++;
+        }
+
+        truncated = true;
+        return escaped == null ? text.substring(start) : escaped.append(text, start, text.length()).toString();
+    }
+
+    /**
+     * @param at index of the character after the backslash
+     * @return index after the escape sequence
+     */
+    private int appendEscape(StringBuilder out, int at) {
+        char c = text.charAt(at);
+        switch (c) {
+            case 'n' -> out.append('\n');
+            case 't' -> out.append('\t');
+            case 'r' -> out.append('\r');
+            case 'b' -> out.append('\b');
+            case 'f' -> out.append('\f');
+            case 'u' -> {
+                if (at + 4 < text.length()) {
+                    try {
+                        out.append((char) Integer.parseInt(text, at + 1, at + 5, 16));
+                        return at + 5;
+                    } catch (NumberFormatException e) {
+                        out.append('u');
+                    }
+                } else {
+                    out.append('u');
+                }
+            }
+            default -> out.append(c); // \" \\ \/ и всё остальное - как есть
+        }
+        return at + 1;
+    }
+
+    private Object readNumber() {
+        int start = pos;
+        boolean negative = text.charAt(pos) == '-';
+        if (negative) {
+            pos++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            digits++;
+            pos++;
+        }
+
+        boolean fractional = false;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' || (c >= '0' && c <= '9')) {
+                fractional = true;
+                pos++;
+            } else {
+                break;
+            }
+        }
+
+        if (digits == 0) {
+            return NO_VALUE;
+        }
+        if (fractional || digits > 18) {
+            try {
+                return Double.parseDouble(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                return NO_VALUE;
+            }
+        }
+        long signed = negative ? -value : value;
+        if (signed == (int) signed) {
+            return (int) signed; // не тернарный оператор - он расширил бы Integer до Long
+        }
+        return signed;
+    }
+
+    /**
+     * Skips any value, nested containers included, without building it.
+     */
+    private void skipValue() {
+        skipSpace();
+        if (pos >= text.length()) {
+            truncated = true;
+            return;
+        }
+        char c = text.charAt(pos);
+        if (c == '{') {
+            pos++;
+            while (nextMember()) {
+                readKey();
+                skipValue();
+            }
+        } else if (c == '[') {
+            pos++;
+            while (nextElement(']')) {
+                skipValue();
+            }
+        } else if (c == '"' || c == '\'') {
+            skipString();
+        } else {
+            int start = pos;
+            while (pos < text.length() && (isBareChar(text.charAt(pos)) || text.charAt(pos) == '.'
+                || text.charAt(pos) == '+')) {
+                pos++;
+            }
+            if (start == pos) {
+                pos++;
+            }
+        }
+    }
+
+    private void skipString() {
+        char quote = text.charAt(pos++);
+        while (pos < text.length()) {
+            char c = text.charAt(pos++);
+            if (c == '\\') {
+                pos++;
+            } else if (c == quote) {
+                return;
+            }
+        }
+        truncated = true;
+    }
+
+    // --- low level ---
+
+    /**
+     * Skips fences and any prose before the first '{'.
+     */
+    private boolean seekObject() {
+        int brace = text.indexOf('{');
+        if (brace < 0) {
+            return false;
+        }
+        pos = brace;
+        return true;
+    }
+
+    private void skipSpace() {
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                pos++;
+            } else if (c == '/' && pos + 1 < text.length() && text.charAt(pos + 1) == '/') {
+                int newline = text.indexOf('\n', pos);
+                pos = newline < 0 ? text.length() : newline + 1;
+            } else if (c == '/' && pos + 1 < text.length() && text.charAt(pos + 1) == '*') {
+                int close = text.indexOf("*/", pos + 2);
+                pos = close < 0 ? text.length() : close + 2;
+            } else if (c == '`') {
+                pos++; // закрывающий ``` после объекта
+            } else {
+                return;
+            }
+        }
+    }
+
+    private char peek() {
+        return pos < text.length() ? text.charAt(pos) : '\0';
+    }
+
+    private char peekAfterSpace() {
+        skipSpace();
+        return peek();
+    }
+
+    private boolean consume(char expected) {
+        if (peek() == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isBareChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+}
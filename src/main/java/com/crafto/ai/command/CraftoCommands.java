@@ -128,9 +128,8 @@ public class CraftoCommands {
             // Disabled command feedback message
             // source.sendSuccess(() -> Component.literal("Instructing " + name + ": " + command), true);
             
-            new Thread(() -> {
-                crafto.getActionExecutor().processNaturalLanguageCommand(command);
-            }).start();
+            // Applied on the Crafto's next tick; planning is asynchronous after that
+            crafto.getActionExecutor().submitCommand(command);
             
             return 1;
         } else {
@@ -6,6 +6,10 @@ import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import com.crafto.ai.CraftoMod;
+import com.crafto.ai.config.CraftoConfig;
+import com.crafto.ai.entity.AgentTickScheduler;
+import com.crafto.ai.optimization.LatencyHistogram;
+import com.crafto.ai.optimization.LatencyTracker;
 import com.crafto.ai.optimization.PerformanceManager;
 import com.crafto.ai.memory.AgentMemory;
 import net.minecraft.commands.CommandSourceStack;
@@ -58,24 +62,34 @@ public class PerformanceCommand {
         
         source.sendSuccess(() -> Component.literal("=== Crafto AI Performance Statistics ==="), false);
         source.sendSuccess(() -> Component.literal("Total Requests: " + stats.get("totalRequests")), false);
-        source.sendSuccess(() -> Component.literal("Cache Hits: " + stats.get("cacheHits")), false);
+        source.sendSuccess(() -> Component.literal("Cache Hits: " + stats.get("cacheHits")
+            + " (misses: " + stats.get("cacheMisses") + ", evictions: " + stats.get("cacheEvictions")
+            + ", size: " + stats.get("cacheSize") + ", shared in flight: " + stats.get("coalescedRequests") + ")"), false);
         source.sendSuccess(() -> Component.literal("Average Response Time: " + stats.get("averageResponseTime") + "ms"), false);
+        for (LatencyTracker.Stage stage : LatencyTracker.Stage.values()) {
+            LatencyHistogram.Snapshot latency = pm.getLatencyTracker().snapshot(stage);
+            source.sendSuccess(() -> Component.literal("  " + stage.getDisplayName() + ": " + latency), false);
+        }
+        pm.getThroughputTracker().getModels().forEach((model, throughput) ->
+            source.sendSuccess(() -> Component.literal("Model " + model + ": " + throughput), false));
+        pm.getThroughputTracker().getPromptTypes().forEach((promptType, throughput) ->
+            source.sendSuccess(() -> Component.literal("  " + promptType + " prompts: " + throughput), false));
+        source.sendSuccess(() -> Component.literal("Fast Model Plans: " + stats.get("fastModelAccepted")
+            + " (escalated to main model: " + stats.get("modelEscalations") + ")"), false);
         source.sendSuccess(() -> Component.literal("Active Agents: " + stats.get("activeAgents")), false);
-        source.sendSuccess(() -> Component.literal("Max Concurrent Requests: " + stats.get("maxConcurrentRequests")), false);
+        source.sendSuccess(() -> Component.literal("Agent Activity: " + CraftoMod.getCraftoManager().getActivityCounts()), false);
+        AgentTickScheduler ticks = CraftoMod.getCraftoManager().getTickScheduler();
+        source.sendSuccess(() -> Component.literal("Agent Tick Time: " + ticks.getAverageTickNanos() / 1000 + "µs of "
+            + CraftoConfig.AGENT_TICK_BUDGET_MICROS.get() + "µs budget (deferred agent ticks: " + ticks.getDeferredAgentTicks()
+            + ", over budget: " + ticks.getOverBudgetTicks() + ")"), false);
+        source.sendSuccess(() -> Component.literal("Max Concurrent Requests: " + stats.get("maxConcurrentRequests")
+            + " (adaptive limit: " + stats.get("effectiveConcurrency") + ", in flight: " + stats.get("inFlightRequests")
+            + ", dropped past deadline: " + stats.get("droppedRequests") + ")"), false);
+        source.sendSuccess(() -> Component.literal("Ollama Endpoints: " + stats.get("ollamaEndpoints")), false);
+        source.sendSuccess(() -> Component.literal("Hedged Requests: " + stats.get("hedgedRequests")
+            + " (rejected while circuit open: " + stats.get("circuitRejected") + ")"), false);
         source.sendSuccess(() -> Component.literal("Cache Expiration Time: " + stats.get("cacheExpirationTime") + "ms"), false);
         
-        // Показываем топ команд по времени выполнения
-        @SuppressWarnings("unchecked")
-        Map<String, Long> commandTimes = (Map<String, Long>) stats.get("commandExecutionTimes");
-        if (!commandTimes.isEmpty()) {
-            source.sendSuccess(() -> Component.literal("Top Commands by Execution Time:"), false);
-            commandTimes.entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .limit(5)
-                .forEach(entry -> 
-                    source.sendSuccess(() -> Component.literal("  " + entry.getKey() + ": " + entry.getValue() + "ms"), false));
-        }
-        
         return 1;
     }
     
@@ -88,6 +102,14 @@ public class PerformanceCommand {
         
         source.sendSuccess(() -> Component.literal("=== Agent Memory: " + agentName + " ==="), false);
         
+        Map<LatencyTracker.Stage, LatencyHistogram.Snapshot> latencies = pm.getLatencyTracker().snapshot(agentName);
+        latencies.forEach((stage, latency) ->
+            source.sendSuccess(() -> Component.literal(stage.getDisplayName() + ": " + latency), false));
+        source.sendSuccess(() -> Component.literal("Token Throughput: " + pm.getThroughputTracker().forAgent(agentName)), false);
+        AgentTickScheduler ticks = CraftoMod.getCraftoManager().getTickScheduler();
+        source.sendSuccess(() -> Component.literal("Tick Cost: " + ticks.getAverageCostNanos(agentName) / 1000 + "µs (max "
+            + ticks.getMaxCostNanos(agentName) / 1000 + "µs)"), false);
+        
         // Показываем изученные локации
         List<AgentMemory.LocationInfo> locations = memory.getExploredLocations();
         source.sendSuccess(() -> Component.literal("Explored Locations: " + locations.size()), false);
@@ -127,7 +149,7 @@ public class PerformanceCommand {
         CommandSourceStack source = context.getSource();
         PerformanceManager pm = CraftoMod.getPerformanceManager();
         
-        // Здесь нужно добавить метод clearCache в PerformanceManager
+        pm.clearCache();
         source.sendSuccess(() -> Component.literal("AI request cache cleared"), false);
         
         return 1;
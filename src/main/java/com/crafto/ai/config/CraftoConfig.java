@@ -2,15 +2,29 @@ package com.crafto.ai.config;
 
 import net.minecraftforge.common.ForgeConfigSpec;
 
+import java.util.List;
+
 public class CraftoConfig {
     public static final ForgeConfigSpec SPEC;
     public static final ForgeConfigSpec.ConfigValue<String> OLLAMA_BASE_URL;
+    public static final ForgeConfigSpec.ConfigValue<List<? extends String>> OLLAMA_ENDPOINTS;
+    public static final ForgeConfigSpec.BooleanValue OLLAMA_HEDGING;
     public static final ForgeConfigSpec.ConfigValue<String> OLLAMA_MODEL;
     public static final ForgeConfigSpec.IntValue OLLAMA_MAX_TOKENS;
     public static final ForgeConfigSpec.DoubleValue OLLAMA_TEMPERATURE;
+    public static final ForgeConfigSpec.BooleanValue OLLAMA_STREAMING;
+    public static final ForgeConfigSpec.IntValue OLLAMA_NUM_PARALLEL;
+    public static final ForgeConfigSpec.BooleanValue OLLAMA_STRUCTURED_OUTPUT;
+    public static final ForgeConfigSpec.ConfigValue<String> OLLAMA_KEEP_ALIVE;
+    public static final ForgeConfigSpec.ConfigValue<String> OLLAMA_FAST_MODEL;
+    public static final ForgeConfigSpec.IntValue OLLAMA_FAST_MODEL_MAX_TOKENS;
+    public static final ForgeConfigSpec.IntValue OLLAMA_PROMPT_TOKEN_BUDGET;
     public static final ForgeConfigSpec.IntValue ACTION_TICK_DELAY;
     public static final ForgeConfigSpec.BooleanValue ENABLE_CHAT_RESPONSES;
     public static final ForgeConfigSpec.IntValue MAX_ACTIVE_CRAFTOS;
+    public static final ForgeConfigSpec.IntValue AGENT_TICK_BUDGET_MICROS;
+    public static final ForgeConfigSpec.IntValue ACTIVITY_FULL_RANGE;
+    public static final ForgeConfigSpec.ConfigValue<List<? extends String>> HOSTILE_ENTITY_TAGS;
 
     static {
         ForgeConfigSpec.Builder builder = new ForgeConfigSpec.Builder();
@@ -21,6 +35,15 @@ public class CraftoConfig {
             .comment("Ollama API base URL")
             .define("baseUrl", "http://localhost:11434");
 
+        OLLAMA_ENDPOINTS = builder
+            .comment("Several Ollama instances to balance plan requests over, e.g. [\"http://box1:11434\", \"http://box2:11434\"]. Empty = baseUrl only")
+            .defineList("endpoints", List.of(), value -> value instanceof String url && url.startsWith("http"));
+
+        OLLAMA_HEDGING = builder
+            .comment("With several endpoints: if one has not answered by the p95 latency, send the request to another as well and take the first reply. "
+                + "Costs a duplicate generation on every hedge")
+            .define("hedgeRequests", false);
+
         OLLAMA_MODEL = builder
             .comment("Ollama model to use - optimized for M2: 'qwen2.5:7b' (fastest), 'mistral:7b', 'llama3.2:3b' (smallest)")
             .define("model", "qwen2.5:7b");
@@ -33,6 +56,36 @@ public class CraftoConfig {
             .comment("Temperature for Ollama responses (0.0-2.0)")
             .defineInRange("temperature", 0.7, 0.0, 2.0);
 
+        OLLAMA_STREAMING = builder
+            .comment("Stream responses from Ollama and start executing tasks as soon as each one is generated")
+            .define("streaming", true);
+
+        OLLAMA_NUM_PARALLEL = builder
+            .comment("Parallel request slots on the Ollama server - keep equal to its OLLAMA_NUM_PARALLEL setting")
+            .defineInRange("numParallel", 4, 1, 32);
+
+        OLLAMA_STRUCTURED_OUTPUT = builder
+            .comment("Constrain plan generation to the plan JSON schema (Ollama 'format'), so responses need no repair")
+            .define("structuredOutput", true);
+
+        OLLAMA_KEEP_ALIVE = builder
+            .comment("How long Ollama keeps the model loaded after a request ('30m', '2h', '-1' = forever) - avoids reload latency between commands")
+            .define("keepAlive", "30m");
+
+        OLLAMA_FAST_MODEL = builder
+            .comment("Small model tried first for every plan, e.g. 'qwen2.5:1.5b' (must be pulled in Ollama); the main model "
+                + "is used only when its plan is unusable. Empty = main model only")
+            .define("fastModel", "");
+
+        OLLAMA_FAST_MODEL_MAX_TOKENS = builder
+            .comment("Maximum tokens for the fast model response - short plans only, longer ones go to the main model")
+            .defineInRange("fastModelMaxTokens", 200, 50, 4096);
+
+        OLLAMA_PROMPT_TOKEN_BUDGET = builder
+            .comment("Approximate token budget for the per-command prompt (situation and memory, without the system prompt). "
+                + "Least useful context is trimmed first; num_ctx is sized to fit system prompt + this + maxTokens")
+            .defineInRange("promptTokenBudget", 512, 128, 4096);
+
         builder.pop();
 
         builder.comment("Crafto Behavior Configuration").push("behavior");
@@ -49,6 +102,22 @@ public class CraftoConfig {
             .comment("Maximum number of Craftos that can be active simultaneously (lower = better performance)")
             .defineInRange("maxActiveCraftos", 5, 1, 50);
         
+        AGENT_TICK_BUDGET_MICROS = builder
+            .comment("Time per server tick all Craftos together may spend on their actions, in microseconds (1 tick = 50000).",
+                     "Craftos that do not fit wait for the next tick, so many Craftos slow each other down instead of the server")
+            .defineInRange("agentTickBudgetMicros", 2000, 200, 50000);
+        
+        ACTIVITY_FULL_RANGE = builder
+            .comment("Craftos within this many blocks of a player act every tick; farther ones act every 4 ticks,",
+                     "and with no player in the dimension they do not act at all")
+            .defineInRange("activityFullRange", 64, 24, 512);
+        
+        HOSTILE_ENTITY_TAGS = builder
+            .comment("Entity type tags treated as hostile in addition to the monster spawn category, e.g. modded mobs",
+                     "Applied on server start and on /reload")
+            .defineList("hostileEntityTags", List.of("minecraft:raiders", "minecraft:skeletons"),
+                value -> value instanceof String tag && tag.contains(":"));
+        
         builder.pop();
 
         SPEC = builder.build();
@@ -0,0 +1,27 @@
+package com.crafto.ai.entity;
+
+/**
+ * How often a Crafto's actions are ticked, depending on how close the nearest player is.
+ * Recomputed by {@link CraftoManager} once a second.
+ */
+public enum ActivityLevel {
+    /** A player is within {@code activityFullRange}: every tick, including player defense. */
+    FULL(1),
+    /** Players are in the dimension but farther away: every few ticks, counters catch up by the skipped ticks. */
+    REDUCED(4),
+    /** No player in the dimension: no per-tick work at all, the agent's clock is frozen. */
+    DORMANT(0);
+
+    private final int tickInterval;
+
+    ActivityLevel(int tickInterval) {
+        this.tickInterval = tickInterval;
+    }
+
+    /**
+     * @return server ticks between action ticks, 0 if the agent is not ticked
+     */
+    public int getTickInterval() {
+        return tickInterval;
+    }
+}
@@ -0,0 +1,130 @@
+package com.crafto.ai.entity;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs agent work under a per-tick time budget. Due agents are served longest-waiting first,
+ * by agent id, so the order survives the due list changing from tick to tick (reduced-activity
+ * agents are due only every few ticks). Once the time spent plus the next agent's typical cost
+ * would exceed the budget, the remaining agents are deferred and, having waited longest, go
+ * first the next time they are due. At least one agent runs every tick, so a single slow agent
+ * cannot stall the rest forever. Server thread only.
+ */
+public class AgentTickScheduler {
+    private static final double SMOOTHING = 0.1;
+
+    private final LongSupplier clockNanos;
+    private final Map<String, Cost> costs = new HashMap<>();
+    private long servedCount;
+    private long deferredAgentTicks;
+    private long overBudgetTicks;
+    private double averageTickNanos;
+
+    private static final class Cost {
+        double averageNanos;
+        long maxNanos;
+        long lastServed; // номер последнего запуска, 0 - ещё не запускался
+
+        void record(long nanos) {
+            averageNanos = averageNanos == 0 ? nanos : averageNanos + SMOOTHING * (nanos - averageNanos);
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+    }
+
+    public AgentTickScheduler() {
+        this(System::nanoTime);
+    }
+
+    AgentTickScheduler(LongSupplier clockNanos) {
+        this.clockNanos = clockNanos;
+    }
+
+    /**
+     * @param agents      agents due this tick, in any order
+     * @param key         stable agent id, used to remember its cost and when it last ran
+     * @param work        one tick of agent work
+     * @param budgetNanos time all agents together may take this tick
+     * @return how many agents ran
+     */
+    public <T> int tick(List<T> agents, Function<T, String> key, Consumer<T> work, long budgetNanos) {
+        int count = agents.size();
+        if (count == 0) {
+            return 0;
+        }
+
+        // Дольше всех ждавшие - первыми; сортировка устойчива, новые агенты идут в порядке списка
+        List<T> queue = new ArrayList<>(agents);
+        queue.sort(Comparator.comparingLong(agent -> costs.computeIfAbsent(key.apply(agent), id -> new Cost()).lastServed));
+
+        long start = clockNanos.getAsLong();
+        long used = 0;
+        int ran = 0;
+        for (; ran < count; ran++) {
+            T agent = queue.get(ran);
+            Cost cost = costs.get(key.apply(agent));
+            if (ran > 0 && used + cost.averageNanos > budgetNanos) {
+                break; // остальные агенты - первыми, когда снова окажутся в очереди
+            }
+            cost.lastServed = ++servedCount;
+            long agentStart = clockNanos.getAsLong();
+            try {
+                work.accept(agent);
+            } finally {
+                long end = clockNanos.getAsLong();
+                cost.record(end - agentStart);
+                used = end - start;
+            }
+        }
+
+        if (ran < count) {
+            deferredAgentTicks += count - ran;
+        }
+        if (used > budgetNanos) {
+            overBudgetTicks++;
+        }
+        averageTickNanos = averageTickNanos == 0 ? used : averageTickNanos + SMOOTHING * (used - averageTickNanos);
+        return ran;
+    }
+
+    public void forget(String key) {
+        costs.remove(key);
+    }
+
+    /**
+     * @return smoothed cost of one tick of the agent's work, or 0 if it has not run yet
+     */
+    public long getAverageCostNanos(String key) {
+        Cost cost = costs.get(key);
+        return cost != null ? Math.round(cost.averageNanos) : 0;
+    }
+
+    public long getMaxCostNanos(String key) {
+        Cost cost = costs.get(key);
+        return cost != null ? cost.maxNanos : 0;
+    }
+
+    public long getAverageTickNanos() {
+        return Math.round(averageTickNanos);
+    }
+
+    /**
+     * @return agent ticks postponed to a later server tick because the budget ran out
+     */
+    public long getDeferredAgentTicks() {
+        return deferredAgentTicks;
+    }
+
+    /**
+     * @return server ticks in which agent work exceeded the budget anyway (one agent took longer than all of it)
+     */
+    public long getOverBudgetTicks() {
+        return overBudgetTicks;
+    }
+}
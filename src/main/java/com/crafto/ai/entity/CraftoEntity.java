@@ -77,9 +77,8 @@ public class CraftoEntity extends PathfinderMob {
     public void tick() {
         super.tick();
         
+        // actionExecutor.tick() вызывает CraftoManager по общему бюджету тика
         if (!this.level().isClientSide) {
-            actionExecutor.tick();
-            
             // Periodic performance monitoring
             if (tickCounter % 600 == 0) { // Every 30 seconds
                 com.crafto.ai.util.PerformanceMonitor.checkMemoryUsage();
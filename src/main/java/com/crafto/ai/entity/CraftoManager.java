@@ -1,8 +1,10 @@
 package com.crafto.ai.entity;
 
 import com.crafto.ai.CraftoMod;
+import com.crafto.ai.action.ActionExecutor;
 import com.crafto.ai.config.CraftoConfig;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.MobSpawnType;
 import net.minecraft.world.phys.Vec3;
 
@@ -10,8 +12,14 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class CraftoManager {
+    private static final int ACTIVITY_UPDATE_INTERVAL = 20; // уровни активности пересчитываются раз в секунду
+    private static final int MAX_CATCH_UP_TICKS = 20;
+
     private final Map<String, CraftoEntity> activeCraftos;
     private final Map<UUID, CraftoEntity> craftosByUUID;
+    private final AgentTickScheduler tickScheduler = new AgentTickScheduler();
+    private final Map<String, Long> lastActionTicks = new HashMap<>(); // только серверный поток
+    private long serverTicks;
 
     public CraftoManager() {
         this.activeCraftos = new ConcurrentHashMap<>();
@@ -90,9 +98,22 @@ public class CraftoManager {
         return activeCraftos.size();
     }
 
-    public void tick(ServerLevel level) {
+    public AgentTickScheduler getTickScheduler() {
+        return tickScheduler;
+    }
+
+    /**
+     * Called once per server tick (see {@code ServerEventHandler.onServerTick}). Drops dead Craftos,
+     * recomputes activity levels once a second and runs the actions of the Craftos that are due
+     * within {@code agentTickBudgetMicros}.
+     */
+    public void tick() {
+        serverTicks++;
+        boolean updateActivity = serverTicks % ACTIVITY_UPDATE_INTERVAL == 0;
+
         // Clean up dead or removed Craftos
         Iterator<Map.Entry<String, CraftoEntity>> iterator = activeCraftos.entrySet().iterator();
+        List<CraftoEntity> due = new ArrayList<>(activeCraftos.size());
         while (iterator.hasNext()) {
             Map.Entry<String, CraftoEntity> entry = iterator.next();
             CraftoEntity crafto = entry.getValue();
@@ -100,9 +121,75 @@ public class CraftoManager {
             if (!crafto.isAlive() || crafto.isRemoved()) {
                 iterator.remove();
                 craftosByUUID.remove(crafto.getUUID());
+                tickScheduler.forget(entry.getKey());
+                lastActionTicks.remove(entry.getKey());
                 CraftoMod.LOGGER.info("Cleaned up Crafto: {}", entry.getKey());
+            } else if (crafto.level() instanceof ServerLevel level) {
+                if (updateActivity) {
+                    updateActivity(crafto, level);
+                }
+                // Как и сама сущность, в незагруженных чанках агент не действует
+                if (isDue(crafto) && level.isPositionEntityTicking(crafto.blockPosition())) {
+                    due.add(crafto);
+                }
             }
         }
+
+        long budgetNanos = CraftoConfig.AGENT_TICK_BUDGET_MICROS.get() * 1000L;
+        tickScheduler.tick(due, CraftoEntity::getCraftoName, this::tickActions, budgetNanos);
     }
-}
 
+    private void updateActivity(CraftoEntity crafto, ServerLevel level) {
+        double nearestSqr = Double.MAX_VALUE;
+        for (ServerPlayer player : level.players()) {
+            nearestSqr = Math.min(nearestSqr, player.distanceToSqr(crafto));
+        }
+        double fullRange = CraftoConfig.ACTIVITY_FULL_RANGE.get();
+        ActivityLevel activity = level.players().isEmpty() ? ActivityLevel.DORMANT
+            : nearestSqr <= fullRange * fullRange ? ActivityLevel.FULL : ActivityLevel.REDUCED;
+
+        ActionExecutor executor = crafto.getActionExecutor();
+        if (executor.getActivityLevel() == ActivityLevel.DORMANT && activity != ActivityLevel.DORMANT) {
+            // Пока агент спал, его время стояло - догонять нечего
+            lastActionTicks.put(crafto.getCraftoName(), serverTicks - 1);
+        }
+        executor.setActivityLevel(activity);
+    }
+
+    private boolean isDue(CraftoEntity crafto) {
+        ActionExecutor executor = crafto.getActionExecutor();
+        int interval = executor.getActivityLevel().getTickInterval();
+        if (interval == 0) {
+            return executor.hasQueuedCommands(); // спящий агент просыпается только ради команды
+        }
+        Long lastTick = lastActionTicks.get(crafto.getCraftoName());
+        return lastTick == null || serverTicks - lastTick >= interval;
+    }
+
+    private void tickActions(CraftoEntity crafto) {
+        ActionExecutor executor = crafto.getActionExecutor();
+        Long lastTick = lastActionTicks.put(crafto.getCraftoName(), serverTicks);
+        // Отложенный бюджетом или редко тикающий агент догоняет пропущенные тики, но не больше секунды разом
+        int elapsedTicks = lastTick == null || executor.getActivityLevel() == ActivityLevel.DORMANT ? 1
+            : (int) Math.min(serverTicks - lastTick, MAX_CATCH_UP_TICKS);
+        try {
+            executor.tick(elapsedTicks);
+        } catch (Exception e) {
+            CraftoMod.LOGGER.error("Crafto '{}' failed to tick its actions", crafto.getCraftoName(), e);
+        }
+    }
+
+    /**
+     * @return how many Craftos are currently at each activity level
+     */
+    public Map<ActivityLevel, Integer> getActivityCounts() {
+        Map<ActivityLevel, Integer> counts = new EnumMap<>(ActivityLevel.class);
+        for (ActivityLevel activity : ActivityLevel.values()) {
+            counts.put(activity, 0);
+        }
+        for (CraftoEntity crafto : activeCraftos.values()) {
+            counts.merge(crafto.getActionExecutor().getActivityLevel(), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
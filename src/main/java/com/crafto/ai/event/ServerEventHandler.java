@@ -1,6 +1,9 @@
 package com.crafto.ai.event;
 
 import com.crafto.ai.CraftoMod;
+import com.crafto.ai.action.CombatEntityIndex;
+import com.crafto.ai.action.ThreatTable;
+import com.crafto.ai.ai.ModelCascade;
 import com.crafto.ai.entity.CraftoEntity;
 import com.crafto.ai.entity.CraftoManager;
 import com.crafto.ai.memory.StructureRegistry;
@@ -11,11 +14,40 @@ import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.event.ServerChatEvent;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.server.ServerStartedEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
 
 @Mod.EventBusSubscriber(modid = CraftoMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
 public class ServerEventHandler {
     private static boolean craftosSpawned = false;
 
+    @SubscribeEvent
+    public static void onServerStarted(ServerStartedEvent event) {
+        // Загружаем модели заранее - первая команда игрока не ждёт их загрузки (асинхронно, тик не блокируется)
+        ModelCascade.warmUpModels();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(ServerStoppedEvent event) {
+        CombatEntityIndex.clear(); // не держим уровни остановленного сервера
+        ThreatTable.invalidate();
+    }
+
+    @SubscribeEvent
+    public static void onTagsUpdated(TagsUpdatedEvent event) {
+        // Теги (и hostileEntityTags) могли измениться после /reload - таблица угроз пересоберётся при следующем скане
+        ThreatTable.invalidate();
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            CraftoMod.getCraftoManager().tick();
+        }
+    }
+
     @SubscribeEvent
     public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
         if (event.getEntity() instanceof ServerPlayer player) {
@@ -76,10 +108,8 @@ public class ServerEventHandler {
                 CraftoEntity crafto = manager.getCrafto(targetName);
 
                 if (crafto != null) {
-                    // Process the command for the targeted Crafto
-                    new Thread(() -> {
-                        crafto.getActionExecutor().processNaturalLanguageCommand(command);
-                    }).start();
+                    // Queued for the Crafto's next tick - no thread per message
+                    crafto.getActionExecutor().submitCommand(command);
 
                     // Optionally cancel the chat message so it doesn't appear in chat
                     // event.setCanceled(true);
@@ -4,6 +4,7 @@ import com.crafto.ai.entity.CraftoEntity;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.monster.Enemy;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.biome.Biome;
@@ -120,6 +121,15 @@ public class WorldKnowledge {
         return sb.toString();
     }
 
+    public boolean hasNearbyHostiles() {
+        for (Entity entity : nearbyEntities) {
+            if (entity instanceof Enemy) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public Map<Block, Integer> getNearbyBlocks() {
         return nearbyBlocks;
     }
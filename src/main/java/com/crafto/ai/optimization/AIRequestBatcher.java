@@ -1,275 +1,385 @@
 package com.crafto.ai.optimization;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import com.crafto.ai.CraftoMod;
-import com.crafto.ai.ai.OllamaClient;
+import com.crafto.ai.ai.LLMRouter;
+import com.crafto.ai.ai.LLMTransport;
+import com.crafto.ai.ai.LLMUnavailableException;
+import com.crafto.ai.ai.ModelCascade;
+import com.crafto.ai.ai.PlanSchema;
+import com.crafto.ai.ai.PromptBuilder;
+import com.crafto.ai.config.CraftoConfig;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 
+/**
+ * Dispatches LLM plan requests. Every request gets its own generation on its own server slot:
+ * up to {@code numParallel} requests run at once (Ollama's OLLAMA_NUM_PARALLEL), the rest wait
+ * in a {@link RequestScheduler} and are flushed by priority and per-agent fairness the moment a
+ * slot frees up.
+ */
 public class AIRequestBatcher {
-    private static final Gson GSON = new Gson();
-    private static final int BATCH_SIZE = 5;
-    private static final long BATCH_TIMEOUT_MS = 2000; // 2 секунды
-    private static final int MAX_CONCURRENT_REQUESTS = 3;
+    private static final long FLUSH_INTERVAL_MS = 250; // страховочный сброс очереди, основной - по освобождению слота
+    private static final int MAX_DISPATCH_THREADS = 10; // верхняя граница /crafto_performance concurrent
+    private static final int PLAN_CACHE_SIZE = 512;
     
-    private final Queue<BatchRequest> pendingRequests = new ConcurrentLinkedQueue<>();
-    private final Map<String, String> responseCache = new ConcurrentHashMap<>();
-    private final Map<String, CompletableFuture<String>> activeRequests = new ConcurrentHashMap<>();
+    private final RequestScheduler<BatchRequest> pendingRequests;
+    private final PlanCache responseCache;
+    private final PlanCacheStore cacheStore;
+    private final Runnable cacheHitListener;
+    private final Map<String, BatchRequest> activeRequests = new ConcurrentHashMap<>();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
-    private final Semaphore requestSemaphore = new Semaphore(MAX_CONCURRENT_REQUESTS);
+    // Один поток на занятый слот; сюда попадают только запросы, уже получившие слот лимитера
+    private final ExecutorService dispatchExecutor = Executors.newFixedThreadPool(MAX_DISPATCH_THREADS);
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final IntSupplier maxConcurrent;
     private final AtomicInteger requestCounter = new AtomicInteger(0);
+    private final AtomicInteger coalescedCounter = new AtomicInteger(0);
+    private final ModelCascade modelCascade; // быстрая модель, при неудаче - основная
+    private final PlanGenerator generator;
+    private final BooleanSupplier llmUnavailable;
+    private final LatencyTracker latencyTracker = LatencyTracker.getInstance();
+    private final ThroughputTracker throughputTracker = ThroughputTracker.getInstance();
     
-    private volatile ScheduledFuture<?> batchProcessor;
+    private volatile ScheduledFuture<?> flushTimer;
+    
+    /**
+     * Runs one request that got a slot and returns the raw response text.
+     */
+    @FunctionalInterface
+    interface PlanGenerator {
+        String generate(BatchRequest request) throws Exception;
+    }
+    
+    /**
+     * @param cacheTtlMillis   current cache TTL, read on every lookup (PerformanceManager tunes it at runtime)
+     * @param cacheHitListener called on every cache hit
+     * @param maxConcurrent    upper bound for in-flight LLM requests, read live; further capped by
+     *                         the configured number of server slots
+     */
+    public AIRequestBatcher(LongSupplier cacheTtlMillis, Runnable cacheHitListener, IntSupplier maxConcurrent) {
+        this(cacheTtlMillis, cacheHitListener, maxConcurrent,
+            new PlanCacheStore(PlanCacheStore.DEFAULT_CACHE_DIR, PLAN_CACHE_SIZE), new ModelCascade(), null,
+            () -> LLMTransport.getInstance().isUnavailable(), System::currentTimeMillis);
+    }
+    
+    /**
+     * @param generator      runs dispatched requests; null sends them through {@code modelCascade}
+     * @param llmUnavailable true while no Ollama endpoint can take a request
+     * @param clockMillis    time source for queue deadlines
+     */
+    AIRequestBatcher(LongSupplier cacheTtlMillis, Runnable cacheHitListener, IntSupplier maxConcurrent,
+                     PlanCacheStore cacheStore, ModelCascade modelCascade, PlanGenerator generator,
+                     BooleanSupplier llmUnavailable, LongSupplier clockMillis) {
+        this.pendingRequests = new RequestScheduler<>(this::dropExpired, request -> request.future.isCancelled(),
+            clockMillis);
+        this.responseCache = new PlanCache(PLAN_CACHE_SIZE, cacheTtlMillis);
+        this.cacheStore = cacheStore;
+        this.responseCache.setStore(cacheStore);
+        this.cacheHitListener = cacheHitListener;
+        this.maxConcurrent = maxConcurrent;
+        this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(this::parallelSlots);
+        this.modelCascade = modelCascade;
+        this.generator = generator != null ? generator : this::sendSingleRequestToAI;
+        this.llmUnavailable = llmUnavailable;
+    }
+    
+    private int parallelSlots() {
+        int bound = Math.min(maxConcurrent.getAsInt(), MAX_DISPATCH_THREADS);
+        try {
+            return Math.min(bound, CraftoConfig.OLLAMA_NUM_PARALLEL.get());
+        } catch (IllegalStateException e) {
+            return bound; // конфиг ещё не загружен (конструирование мода)
+        }
+    }
     
     public static class BatchRequest {
         public final String id;
         public final String agentName;
         public final String command;
-        public final String context;
+        public final String context; // полный пользовательский промпт (PromptBuilder.assembleUserPrompt + память)
         public final CompletableFuture<String> future;
         public final long timestamp;
+        public final long deadline; // к этому моменту (мс) нужен ответ - очередь и генерация вместе
+        public final Consumer<String> chunkListener; // получает фрагменты ответа при стриминге, может быть null
+        public final PlanCacheKey cacheKey;
+        public final RequestPriority priority;
+        public final AtomicInteger outputTokens = new AtomicInteger(); // токены всех генераций запроса, для лимитера
+        private final AtomicInteger callers = new AtomicInteger(); // ждущие ответа, включая присоединившихся
         
         public BatchRequest(String agentName, String command, String context) {
+            this(agentName, command, PlanCacheKey.exact(command, context), context, null, RequestPriority.INTERACTIVE);
+        }
+        
+        public BatchRequest(String agentName, String command, PlanCacheKey cacheKey, String context,
+                            Consumer<String> chunkListener, RequestPriority priority) {
             this.id = "req_" + System.currentTimeMillis() + "_" + Math.random();
             this.agentName = agentName;
             this.command = command;
+            this.cacheKey = cacheKey;
             this.context = context;
             this.future = new CompletableFuture<>();
             this.timestamp = System.currentTimeMillis();
+            this.deadline = timestamp + priority.getResponseDeadlineMs();
+            this.chunkListener = chunkListener;
+            this.priority = priority;
+        }
+        
+        /**
+         * Future for one more caller of this request. Cancelling it detaches only that caller;
+         * once every caller has cancelled, the request itself is cancelled and never dispatched.
+         */
+        CompletableFuture<String> newCaller(Function<String, String> mapping) {
+            callers.incrementAndGet();
+            CompletableFuture<String> caller = future.thenApply(mapping);
+            caller.whenComplete((response, error) -> {
+                if (caller.isCancelled() && callers.decrementAndGet() == 0) {
+                    future.cancel(false);
+                }
+            });
+            return caller;
         }
     }
     
     public CompletableFuture<String> submitRequest(String agentName, String command, String context) {
+        return submitRequest(agentName, command, PlanCacheKey.exact(command, context), context, null,
+            RequestPriority.INTERACTIVE);
+    }
+    
+    /**
+     * @param cacheKey semantic key; cached and shared responses are stored as templates and
+     *                 re-parameterized with this key's numbers and position. {@link RequestPriority#REPLAN}
+     *                 requests never reuse a cached or in-flight plan, but their result replaces the cached one
+     * @param priority scheduling class; requests still queued past its deadline fail with a TimeoutException,
+     *                 and the class response deadline bounds the LLM call. While the Ollama circuit is open
+     *                 the future fails at once with {@link LLMUnavailableException}
+     * @return the response; cancelling it drops the queued request unless other callers share it
+     */
+    public CompletableFuture<String> submitRequest(String agentName, String command, PlanCacheKey cacheKey,
+                                                   String context, Consumer<String> chunkListener,
+                                                   RequestPriority priority) {
+        // Перепланирование: закэшированный или общий план под этим ключом как раз и не сработал -
+        // генерируем заново, а новый план заменит старый в кэше
+        boolean reusable = priority != RequestPriority.REPLAN;
+        
         // Проверяем кэш
-        String cacheKey = generateCacheKey(command, context);
-        String cachedResponse = responseCache.get(cacheKey);
-        if (cachedResponse != null) {
-            CraftoMod.LOGGER.info("Using cached response for: " + command);
-            return CompletableFuture.completedFuture(cachedResponse);
+        String cachedTemplate = reusable ? responseCache.get(cacheKey.getKey()) : null;
+        if (cachedTemplate != null) {
+            CraftoMod.LOGGER.info("Using cached response for: {} (key: {})", command, cacheKey);
+            cacheHitListener.run();
+            return CompletableFuture.completedFuture(cacheKey.instantiate(cachedTemplate));
         }
         
-        // Проверяем активные запросы
-        CompletableFuture<String> activeRequest = activeRequests.get(cacheKey);
-        if (activeRequest != null) {
-            CraftoMod.LOGGER.info("Joining active request for: " + command);
-            return activeRequest;
+        // Сервер не отвечает - не ставим запрос в очередь, а сразу отказываем
+        if (llmUnavailable.getAsBoolean()) {
+            return CompletableFuture.failedFuture(new LLMUnavailableException("Ollama is not responding"));
         }
         
-        BatchRequest request = new BatchRequest(agentName, command, context);
-        pendingRequests.offer(request);
+        BatchRequest request = new BatchRequest(agentName, command, cacheKey, context, chunkListener, priority);
+        CompletableFuture<String> result = request.newCaller(Function.identity());
+        if (reusable) {
+            // Одинаковые запросы в полёте разделяют одну генерацию: регистрируемся до постановки в очередь
+            String key = cacheKey.getKey();
+            BatchRequest activeRequest = activeRequests.putIfAbsent(key, request);
+            if (activeRequest != null) {
+                CraftoMod.LOGGER.info("Joining in-flight request for: {} (key: {})", command, cacheKey);
+                coalescedCounter.incrementAndGet();
+                PlanCacheKey activeKey = activeRequest.cacheKey;
+                return activeRequest.newCaller(response -> cacheKey.instantiate(activeKey.templatize(response)));
+            }
+            request.future.whenComplete((response, error) -> activeRequests.remove(key, request));
+            
+            // Ответ мог попасть в кэш между проверкой и регистрацией
+            if (responseCache.contains(key)) {
+                String template = responseCache.get(key);
+                if (template != null) {
+                    cacheHitListener.run();
+                    request.future.complete(cacheKey.instantiate(template));
+                    return result;
+                }
+            }
+        }
         
-        // Запускаем обработчик батчей если он не запущен
-        startBatchProcessor();
+        pendingRequests.offer(request, agentName, priority);
         
-        // Если батч заполнен, обрабатываем немедленно
-        if (pendingRequests.size() >= BATCH_SIZE) {
-            processBatch();
-        }
+        startFlushTimer();
+        flushPending();
         
-        return request.future;
+        return result;
     }
     
-    private synchronized void startBatchProcessor() {
-        if (batchProcessor == null || batchProcessor.isDone()) {
-            batchProcessor = scheduler.scheduleAtFixedRate(
-                this::processBatch, 
-                BATCH_TIMEOUT_MS, 
-                BATCH_TIMEOUT_MS, 
+    private synchronized void startFlushTimer() {
+        if (flushTimer == null || flushTimer.isDone()) {
+            flushTimer = scheduler.scheduleAtFixedRate(
+                this::flushPending, 
+                FLUSH_INTERVAL_MS, 
+                FLUSH_INTERVAL_MS, 
                 TimeUnit.MILLISECONDS
             );
         }
     }
     
-    private void processBatch() {
-        if (pendingRequests.isEmpty()) {
-            return;
-        }
-        
-        List<BatchRequest> batch = new ArrayList<>();
-        BatchRequest request;
-        
-        // Собираем батч
-        while (batch.size() < BATCH_SIZE && (request = pendingRequests.poll()) != null) {
-            batch.add(request);
-        }
-        
-        if (batch.isEmpty()) {
-            return;
-        }
-        
-        CraftoMod.LOGGER.info("Processing batch of {} requests", batch.size());
-        
-        // Обрабатываем батч асинхронно
-        CompletableFuture.runAsync(() -> processBatchAsync(batch), scheduler);
-    }
-    
-    private void processBatchAsync(List<BatchRequest> batch) {
-        try {
-            requestSemaphore.acquire();
-            
-            if (batch.size() == 1) {
-                // Одиночный запрос
-                processSingleRequest(batch.get(0));
-            } else {
-                // Батчевый запрос
-                processBatchedRequests(batch);
+    /**
+     * Sends queued requests out, one per free slot, in scheduler order. Called on submit,
+     * when a request finishes and from the flush timer.
+     */
+    private void flushPending() {
+        pendingRequests.purgeExpired();
+        while (!pendingRequests.isEmpty() && concurrencyLimiter.tryAcquire()) {
+            BatchRequest request = pendingRequests.poll();
+            if (request == null) {
+                // Другой поток забрал последний запрос, или остались только просроченные и отменённые
+                concurrencyLimiter.releaseUnused();
+                return;
+            }
+            if (request.future.isDone()) {
+                // Отменён уже после выборки из очереди
+                concurrencyLimiter.releaseUnused();
+                continue;
             }
             
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            batch.forEach(req -> req.future.completeExceptionally(e));
-        } finally {
-            requestSemaphore.release();
+            try {
+                dispatchExecutor.execute(() -> dispatch(request));
+            } catch (RejectedExecutionException e) {
+                concurrencyLimiter.releaseUnused();
+                request.future.completeExceptionally(e);
+            }
         }
     }
     
-    private void processSingleRequest(BatchRequest request) {
-        String cacheKey = generateCacheKey(request.command, request.context);
-        activeRequests.put(cacheKey, request.future);
-        
+    private void dropExpired(BatchRequest request) {
+        CraftoMod.LOGGER.warn("Dropping {} request of {} after waiting {}ms for a slot: {}",
+            request.priority, request.agentName, System.currentTimeMillis() - request.timestamp, request.command);
+        request.future.completeExceptionally(new TimeoutException("Request waited past its "
+            + request.priority + " deadline"));
+    }
+    
+    private void dispatch(BatchRequest request) {
+        requestCounter.incrementAndGet();
+        long startTime = System.currentTimeMillis();
+        latencyTracker.record(request.agentName, LatencyTracker.Stage.QUEUE_WAIT,
+            TimeUnit.MILLISECONDS.toNanos(startTime - request.timestamp));
+        boolean success = false;
         try {
-            String response = sendSingleRequestToAI(request);
-            
-            // Кэшируем ответ
-            responseCache.put(cacheKey, response);
-            
-            request.future.complete(response);
-            CraftoMod.LOGGER.info("Completed single request for agent: " + request.agentName);
-            
-        } catch (Exception e) {
-            CraftoMod.LOGGER.error("Failed to process single request: " + e.getMessage());
-            request.future.completeExceptionally(e);
+            success = processSingleRequest(request);
         } finally {
-            activeRequests.remove(cacheKey);
+            concurrencyLimiter.release(System.currentTimeMillis() - startTime, request.outputTokens.get(), success,
+                pendingRequests.size());
+            flushPending();
         }
     }
     
-    private void processBatchedRequests(List<BatchRequest> batch) {
+    /**
+     * @return false if the generation failed or timed out - a timeout or IO error reaches here as a
+     *         null response, which callers still get as the result
+     */
+    private boolean processSingleRequest(BatchRequest request) {
+        String cacheKey = request.cacheKey.getKey();
         try {
-            Map<String, String> responses = sendBatchRequestToAI(batch);
+            String response = generator.generate(request);
+            if (response == null) {
+                CraftoMod.LOGGER.warn("No response for agent {} within its {} deadline", request.agentName, request.priority);
+                request.future.complete(null);
+                return false;
+            }
             
-            for (BatchRequest request : batch) {
-                String response = responses.get(request.id);
-                if (response != null) {
-                    String cacheKey = generateCacheKey(request.command, request.context);
-                    responseCache.put(cacheKey, response);
-                    request.future.complete(response);
-                } else {
-                    request.future.completeExceptionally(
-                        new RuntimeException("No response received for request: " + request.id));
-                }
+            // Кэшируем только план, прошедший схему - иначе битый ответ неделю отдавался бы с диска
+            String template = request.cacheKey.templatize(response);
+            if (!PlanSchema.isValidPlan(response)) {
+                CraftoMod.LOGGER.debug("Not caching plan that fails the schema for: {}", request.command);
+            } else if (!request.cacheKey.isReusable(template)) {
+                CraftoMod.LOGGER.debug("Not caching plan with coordinates tied to this agent for: {}", request.command);
+            } else {
+                responseCache.put(cacheKey, template);
             }
             
-            CraftoMod.LOGGER.info("Completed batch of {} requests", batch.size());
+            request.future.complete(response);
+            CraftoMod.LOGGER.info("Completed request for agent: " + request.agentName);
+            // Ответ, пришедший после срока, - тоже признак перегрузки для лимитера
+            return System.currentTimeMillis() <= request.deadline;
             
         } catch (Exception e) {
-            CraftoMod.LOGGER.error("Failed to process batch: " + e.getMessage());
-            batch.forEach(req -> req.future.completeExceptionally(e));
+            CraftoMod.LOGGER.error("Failed to process request: " + e.getMessage());
+            request.future.completeExceptionally(e);
+            return false;
         }
     }
     
     private String sendSingleRequestToAI(BatchRequest request) throws Exception {
-        // Используем OllamaClient напрямую для одиночных запросов
-        OllamaClient ollamaClient = new OllamaClient();
-        String systemPrompt = "You are a helpful AI assistant for Minecraft. Respond with JSON containing reasoning, plan, and tasks.";
-        String userPrompt = buildPrompt(request.command, request.context);
-        return ollamaClient.sendRequest(systemPrompt, userPrompt);
+        // Системный промпт - одна и та же строка для всех агентов: Ollama переиспользует его префикс в KV-кэше
+        String systemPrompt = PromptBuilder.buildSystemPrompt();
+        Consumer<String> chunkListener = CraftoConfig.OLLAMA_STREAMING.get() ? request.chunkListener : null;
+        if (llmUnavailable.getAsBoolean()) {
+            // Все серверы отвалились, пока запрос ждал в очереди
+            throw new LLMUnavailableException("Ollama is not responding");
+        }
+        long startNanos = System.nanoTime();
+        String promptType = request.priority.name().toLowerCase(Locale.ROOT);
+        String response = modelCascade.generate(systemPrompt, request.context, request.priority, chunkListener,
+            stats -> {
+                request.outputTokens.addAndGet(stats.getOutputTokens());
+                throughputTracker.record(request.agentName, promptType, stats);
+            }, request.deadline);
+        latencyTracker.record(request.agentName, LatencyTracker.Stage.LLM, System.nanoTime() - startNanos);
+        if (response == null && llmUnavailable.getAsBoolean()) {
+            throw new LLMUnavailableException("Ollama stopped responding");
+        }
+        return response;
     }
     
-    private Map<String, String> sendBatchRequestToAI(List<BatchRequest> batch) throws Exception {
-        // Создаем батчевый промпт
-        JsonObject batchPrompt = new JsonObject();
-        batchPrompt.addProperty("model", "llama3.2");
-        batchPrompt.addProperty("stream", false);
-        
-        StringBuilder promptBuilder = new StringBuilder();
-        promptBuilder.append("Process multiple agent commands in batch. Return JSON with responses for each request ID.\n\n");
-        
-        for (BatchRequest request : batch) {
-            promptBuilder.append("Request ID: ").append(request.id).append("\n");
-            promptBuilder.append("Agent: ").append(request.agentName).append("\n");
-            promptBuilder.append("Command: ").append(request.command).append("\n");
-            promptBuilder.append("Context: ").append(request.context).append("\n");
-            promptBuilder.append("---\n");
-        }
-        
-        promptBuilder.append("\nReturn format: {\"").append(batch.get(0).id).append("\": \"response1\", \"")
-                     .append(batch.size() > 1 ? batch.get(1).id : "example").append("\": \"response2\", ...}");
-        
-        batchPrompt.addProperty("prompt", promptBuilder.toString());
-        
-        String response = sendHttpRequest(GSON.toJson(batchPrompt));
-        
-        // Парсим батчевый ответ
-        return parseBatchResponse(response, batch);
+    /**
+     * Last cached plan for the key even if its TTL has run out - for when the LLM cannot answer.
+     *
+     * @return the response re-parameterized for {@code cacheKey}, or null
+     */
+    public String getFallbackResponse(PlanCacheKey cacheKey) {
+        String template = responseCache.getStale(cacheKey.getKey());
+        return template != null ? cacheKey.instantiate(template) : null;
     }
     
-    private Map<String, String> parseBatchResponse(String response, List<BatchRequest> batch) {
-        Map<String, String> responses = new HashMap<>();
-        
-        try {
-            JsonObject jsonResponse = GSON.fromJson(response, JsonObject.class);
-            
-            for (BatchRequest request : batch) {
-                if (jsonResponse.has(request.id)) {
-                    responses.put(request.id, jsonResponse.get(request.id).getAsString());
-                } else {
-                    // Fallback: используем весь ответ для первого запроса
-                    if (responses.isEmpty()) {
-                        responses.put(request.id, response);
-                    }
-                }
-            }
-            
-        } catch (Exception e) {
-            CraftoMod.LOGGER.warn("Failed to parse batch response, using fallback");
-            // Fallback: отдаем весь ответ первому запросу
-            if (!batch.isEmpty()) {
-                responses.put(batch.get(0).id, response);
+    // Прогрев кэша с диска - без обращений к LLM при старте
+    public void loadPersistentCache() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                int restored = responseCache.restore(cacheStore);
+                CraftoMod.LOGGER.info("Restored {} cached plans from disk", restored);
+            } catch (Exception e) {
+                CraftoMod.LOGGER.warn("Failed to restore plan cache: " + e.getMessage());
             }
+        }, scheduler);
+    }
+    
+    // Удаление устаревших записей кэша
+    public void purgeExpiredCache() {
+        int removed = responseCache.purgeExpired();
+        if (removed > 0) {
+            CraftoMod.LOGGER.debug("Purged {} expired cached responses", removed);
         }
-        
-        return responses;
     }
     
-    private String buildPrompt(String command, String context) {
-        return "Agent command: " + command + "\nContext: " + context + 
-               "\nProvide a JSON response with reasoning, plan, and tasks.";
+    public ModelCascade getModelCascade() {
+        return modelCascade;
     }
     
-    private String sendHttpRequest(String payload) throws Exception {
-        // Используем OllamaClient для отправки запроса
-        OllamaClient ollamaClient = new OllamaClient();
-        return ollamaClient.sendRequest("You are a helpful AI assistant for Minecraft.", payload);
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
     }
     
-    private String generateCacheKey(String command, String context) {
-        return (command + "_" + context).hashCode() + "";
+    public long getDroppedCount() {
+        return pendingRequests.getDroppedCount();
     }
     
-    // Предзагрузка популярных команд
-    public void preloadPopularCommands() {
-        String[] popularCommands = {
-            "follow me", "kill 10 mobs", "kill 100 mobs", "stop", "come here"
-        };
-        
-        for (String command : popularCommands) {
-            String cacheKey = generateCacheKey(command, "");
-            if (!responseCache.containsKey(cacheKey)) {
-                CompletableFuture.runAsync(() -> {
-                    try {
-                        String response = sendSingleRequestToAI(
-                            new BatchRequest("preload", command, ""));
-                        responseCache.put(cacheKey, response);
-                        CraftoMod.LOGGER.info("Preloaded command: " + command);
-                    } catch (Exception e) {
-                        CraftoMod.LOGGER.warn("Failed to preload command: " + command);
-                    }
-                });
-            }
-        }
+    public int getCoalescedCount() {
+        return coalescedCounter.get();
+    }
+    
+    public PlanCache getResponseCache() {
+        return responseCache;
     }
     
     // Очистка кэша
@@ -281,13 +391,30 @@ public class AIRequestBatcher {
     // Статистика
     public void logStatistics() {
         CraftoMod.LOGGER.info("AI Request Batcher Statistics:");
-        CraftoMod.LOGGER.info("- Cached responses: " + responseCache.size());
-        CraftoMod.LOGGER.info("- Pending requests: " + pendingRequests.size());
-        CraftoMod.LOGGER.info("- Active requests: " + activeRequests.size());
+        CraftoMod.LOGGER.info("- Cached responses: " + responseCache.size() + "/" + responseCache.getMaxEntries());
+        CraftoMod.LOGGER.info("- Cache hits/misses: " + responseCache.getHits() + "/" + responseCache.getMisses()
+            + ", evictions: " + responseCache.getEvictions() + ", expired: " + responseCache.getExpirations());
+        CraftoMod.LOGGER.info("- Pending requests: " + pendingRequests.size()
+            + " (interactive " + pendingRequests.size(RequestPriority.INTERACTIVE)
+            + ", replan " + pendingRequests.size(RequestPriority.REPLAN)
+            + ", background " + pendingRequests.size(RequestPriority.BACKGROUND)
+            + "), dropped past deadline: " + pendingRequests.getDroppedCount());
+        CraftoMod.LOGGER.info("- Active requests: " + activeRequests.size()
+            + " (coalesced so far: " + coalescedCounter.get() + ")");
+        CraftoMod.LOGGER.info("- In-flight LLM requests: " + concurrencyLimiter.getInFlight()
+            + "/" + concurrencyLimiter.getLimit() + " (baseline " + String.format(Locale.ROOT, "%.1f",
+            concurrencyLimiter.getBaselineMsPerToken()) + " ms/token)");
+        CraftoMod.LOGGER.info("- Model cascade: fast plans accepted " + modelCascade.getFastAccepted()
+            + ", escalated " + modelCascade.getEscalations() + ", main model only " + modelCascade.getFullOnly());
+        LLMRouter router = LLMTransport.getInstance().getRouter();
+        CraftoMod.LOGGER.info("- Ollama endpoints: " + router.describeEndpoints()
+            + " (hedged requests: " + router.getHedgedCount() + ", rejected while open: " + router.getRejectedCount() + ")");
         CraftoMod.LOGGER.info("- Total requests processed: " + requestCounter.get());
     }
     
     public void shutdown() {
+        cacheStore.close();
+        dispatchExecutor.shutdownNow();
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
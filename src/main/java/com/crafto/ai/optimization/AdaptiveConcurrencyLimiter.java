@@ -0,0 +1,102 @@
+package com.crafto.ai.optimization;
+
+import java.util.function.IntSupplier;
+
+/**
+ * AIMD limiter for in-flight LLM requests.
+ *
+ * The limit grows by one slot per "window" of successful requests while there is a queue
+ * to serve, and shrinks multiplicatively when a request fails or its latency per generated
+ * token rises well above the running average - the signal that the LLM host is saturated.
+ * Wall time alone mostly tracks how long the answer was, so it is divided by the output tokens;
+ * the baseline is an average rather than a minimum, so one short reply cannot pin it low.
+ * The upper bound is read live from PerformanceManager, so both the adaptive tuning in
+ * optimizePerformance() and "/crafto_performance concurrent" take effect immediately.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final int MIN_LIMIT = 1;
+    private static final double BACKOFF_RATIO = 0.75;
+    private static final double LATENCY_TOLERANCE = 2.0;   // задержка на токен выше базовой в 2 раза = перегрузка
+    private static final double BASELINE_DRIFT = 0.05;     // базовая задержка медленно догоняет реальную
+    // Нижняя граница делителя: у коротких ответов время разбора промпта не размазывается на токены
+    private static final int MIN_TOKENS = 16;
+
+    private final IntSupplier maxLimit;
+    private double limit;
+    private int inFlight = 0;
+    private double baselineMsPerToken = -1;
+
+    public AdaptiveConcurrencyLimiter(IntSupplier maxLimit) {
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(MIN_LIMIT, maxLimit.getAsInt());
+    }
+
+    /**
+     * Takes a slot if one is free under the current limit. Never blocks: requests that
+     * do not get a slot stay in the batcher queue until a running request releases one.
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= getLimit()) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Returns a slot that was acquired but never used, without affecting the limit.
+     */
+    public synchronized void releaseUnused() {
+        inFlight = Math.max(0, inFlight - 1);
+    }
+
+    /**
+     * Returns a slot and feeds the outcome into the limit.
+     *
+     * @param latencyMs    wall time of the request
+     * @param outputTokens tokens the request generated, 0 if Ollama reported none - then only
+     *                     {@code success} is judged
+     * @param success      false on error or timeout
+     * @param queueDepth   requests still waiting for a slot
+     */
+    public synchronized void release(long latencyMs, int outputTokens, boolean success, int queueDepth) {
+        inFlight = Math.max(0, inFlight - 1);
+        int upperBound = Math.max(MIN_LIMIT, maxLimit.getAsInt());
+
+        boolean slow = false;
+        if (success && outputTokens > 0) {
+            double msPerToken = (double) latencyMs / Math.max(MIN_TOKENS, outputTokens);
+            if (baselineMsPerToken < 0) {
+                baselineMsPerToken = msPerToken;
+            } else {
+                slow = msPerToken > baselineMsPerToken * LATENCY_TOLERANCE;
+                baselineMsPerToken += (msPerToken - baselineMsPerToken) * BASELINE_DRIFT;
+            }
+        }
+
+        boolean overloaded = !success || slow;
+        if (overloaded) {
+            limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+        } else if (queueDepth > 0) {
+            // Аддитивный рост: +1 слот за каждые limit успешных запросов
+            limit = Math.min(upperBound, limit + 1.0 / limit);
+        }
+        limit = Math.min(limit, upperBound);
+    }
+
+    public synchronized int getLimit() {
+        int upperBound = Math.max(MIN_LIMIT, maxLimit.getAsInt());
+        return Math.max(MIN_LIMIT, Math.min(upperBound, (int) limit));
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return average wall time per generated token, 0 before the first measured request
+     */
+    public synchronized double getBaselineMsPerToken() {
+        return Math.max(0, baselineMsPerToken);
+    }
+}
@@ -0,0 +1,114 @@
+package com.crafto.ai.optimization;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets: exact below 32 µs, then 16
+ * buckets per power of two, so any reported percentile is within ~6% of the true value.
+ * Recording is a single atomic increment and can be called from any thread.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2; // 0..31 µs - по одной корзине на значение
+    private static final int OCTAVES = 40;                     // до 2^45 µs, с огромным запасом
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR_BUCKETS + OCTAVES * SUB_BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1_000);
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(Math.min(bucketIndex(value), counts.length() - 1));
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift); // в [16, 32)
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (mantissa - SUB_BUCKETS);
+    }
+
+    /**
+     * @return the largest value that falls into the bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long mantissa = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Copies the counters out. Samples recorded during the copy may or may not be included.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        long maxMicros = max.get();
+        return new Snapshot(total, percentile(copy, total, 0.50, maxMicros), percentile(copy, total, 0.95, maxMicros),
+            percentile(copy, total, 0.99, maxMicros), maxMicros);
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long maxMicros) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    /**
+     * Percentiles at one point in time, in microseconds.
+     */
+    public static class Snapshot {
+        public final long count;
+        public final long p50;
+        public final long p95;
+        public final long p99;
+        public final long max;
+
+        Snapshot(long count, long p50, long p95, long p99, long max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            if (count == 0) {
+                return "no samples";
+            }
+            return "p50 " + formatMillis(p50) + ", p95 " + formatMillis(p95) + ", p99 " + formatMillis(p99)
+                + ", max " + formatMillis(max) + " (" + count + " samples)";
+        }
+
+        private static String formatMillis(long micros) {
+            // Разбор ответа занимает доли миллисекунды - для малых значений оставляем один знак
+            return micros < 10_000 ? String.format(Locale.ROOT, "%.1fms", micros / 1000.0) : (micros / 1000) + "ms";
+        }
+    }
+}
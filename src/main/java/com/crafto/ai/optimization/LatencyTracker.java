@@ -0,0 +1,102 @@
+package com.crafto.ai.optimization;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms for each stage of turning a player command into actions, kept globally
+ * and per agent. Recording never blocks, so it is safe from the server thread and from LLM
+ * dispatch threads alike.
+ */
+public class LatencyTracker {
+    private static LatencyTracker instance;
+
+    public enum Stage {
+        QUEUE_WAIT("Queue Wait"),          // от постановки в очередь до получения слота
+        LLM("LLM Generation"),             // генерация ответа, обе модели каскада вместе
+        PARSE("Plan Parsing"),
+        COMMAND_TO_ACTION("Command to First Action"); // от команды игрока до запуска первого действия
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final Map<Stage, LatencyHistogram> global = newHistograms();
+    private final Map<String, Map<Stage, LatencyHistogram>> perAgent = new ConcurrentHashMap<>();
+
+    public static synchronized LatencyTracker getInstance() {
+        if (instance == null) {
+            instance = new LatencyTracker();
+        }
+        return instance;
+    }
+
+    private static Map<Stage, LatencyHistogram> newHistograms() {
+        Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    public void record(String agentName, Stage stage, long nanos) {
+        global.get(stage).recordNanos(nanos);
+        if (agentName != null) {
+            perAgent.computeIfAbsent(agentName, name -> newHistograms()).get(stage).recordNanos(nanos);
+        }
+    }
+
+    public LatencyHistogram.Snapshot snapshot(Stage stage) {
+        return global.get(stage).snapshot();
+    }
+
+    /**
+     * @return snapshots for every stage, or an empty map if the agent has recorded nothing yet
+     */
+    public Map<Stage, LatencyHistogram.Snapshot> snapshot(String agentName) {
+        Map<Stage, LatencyHistogram> histograms = perAgent.get(agentName);
+        Map<Stage, LatencyHistogram.Snapshot> snapshots = new EnumMap<>(Stage.class);
+        if (histograms != null) {
+            histograms.forEach((stage, histogram) -> snapshots.put(stage, histogram.snapshot()));
+        }
+        return snapshots;
+    }
+
+    /**
+     * @return global and per-agent percentiles in microseconds, for {@code exportStatistics()}
+     */
+    public Map<String, Object> export() {
+        Map<String, Object> export = new LinkedHashMap<>();
+        export.put("global", toMap(global));
+        Map<String, Object> agents = new TreeMap<>();
+        perAgent.forEach((agent, histograms) -> agents.put(agent, toMap(histograms)));
+        export.put("agents", agents);
+        return export;
+    }
+
+    private static Map<String, Object> toMap(Map<Stage, LatencyHistogram> histograms) {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        histograms.forEach((stage, histogram) -> {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            Map<String, Long> values = new LinkedHashMap<>();
+            values.put("count", snapshot.count);
+            values.put("p50Micros", snapshot.p50);
+            values.put("p95Micros", snapshot.p95);
+            values.put("p99Micros", snapshot.p99);
+            values.put("maxMicros", snapshot.max);
+            stages.put(stage.name(), values);
+        });
+        return stages;
+    }
+}
@@ -1,25 +1,29 @@
 package com.crafto.ai.optimization;
 
 import com.crafto.ai.CraftoMod;
+import com.crafto.ai.ai.LLMRouter;
+import com.crafto.ai.ai.LLMTransport;
 import com.crafto.ai.memory.AgentMemory;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class PerformanceManager {
     private static PerformanceManager instance;
+    private static final int RESPONSE_TIME_SMOOTHING = 8;
     
     private final Map<String, AgentMemory> agentMemories = new ConcurrentHashMap<>();
-    private final AIRequestBatcher requestBatcher = new AIRequestBatcher();
+    private final AIRequestBatcher requestBatcher;
     private final SystemMonitor systemMonitor = SystemMonitor.getInstance();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
     
     // Метрики производительности
     private final AtomicLong totalRequests = new AtomicLong(0);
     private final AtomicLong cacheHits = new AtomicLong(0);
-    private final AtomicLong averageResponseTime = new AtomicLong(0);
-    private final Map<String, Long> commandExecutionTimes = new ConcurrentHashMap<>();
-    private final Map<String, Integer> commandSuccessRates = new ConcurrentHashMap<>();
+    private final AtomicLong averageResponseTime = new AtomicLong(0); // экспоненциальное сглаживание, см. recordRequestMetrics
+    private final LatencyTracker latencyTracker = LatencyTracker.getInstance();
+    private final ThroughputTracker throughputTracker = ThroughputTracker.getInstance();
     
     // Настройки оптимизации
     private volatile boolean adaptiveOptimization = true;
@@ -27,9 +31,11 @@ public class PerformanceManager {
     private volatile long cacheExpirationTime = 30 * 60 * 1000L; // 30 минут
     
     private PerformanceManager() {
+        this.requestBatcher = new AIRequestBatcher(() -> cacheExpirationTime, cacheHits::incrementAndGet,
+            () -> maxConcurrentRequests);
         startPerformanceMonitoring();
         startMemoryCleanup();
-        requestBatcher.preloadPopularCommands();
+        requestBatcher.loadPersistentCache();
     }
     
     public static synchronized PerformanceManager getInstance() {
@@ -46,13 +52,26 @@ public class PerformanceManager {
     
     // Оптимизированный запрос к AI
     public CompletableFuture<String> processAIRequest(String agentName, String command, String context) {
+        return processAIRequest(agentName, command, PlanCacheKey.exact(command, context), context, null,
+            RequestPriority.INTERACTIVE);
+    }
+    
+    // Запрос к AI с семантическим ключом кэша, приоритетом и стримингом фрагментов ответа в chunkListener
+    public CompletableFuture<String> processAIRequest(String agentName, String command, PlanCacheKey cacheKey,
+                                                      String context, Consumer<String> chunkListener,
+                                                      RequestPriority priority) {
         long startTime = System.currentTimeMillis();
         totalRequests.incrementAndGet();
         
-        return requestBatcher.submitRequest(agentName, command, context)
+        CompletableFuture<String> request = requestBatcher.submitRequest(agentName, command, cacheKey, context,
+            chunkListener, priority);
+        CompletableFuture<String> tracked = request
             .whenComplete((response, throwable) -> {
+                if (throwable instanceof CancellationException) {
+                    return; // агент передумал - не ошибка и не время ответа
+                }
                 long executionTime = System.currentTimeMillis() - startTime;
-                recordRequestMetrics(command, executionTime, throwable == null);
+                recordRequestMetrics(executionTime);
                 
                 // Обновляем память агента
                 AgentMemory memory = getAgentMemory(agentName);
@@ -65,6 +84,18 @@ public class PerformanceManager {
                     CraftoMod.LOGGER.error("AI request failed for agent: " + agentName, throwable);
                 }
             });
+        // Отмена доходит до батчера: запрос уходит из очереди, не заняв слот
+        tracked.whenComplete((response, throwable) -> {
+            if (tracked.isCancelled()) {
+                request.cancel(false);
+            }
+        });
+        return tracked;
+    }
+    
+    // Последний закэшированный план для ключа, даже просроченный - запасной вариант, когда LLM не отвечает
+    public String getFallbackResponse(PlanCacheKey cacheKey) {
+        return requestBatcher.getFallbackResponse(cacheKey);
     }
     
     // Запись стратегии выполнения
@@ -72,11 +103,6 @@ public class PerformanceManager {
                               long executionTime, boolean success) {
         AgentMemory memory = getAgentMemory(agentName);
         memory.recordSuccessfulStrategy(taskType, strategy, executionTime, success);
-        
-        // Обновляем глобальные метрики
-        String key = taskType + "_" + agentName;
-        commandExecutionTimes.put(key, executionTime);
-        commandSuccessRates.merge(key, success ? 1 : 0, Integer::sum);
     }
     
     // Получение оптимальной стратегии
@@ -110,8 +136,13 @@ public class PerformanceManager {
         SystemMonitor.SystemLoadLevel loadLevel = systemMonitor.getLoadLevel();
         SystemMonitor.OptimizationRecommendation sysRec = systemMonitor.getOptimizationRecommendation();
         
-        CraftoMod.LOGGER.info("Performance metrics - Avg response: {}ms, Cache hit rate: {:.2f}%, System load: {}", 
-                           avgResponseTime, cacheHitRate * 100, loadLevel);
+        // Суммарная скорость декодирования основной модели за минуту относительно затухающего пика:
+        // параллельные запросы складываются, так что падает она, только когда GPU действительно не справляется
+        double throughputRatio = throughputTracker.forModel(LLMTransport.getInstance().getModel()).getThroughputRatio();
+        
+        CraftoMod.LOGGER.info("Performance metrics - Avg response: {}ms, Cache hit rate: {:.2f}%, System load: {}, Throughput: {}", 
+                           avgResponseTime, cacheHitRate * 100, loadLevel,
+                           throughputRatio < 0 ? "unknown" : Math.round(throughputRatio * 100) + "% of peak");
         
         // Адаптивная настройка на основе системной нагрузки
         switch (loadLevel) {
@@ -128,17 +159,17 @@ public class PerformanceManager {
             }
             case MODERATE -> {
                 // Стандартная логика оптимизации
-                if (avgResponseTime > 10000) {
+                if (throughputRatio >= 0 ? throughputRatio < 0.5 : avgResponseTime > 10000) {
                     maxConcurrentRequests = Math.max(1, maxConcurrentRequests - 1);
-                } else if (avgResponseTime < 5000 && cacheHitRate > 0.7) {
+                } else if ((throughputRatio >= 0 ? throughputRatio > 0.8 : avgResponseTime < 5000) && cacheHitRate > 0.7) {
                     maxConcurrentRequests = Math.min(3, maxConcurrentRequests + 1);
                 }
             }
             case LOW -> {
                 // Можем быть более агрессивными в оптимизации
-                if (avgResponseTime > 8000) {
+                if (throughputRatio >= 0 ? throughputRatio < 0.4 : avgResponseTime > 8000) {
                     maxConcurrentRequests = Math.max(2, maxConcurrentRequests - 1);
-                } else if (avgResponseTime < 3000 && cacheHitRate > 0.7) {
+                } else if ((throughputRatio >= 0 ? throughputRatio > 0.8 : avgResponseTime < 3000) && cacheHitRate > 0.7) {
                     maxConcurrentRequests = Math.min(5, maxConcurrentRequests + 1);
                 }
             }
@@ -206,24 +237,18 @@ public class PerformanceManager {
         return recommendations;
     }
     
-    private void recordRequestMetrics(String command, long executionTime, boolean success) {
-        // Обновляем среднее время ответа
-        long currentAvg = averageResponseTime.get();
-        long newAvg = (currentAvg + executionTime) / 2;
-        averageResponseTime.set(newAvg);
-        
-        // Записываем время выполнения команды
-        commandExecutionTimes.put(command, executionTime);
-        
-        if (success) {
-            commandSuccessRates.merge(command, 1, Integer::sum);
-        }
+    // Распределение по этапам - в LatencyTracker; здесь только среднее для адаптивной настройки
+    private void recordRequestMetrics(long executionTime) {
+        // Скользящее среднее с весом 1/8 для нового замера: (avg + t) / 2 определялось почти только последним запросом
+        averageResponseTime.accumulateAndGet(executionTime,
+            (currentAvg, sample) -> currentAvg == 0 ? sample : currentAvg + (sample - currentAvg) / RESPONSE_TIME_SMOOTHING);
     }
     
     private void startPerformanceMonitoring() {
         scheduler.scheduleAtFixedRate(() -> {
             try {
                 optimizePerformance();
+                requestBatcher.purgeExpiredCache();
                 requestBatcher.logStatistics();
                 logPerformanceMetrics();
             } catch (Exception e) {
@@ -266,6 +291,13 @@ public class PerformanceManager {
         CraftoMod.LOGGER.info("Cache hits: {}", cacheHits.get());
         CraftoMod.LOGGER.info("Average response time: {}ms", averageResponseTime.get());
         CraftoMod.LOGGER.info("Active agents: {}", agentMemories.size());
+        for (LatencyTracker.Stage stage : LatencyTracker.Stage.values()) {
+            CraftoMod.LOGGER.info("{} latency: {}", stage.getDisplayName(), latencyTracker.snapshot(stage));
+        }
+        throughputTracker.getModels().forEach((model, throughput) ->
+            CraftoMod.LOGGER.info("Model '{}' throughput: {}", model, throughput));
+        throughputTracker.getPromptTypes().forEach((promptType, throughput) ->
+            CraftoMod.LOGGER.info("Prompt type '{}' throughput: {}", promptType, throughput));
         CraftoMod.LOGGER.info("Max concurrent requests: {}", maxConcurrentRequests);
         CraftoMod.LOGGER.info("Cache expiration time: {}ms", cacheExpirationTime);
         
@@ -277,13 +309,6 @@ public class PerformanceManager {
             systemMonitor.getMemoryMaxMB());
         CraftoMod.LOGGER.info("System Threads: {}", systemMonitor.getThreadCount());
         CraftoMod.LOGGER.info("System Load Level: {}", systemMonitor.getLoadLevel());
-        
-        // Топ команд по времени выполнения
-        commandExecutionTimes.entrySet().stream()
-            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-            .limit(5)
-            .forEach(entry -> CraftoMod.LOGGER.info("Command '{}': {}ms", 
-                                                 entry.getKey(), entry.getValue()));
     }
     
     // Настройки оптимизации
@@ -297,6 +322,18 @@ public class PerformanceManager {
         CraftoMod.LOGGER.info("Max concurrent requests set to: " + this.maxConcurrentRequests);
     }
     
+    public LatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+    
+    public ThroughputTracker getThroughputTracker() {
+        return throughputTracker;
+    }
+    
+    public void clearCache() {
+        requestBatcher.clearCache();
+    }
+    
     public void setCacheExpirationTime(long timeMs) {
         this.cacheExpirationTime = Math.max(60000L, timeMs); // Минимум 1 минута
         CraftoMod.LOGGER.info("Cache expiration time set to: {}ms", this.cacheExpirationTime);
@@ -307,12 +344,26 @@ public class PerformanceManager {
         Map<String, Object> stats = new HashMap<>();
         stats.put("totalRequests", totalRequests.get());
         stats.put("cacheHits", cacheHits.get());
+        PlanCache cache = requestBatcher.getResponseCache();
+        stats.put("cacheMisses", cache.getMisses());
+        stats.put("cacheEvictions", cache.getEvictions());
+        stats.put("cacheSize", cache.size());
         stats.put("averageResponseTime", averageResponseTime.get());
         stats.put("activeAgents", agentMemories.size());
         stats.put("maxConcurrentRequests", maxConcurrentRequests);
+        stats.put("effectiveConcurrency", requestBatcher.getConcurrencyLimiter().getLimit());
+        stats.put("inFlightRequests", requestBatcher.getConcurrencyLimiter().getInFlight());
+        stats.put("coalescedRequests", requestBatcher.getCoalescedCount());
+        stats.put("droppedRequests", requestBatcher.getDroppedCount());
+        stats.put("fastModelAccepted", requestBatcher.getModelCascade().getFastAccepted());
+        stats.put("modelEscalations", requestBatcher.getModelCascade().getEscalations());
+        LLMRouter router = LLMTransport.getInstance().getRouter();
+        stats.put("ollamaEndpoints", router.describeEndpoints());
+        stats.put("hedgedRequests", router.getHedgedCount());
+        stats.put("circuitRejected", router.getRejectedCount());
         stats.put("cacheExpirationTime", cacheExpirationTime);
-        stats.put("commandExecutionTimes", new HashMap<>(commandExecutionTimes));
-        stats.put("commandSuccessRates", new HashMap<>(commandSuccessRates));
+        stats.put("latency", latencyTracker.export());
+        stats.put("throughput", throughputTracker.export());
         
         return stats;
     }
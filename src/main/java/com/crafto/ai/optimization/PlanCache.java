@@ -0,0 +1,189 @@
+package com.crafto.ai.optimization;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded LRU cache for LLM plan responses with a per-entry TTL.
+ * The TTL is read from the supplier on every lookup, so changes made by
+ * PerformanceManager.optimizePerformance() apply to entries already in the cache.
+ * Keys are compared as full strings - no hashCode() collisions between different commands.
+ * Expired entries move to a bounded stale area that only {@link #getStale} reads - the
+ * fallback when the LLM is unavailable.
+ */
+public class PlanCache {
+    private final int maxEntries;
+    private final LongSupplier ttlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+    private final LinkedHashMap<String, String> stale;
+    private volatile PlanCacheStore store;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    private static class Entry {
+        final String value;
+        final long createdAt;
+
+        Entry(String value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+
+    public PlanCache(int maxEntries, LongSupplier ttlMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttlMillis;
+        // accessOrder = true: итерация от давно неиспользованных к недавним (LRU)
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > PlanCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.stale = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > PlanCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return cached value, or null on a miss or an expired entry
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (isExpired(entry, System.currentTimeMillis())) {
+            entries.remove(key);
+            stale.put(key, entry.value);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public void put(String key, String value) {
+        if (key == null || value == null) {
+            return;
+        }
+        synchronized (this) {
+            entries.put(key, new Entry(value, System.currentTimeMillis()));
+            stale.remove(key);
+        }
+        
+        // Вне блокировки кэша; store только ставит запись в очередь своего потока
+        PlanCacheStore currentStore = store;
+        if (currentStore != null) {
+            currentStore.append(key, value);
+        }
+    }
+    
+    /**
+     * Attaches the on-disk store: every later put is appended to it in the background.
+     */
+    public void setStore(PlanCacheStore store) {
+        this.store = store;
+    }
+    
+    /**
+     * Warms the cache from the store. Restored entries get a fresh TTL and are not re-appended.
+     *
+     * @return number of entries restored
+     */
+    public int restore(PlanCacheStore source) {
+        Map<String, String> persisted = source.load();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            persisted.forEach((key, value) -> entries.putIfAbsent(key, new Entry(value, now)));
+        }
+        return persisted.size();
+    }
+
+    /**
+     * Lookup that ignores the TTL: the live entry, or the last expired value for the key.
+     * Does not count as a hit or miss.
+     */
+    public synchronized String getStale(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.value : stale.get(key);
+    }
+
+    public synchronized boolean contains(String key) {
+        Entry entry = entries.get(key);
+        return entry != null && !isExpired(entry, System.currentTimeMillis());
+    }
+
+    /**
+     * Drops every expired entry. Called periodically so idle entries do not linger until the next lookup.
+     */
+    public synchronized int purgeExpired() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (isExpired(entry.getValue(), now)) {
+                stale.put(entry.getKey(), entry.getValue().value);
+                iterator.remove();
+                removed++;
+            }
+        }
+        expirations.addAndGet(removed);
+        return removed;
+    }
+
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            stale.clear();
+        }
+        PlanCacheStore currentStore = store;
+        if (currentStore != null) {
+            currentStore.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.createdAt > ttlMillis.getAsLong();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+}
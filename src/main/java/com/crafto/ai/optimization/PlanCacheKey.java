@@ -0,0 +1,264 @@
+package com.crafto.ai.optimization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Semantic key for the plan cache.
+ *
+ * The command is normalized (case, whitespace, EN/RU synonyms) and its numbers are pulled
+ * out as slots, so "Build a house", "build house" and "построй дом" share one entry, as do
+ * "kill 5 zombies" and "убей 10 зомби". The world context is reduced to the coarse fields
+ * that change the plan. Cached responses are stored as templates: task parameters that come
+ * from the command (count, quantity, radius, or x/y/z given as three numbers in a row) or lie
+ * near the agent position (x, y, z as an offset from it) are replaced by placeholders on the way
+ * in and by the live values on the way out. Other numbers are left as they are, so a radius of 64
+ * is never mistaken for y=64; a plan that still has such a literal coordinate is not reusable.
+ */
+public class PlanCacheKey {
+    private static final Pattern TOKEN_SPLIT = Pattern.compile("[^\\p{L}\\p{N}_-]+");
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+");
+    private static final Pattern TASKS_KEY = Pattern.compile("[\"']tasks[\"']\\s*:");
+    // Целые значения параметров задач, зависящих от команды или позиции агента
+    private static final Pattern TASK_PARAMETER = Pattern.compile(
+        "[\"'](x|y|z|count|quantity|radius)[\"']\\s*:\\s*(-?\\d+)(?![\\w.])");
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{(#\\d+|[xyz](?:[+-]\\d+)?)}}");
+    private static final Pattern COORDINATE_SLOTS = Pattern.compile("#(\\d+) #\\d+ #\\d+");
+    // Координаты в пределах чанка от агента - смещение от позиции ("x+5", точка на блок выше)
+    private static final int NEAR_POSITION = 16;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+        "a", "an", "the", "please", "pls", "some", "for", "пожалуйста", "плиз", "мне"
+    );
+
+    private static final Map<String, String> SYNONYMS = new HashMap<>();
+
+    static {
+        synonyms("build", "build", "construct", "make", "построй", "построить", "строй", "постройте", "сделай", "возведи");
+        synonyms("house", "house", "дом", "дома", "домик");
+        synonyms("big", "big", "large", "huge", "большой", "большую", "огромный", "огромную");
+        synonyms("castle", "castle", "замок");
+        synonyms("tower", "tower", "башня", "башню");
+        synonyms("cottage", "cottage", "коттедж");
+        synonyms("mansion", "mansion", "особняк");
+        synonyms("kill", "kill", "slay", "убей", "убить", "уничтожь");
+        synonyms("attack", "attack", "fight", "атакуй", "нападай", "сражайся");
+        synonyms("mine", "mine", "dig", "добудь", "добыть", "накопай", "выкопай", "копай");
+        synonyms("follow", "follow", "следуй", "иди");
+        synonyms("me", "me", "мной", "меня");
+        synonyms("explore", "explore", "scout", "исследуй", "исследовать", "разведай");
+        synonyms("find", "find", "search", "найди", "ищи");
+        synonyms("waypoint", "waypoint", "точку", "точка", "метку", "метка");
+        synonyms("create", "create", "создай", "поставь");
+        synonyms("mob", "mob", "mobs", "моб", "мобов", "мобы", "монстров", "монстры");
+        synonyms("zombie", "zombie", "zombies", "зомби");
+        synonyms("skeleton", "skeleton", "skeletons", "скелет", "скелета", "скелетов", "скелеты");
+        synonyms("creeper", "creeper", "creepers", "крипер", "крипера", "криперов", "криперы");
+        synonyms("spider", "spider", "spiders", "паук", "паука", "пауков", "пауки");
+        synonyms("diamond", "diamond", "diamonds", "алмаз", "алмазы", "алмазов");
+        synonyms("iron", "iron", "железо", "железа");
+        synonyms("coal", "coal", "уголь", "угля");
+        synonyms("stone", "stone", "камень", "камня");
+        synonyms("wood", "wood", "logs", "log", "дерево", "дерева", "древесину");
+    }
+
+    private static void synonyms(String canonical, String... words) {
+        for (String word : words) {
+            SYNONYMS.put(word, canonical);
+        }
+    }
+
+    private final String key;
+    private final List<String> slots;
+    private final int[] position;
+    private final int coordinateSlot;  // слот x из "100 64 200" в команде, -1 если тройки нет
+
+    private PlanCacheKey(String key, List<String> slots, int[] position, int coordinateSlot) {
+        this.key = key;
+        this.slots = slots;
+        this.position = position;
+        this.coordinateSlot = coordinateSlot;
+    }
+
+    /**
+     * @param coarseContext output of {@link #coarseContext}
+     * @param position      live agent position [x, y, z], or null if plans should not be re-parameterized by position
+     */
+    public static PlanCacheKey of(String command, String coarseContext, int[] position) {
+        List<String> slots = new ArrayList<>();
+        String normalized = normalizeCommand(command, slots);
+        Matcher coordinates = COORDINATE_SLOTS.matcher(normalized);
+        int coordinateSlot = coordinates.find() ? Integer.parseInt(coordinates.group(1)) : -1;
+        return new PlanCacheKey(normalized + "|" + coarseContext, Collections.unmodifiableList(slots), position,
+            coordinateSlot);
+    }
+
+    /**
+     * Exact key without normalization or templating, for callers that have no world context.
+     */
+    public static PlanCacheKey exact(String command, String context) {
+        return new PlanCacheKey(command + '\u0000' + context, List.of(), null, -1);
+    }
+
+    public static String coarseContext(String biome, boolean hostilesNearby) {
+        return "biome=" + biome + ";hostiles=" + (hostilesNearby ? "yes" : "no");
+    }
+
+    /**
+     * Lowercases, strips filler words, maps EN/RU synonyms to one canonical token and
+     * replaces numbers with {@code #0, #1, ...}, collecting their values into {@code slotsOut}.
+     */
+    public static String normalizeCommand(String command, List<String> slotsOut) {
+        String lower = command.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        StringBuilder normalized = new StringBuilder();
+
+        for (String token : TOKEN_SPLIT.split(lower)) {
+            if (token.isEmpty() || STOP_WORDS.contains(token)) {
+                continue;
+            }
+
+            String canonical;
+            if (NUMBER.matcher(token).matches()) {
+                canonical = "#" + slotsOut.size();
+                slotsOut.add(token);
+            } else {
+                canonical = SYNONYMS.getOrDefault(token, token);
+            }
+
+            if (normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            normalized.append(canonical);
+        }
+
+        return normalized.toString();
+    }
+
+    /**
+     * Turns a response produced for this key into a template that can be reused by any equal key.
+     * Only the known numeric parameters inside the "tasks" array are templated; the plan text and
+     * any other parameter keep their literal values.
+     */
+    public String templatize(String response) {
+        if (response == null || (slots.isEmpty() && position == null)) {
+            return response;
+        }
+
+        Matcher tasksKey = TASKS_KEY.matcher(response);
+        if (!tasksKey.find()) {
+            return response;
+        }
+
+        Matcher matcher = TASK_PARAMETER.matcher(response);
+        matcher.region(tasksKey.end(), response.length());
+        StringBuilder template = new StringBuilder(response.length() + 16);
+        int copied = 0;
+        while (matcher.find()) {
+            String placeholder = placeholderFor(matcher.group(1), matcher.group(2));
+            if (placeholder != null) {
+                template.append(response, copied, matcher.start(2)).append(placeholder);
+                copied = matcher.end(2);
+            }
+        }
+        template.append(response, copied, response.length());
+        return template.toString();
+    }
+
+    /**
+     * Whether a template made by {@link #templatize} may be cached: false while a task still has a
+     * literal coordinate that came neither from the command nor from near the agent. The key holds no
+     * position, so such a plan would replay at the first agent's spot for every other agent.
+     */
+    public boolean isReusable(String template) {
+        if (template == null || position == null) {
+            return template != null;
+        }
+        Matcher tasksKey = TASKS_KEY.matcher(template);
+        if (!tasksKey.find()) {
+            return true;
+        }
+        Matcher matcher = TASK_PARAMETER.matcher(template);
+        matcher.region(tasksKey.end(), template.length());
+        while (matcher.find()) {
+            if (matcher.group(1).length() == 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fills a cached template with this key's slot values and position.
+     */
+    public String instantiate(String template) {
+        if (template == null || template.indexOf("{{") < 0) {
+            return template;
+        }
+
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        StringBuilder response = new StringBuilder(template.length());
+        while (matcher.find()) {
+            matcher.appendReplacement(response, Matcher.quoteReplacement(valueFor(matcher.group(1))));
+        }
+        matcher.appendTail(response);
+        return response.toString();
+    }
+
+    /**
+     * Coordinates are matched against the command's coordinates first ("go to 100 64 200" means the
+     * same spot whoever runs it), then against the agent position as an offset from it - the model
+     * copies the position into the plan or steps a few blocks away from it.
+     */
+    private String placeholderFor(String parameter, String number) {
+        if (parameter.length() == 1) {
+            int axis = parameter.charAt(0) - 'x';
+            if (coordinateSlot >= 0 && number.equals(slots.get(coordinateSlot + axis))) {
+                return "{{#" + (coordinateSlot + axis) + "}}";
+            }
+            if (position == null) {
+                return null;
+            }
+            int offset;
+            try {
+                offset = Integer.parseInt(number) - position[axis];
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (Math.abs(offset) > NEAR_POSITION) {
+                return null;
+            }
+            return "{{" + parameter + (offset == 0 ? "" : offset > 0 ? "+" + offset : String.valueOf(offset)) + "}}";
+        }
+        int slot = slots.indexOf(number);
+        return slot >= 0 ? "{{#" + slot + "}}" : null;
+    }
+
+    private String valueFor(String placeholder) {
+        if (placeholder.charAt(0) != '#') {
+            int offset = placeholder.length() > 1 ? Integer.parseInt(placeholder.substring(1)) : 0;
+            return String.valueOf((position != null ? position[placeholder.charAt(0) - 'x'] : 0) + offset);
+        }
+        int slot = Integer.parseInt(placeholder.substring(1));
+        return slot < slots.size() ? slots.get(slot) : "1";
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public List<String> getSlots() {
+        return slots;
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
@@ -0,0 +1,249 @@
+package com.crafto.ai.optimization;
+
+import com.crafto.ai.CraftoMod;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * On-disk backing for {@link PlanCache}: an append-only JSON-lines log.
+ * Every put appends one line on the store's own writer thread, so the request path never
+ * waits for the disk; the log is compacted (last write per key wins, old entries dropped)
+ * when it grows well past the number of distinct keys in it.
+ */
+public class PlanCacheStore {
+    public static final String DEFAULT_CACHE_DIR = "config/crafto/cache/";
+    private static final String LOG_FILE = "plans.log";
+    private static final Gson GSON = new Gson();
+    private static final long MAX_ENTRY_AGE_MS = 7L * 24 * 60 * 60 * 1000; // неделя
+    private static final int COMPACTION_FACTOR = 3;
+    private static final int COMPACTION_SLACK = 64;
+    private static final long WRITE_WAIT_SECONDS = 5;
+
+    private final Path logFile;
+    private final int maxEntries;
+    private final ExecutorService writeExecutor;
+    private BufferedWriter writer;
+    private final Set<String> loggedKeys = new HashSet<>(); // разные ключи в логе с последнего сжатия
+    private int logLines = 0;
+
+    public PlanCacheStore(String cacheDir, int maxEntries) {
+        this.logFile = Paths.get(cacheDir, LOG_FILE);
+        this.maxEntries = maxEntries;
+        this.writeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crafto-plan-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Compacts the log and returns the surviving entries, least recently written first.
+     * Appends queued before the call are written first.
+     */
+    public Map<String, String> load() {
+        awaitWrites();
+        Map<String, String> entries = new LinkedHashMap<>();
+        synchronized (this) {
+            compactLocked().values().forEach(record -> entries.put(record.key, record.value));
+        }
+        return entries;
+    }
+
+    /**
+     * Queues one record for the writer thread and returns at once.
+     */
+    public void append(String key, String value) {
+        Record record = new Record(key, value, System.currentTimeMillis());
+        try {
+            writeExecutor.execute(() -> write(record));
+        } catch (RejectedExecutionException e) {
+            CraftoMod.LOGGER.debug("Plan cache store is closed, not persisting: {}", key);
+        }
+    }
+
+    private synchronized void write(Record record) {
+        try {
+            if (writer == null) {
+                Files.createDirectories(logFile.getParent());
+                writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(GSON.toJson(record.toJson()));
+            writer.newLine();
+            writer.flush();
+            logLines++;
+            loggedKeys.add(record.key);
+
+            // Перезапись того же ключа добавляет строку, но не ключ - сжатие их и уберёт
+            int liveKeys = Math.min(maxEntries, loggedKeys.size());
+            if (logLines > liveKeys * COMPACTION_FACTOR + COMPACTION_SLACK) {
+                compactLocked();
+            }
+        } catch (IOException e) {
+            CraftoMod.LOGGER.warn("Failed to persist cached plan: {}", e.getMessage());
+        }
+    }
+
+    public void clear() {
+        awaitWrites();
+        synchronized (this) {
+            closeWriter();
+            try {
+                Files.deleteIfExists(logFile);
+            } catch (IOException e) {
+                CraftoMod.LOGGER.warn("Failed to delete plan cache log: {}", e.getMessage());
+            }
+            loggedKeys.clear();
+            logLines = 0;
+        }
+    }
+
+    /**
+     * Writes out queued appends and stops the writer thread.
+     */
+    public void close() {
+        writeExecutor.shutdown();
+        try {
+            if (!writeExecutor.awaitTermination(WRITE_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                CraftoMod.LOGGER.warn("Plan cache writes did not finish in {}s", WRITE_WAIT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closeWriter();
+        }
+    }
+
+    private void awaitWrites() {
+        try {
+            writeExecutor.submit(() -> { }).get(WRITE_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException | ExecutionException | TimeoutException e) {
+            CraftoMod.LOGGER.debug("Not waiting for plan cache writes: {}", e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the latest, non-expired record of each key (at most maxEntries).
+     */
+    private Map<String, Record> compactLocked() {
+        closeWriter();
+        Map<String, Record> records = readLog();
+
+        long cutoff = System.currentTimeMillis() - MAX_ENTRY_AGE_MS;
+        records.values().removeIf(record -> record.timestamp < cutoff);
+        if (records.size() > maxEntries) {
+            List<String> keys = new ArrayList<>(records.keySet());
+            keys.subList(0, records.size() - maxEntries).forEach(records::remove);
+        }
+
+        try {
+            Files.createDirectories(logFile.getParent());
+            Path tempFile = logFile.resolveSibling(LOG_FILE + ".tmp");
+            try (BufferedWriter out = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Record record : records.values()) {
+                    out.write(GSON.toJson(record.toJson()));
+                    out.newLine();
+                }
+            }
+            Files.move(tempFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            CraftoMod.LOGGER.warn("Failed to compact plan cache log: {}", e.getMessage());
+        }
+
+        loggedKeys.clear();
+        loggedKeys.addAll(records.keySet());
+        logLines = records.size();
+        return records;
+    }
+
+    /**
+     * @return latest record per key, ordered from least to most recently written
+     */
+    private Map<String, Record> readLog() {
+        Map<String, Record> records = new LinkedHashMap<>();
+        if (!Files.exists(logFile)) {
+            return records;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    Record record = Record.fromJson(JsonParser.parseString(line).getAsJsonObject());
+                    records.remove(record.key); // переставляем в конец - порядок по времени записи
+                    records.put(record.key, record);
+                } catch (RuntimeException e) {
+                    // Обрезанная последняя строка после сбоя - пропускаем
+                    CraftoMod.LOGGER.debug("Skipping corrupt plan cache record");
+                }
+            }
+        } catch (IOException e) {
+            CraftoMod.LOGGER.warn("Failed to read plan cache log: {}", e.getMessage());
+        }
+        return records;
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                CraftoMod.LOGGER.debug("Failed to close plan cache log: {}", e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    private static class Record {
+        final String key;
+        final String value;
+        final long timestamp;
+
+        Record(String key, String value, long timestamp) {
+            this.key = key;
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("k", key);
+            json.addProperty("v", value);
+            json.addProperty("t", timestamp);
+            return json;
+        }
+
+        static Record fromJson(JsonObject json) {
+            return new Record(json.get("k").getAsString(), json.get("v").getAsString(), json.get("t").getAsLong());
+        }
+    }
+}
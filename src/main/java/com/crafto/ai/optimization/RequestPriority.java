@@ -0,0 +1,31 @@
+package com.crafto.ai.optimization;
+
+/**
+ * Scheduling class of an LLM request. Classes are served in declaration order;
+ * a request still queued after its class deadline is dropped instead of sent, and
+ * the whole round-trip must finish within the response deadline.
+ */
+public enum RequestPriority {
+    INTERACTIVE(20_000, 45_000),   // команда игрока - он ждёт ответа
+    REPLAN(30_000, 60_000),        // перепланирование после ActionResult.requiresReplanning()
+    BACKGROUND(60_000, 120_000);   // предзагрузка и прочая фоновая работа
+
+    private final long queueDeadlineMs;
+    private final long responseDeadlineMs;
+
+    RequestPriority(long queueDeadlineMs, long responseDeadlineMs) {
+        this.queueDeadlineMs = queueDeadlineMs;
+        this.responseDeadlineMs = responseDeadlineMs;
+    }
+
+    public long getQueueDeadlineMs() {
+        return queueDeadlineMs;
+    }
+
+    /**
+     * Time budget from submitting the request to having the plan, queueing included.
+     */
+    public long getResponseDeadlineMs() {
+        return responseDeadlineMs;
+    }
+}
@@ -0,0 +1,215 @@
+package com.crafto.ai.optimization;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Queue of LLM requests waiting for a free slot.
+ *
+ * Priority classes are served strictly in {@link RequestPriority} order. Inside a class, agents
+ * share the slots through start-time fair queuing: every request gets a virtual start tag one
+ * unit after the previous request of the same agent, so an agent with twenty queued commands
+ * does not delay another agent's single command by more than one turn. Requests that wait past
+ * their class deadline are handed to the expiry handler instead of being returned by poll().
+ * Cancelled requests are dropped silently and give their turn back to the agent's next request.
+ */
+public class RequestScheduler<T> {
+    private static final Comparator<Entry<?>> ORDER =
+        Comparator.<Entry<?>>comparingDouble(entry -> entry.startTag).thenComparingLong(entry -> entry.sequence);
+
+    private final Map<RequestPriority, ClassQueue<T>> queues = new EnumMap<>(RequestPriority.class);
+    private final Consumer<T> expiredHandler;
+    private final Predicate<T> cancelled;
+    private final LongSupplier clockMillis;
+    private long sequence = 0;
+    private int size = 0;
+    private long dropped = 0;
+
+    private static final class Entry<T> {
+        final T item;
+        final String agentName;
+        final double startTag;
+        final long sequence;
+        final long deadline;
+
+        Entry(T item, String agentName, double startTag, long sequence, long deadline) {
+            this.item = item;
+            this.agentName = agentName;
+            this.startTag = startTag;
+            this.sequence = sequence;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final class ClassQueue<T> {
+        final PriorityQueue<Entry<T>> entries = new PriorityQueue<>(ORDER);
+        final Map<String, Double> lastFinishTag = new HashMap<>();
+        double virtualTime = 0;
+    }
+
+    /**
+     * @param expiredHandler receives requests dropped after their deadline; called outside the scheduler lock
+     */
+    public RequestScheduler(Consumer<T> expiredHandler) {
+        this(expiredHandler, item -> false, System::currentTimeMillis);
+    }
+
+    /**
+     * @param cancelled true for requests nobody waits for any more; they are never returned by poll()
+     */
+    public RequestScheduler(Consumer<T> expiredHandler, Predicate<T> cancelled) {
+        this(expiredHandler, cancelled, System::currentTimeMillis);
+    }
+
+    RequestScheduler(Consumer<T> expiredHandler, LongSupplier clockMillis) {
+        this(expiredHandler, item -> false, clockMillis);
+    }
+
+    RequestScheduler(Consumer<T> expiredHandler, Predicate<T> cancelled, LongSupplier clockMillis) {
+        this.expiredHandler = expiredHandler;
+        this.cancelled = cancelled;
+        this.clockMillis = clockMillis;
+        for (RequestPriority priority : RequestPriority.values()) {
+            queues.put(priority, new ClassQueue<>());
+        }
+    }
+
+    public synchronized void offer(T item, String agentName, RequestPriority priority) {
+        ClassQueue<T> queue = queues.get(priority);
+        dropCancelled(queue);
+        double startTag = Math.max(queue.virtualTime, queue.lastFinishTag.getOrDefault(agentName, 0.0));
+        queue.lastFinishTag.put(agentName, startTag + 1.0);
+        queue.entries.add(new Entry<>(item, agentName, startTag, sequence++,
+            clockMillis.getAsLong() + priority.getQueueDeadlineMs()));
+        size++;
+    }
+
+    /**
+     * @return next request to send, or null if nothing is waiting
+     */
+    public T poll() {
+        List<T> expired = new ArrayList<>();
+        T next = null;
+
+        synchronized (this) {
+            long now = clockMillis.getAsLong();
+            for (RequestPriority priority : RequestPriority.values()) {
+                ClassQueue<T> queue = queues.get(priority);
+                Entry<T> entry;
+                while (next == null && (entry = queue.entries.poll()) != null) {
+                    size--;
+                    if (cancelled.test(entry.item)) {
+                        continue;
+                    }
+                    if (entry.deadline < now) {
+                        expired.add(entry.item);
+                    } else {
+                        queue.virtualTime = entry.startTag;
+                        next = entry.item;
+                    }
+                }
+                resetIfIdle(queue);
+                if (next != null) {
+                    break;
+                }
+            }
+            dropped += expired.size();
+        }
+
+        expired.forEach(expiredHandler);
+        return next;
+    }
+
+    /**
+     * Drops every queued request that is past its deadline, and every cancelled one.
+     *
+     * @return number of requests dropped past their deadline
+     */
+    public int purgeExpired() {
+        List<T> expired = new ArrayList<>();
+
+        synchronized (this) {
+            long now = clockMillis.getAsLong();
+            for (ClassQueue<T> queue : queues.values()) {
+                dropCancelled(queue);
+                Iterator<Entry<T>> iterator = queue.entries.iterator();
+                while (iterator.hasNext()) {
+                    Entry<T> entry = iterator.next();
+                    if (entry.deadline < now) {
+                        iterator.remove();
+                        expired.add(entry.item);
+                    }
+                }
+                resetIfIdle(queue);
+            }
+            size -= expired.size();
+            dropped += expired.size();
+        }
+
+        expired.forEach(expiredHandler);
+        return expired.size();
+    }
+
+    // Отменённый запрос не должен держать очередь агента: его следующий запрос встаёт на освободившееся место
+    private void dropCancelled(ClassQueue<T> queue) {
+        Map<String, Double> affected = new HashMap<>();
+        Iterator<Entry<T>> iterator = queue.entries.iterator();
+        while (iterator.hasNext()) {
+            Entry<T> entry = iterator.next();
+            if (cancelled.test(entry.item)) {
+                iterator.remove();
+                size--;
+                affected.put(entry.agentName, null);
+            }
+        }
+        if (affected.isEmpty()) {
+            return;
+        }
+        for (Entry<T> entry : queue.entries) {
+            if (affected.containsKey(entry.agentName)) {
+                affected.merge(entry.agentName, entry.startTag + 1.0, Math::max);
+            }
+        }
+        affected.forEach((agentName, finishTag) -> {
+            if (finishTag != null) {
+                queue.lastFinishTag.put(agentName, finishTag);
+            } else {
+                queue.lastFinishTag.remove(agentName);
+            }
+        });
+        resetIfIdle(queue);
+    }
+
+    // Без очереди теги больше не нужны - сбрасываем, чтобы карта агентов не росла
+    private void resetIfIdle(ClassQueue<T> queue) {
+        if (queue.entries.isEmpty()) {
+            queue.lastFinishTag.clear();
+            queue.virtualTime = 0;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized int size(RequestPriority priority) {
+        return queues.get(priority).entries.size();
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+}
@@ -0,0 +1,281 @@
+package com.crafto.ai.optimization;
+
+import com.crafto.ai.CraftoMod;
+import com.crafto.ai.ai.GenerationStats;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Aggregates the token counters Ollama reports for every generation, per agent, per model and
+ * per prompt type. Decode speed (tokens/sec) does not depend on how long the answer is, so unlike
+ * wall time it shows whether the server itself is slowing down - e.g. because too many requests
+ * share the GPU or because the prompt keeps growing.
+ *
+ * Per-request speed always drops when requests run in parallel, so overload is judged by the
+ * aggregate rate instead: tokens generated in the last minute divided by the time at least one
+ * generation was running, compared against a peak that halves every ten minutes.
+ */
+public class ThroughputTracker {
+    private static ThroughputTracker instance;
+
+    private static final long MODEL_LOAD_NANOS = 500_000_000L; // load_duration больше - модель загружалась заново
+    private static final double SMOOTHING = 0.2;
+    private static final int MIN_SAMPLES = 3;                  // меньше - оценкам не доверяем
+    private static final long WINDOW_NANOS = 60_000_000_000L;
+    private static final double PEAK_HALF_LIFE_NANOS = 600_000_000_000.0;
+
+    private final LongSupplier nanoClock;
+    private final Aggregate global;
+    private final Map<String, Aggregate> perAgent = new ConcurrentHashMap<>();
+    private final Map<String, Aggregate> perModel = new ConcurrentHashMap<>();
+    private final Map<String, Aggregate> perPromptType = new ConcurrentHashMap<>();
+
+    public ThroughputTracker() {
+        this(System::nanoTime);
+    }
+
+    ThroughputTracker(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.global = new Aggregate(nanoClock);
+    }
+
+    public static synchronized ThroughputTracker getInstance() {
+        if (instance == null) {
+            instance = new ThroughputTracker();
+        }
+        return instance;
+    }
+
+    /**
+     * Counters of one model or agent. Updated a few times a second at most, so a lock is cheap enough.
+     */
+    public static class Aggregate {
+        private final LongSupplier nanoClock;
+        // Генерации за последнюю минуту: {начало, конец, токены}, в порядке завершения
+        private final Deque<long[]> window = new ArrayDeque<>();
+        private long requests;
+        private long promptTokens;
+        private long promptEvalNanos;
+        private long outputTokens;
+        private long evalNanos;
+        private long modelLoads;
+        private double recentTokensPerSecond;
+        private double peakAggregateTokensPerSecond;
+        private long peakNanos;
+        private double recentPromptTokens;
+
+        Aggregate(LongSupplier nanoClock) {
+            this.nanoClock = nanoClock;
+        }
+
+        synchronized void record(GenerationStats stats) {
+            requests++;
+            promptTokens += stats.getPromptTokens();
+            promptEvalNanos += stats.getPromptEvalNanos();
+            outputTokens += stats.getOutputTokens();
+            evalNanos += stats.getEvalNanos();
+            if (stats.getLoadNanos() > MODEL_LOAD_NANOS) {
+                modelLoads++;
+            }
+            double tokensPerSecond = stats.getTokensPerSecond();
+            if (tokensPerSecond > 0) {
+                recentTokensPerSecond = recentTokensPerSecond == 0 ? tokensPerSecond
+                    : recentTokensPerSecond + SMOOTHING * (tokensPerSecond - recentTokensPerSecond);
+
+                long now = nanoClock.getAsLong();
+                window.addLast(new long[] {now - stats.getEvalNanos(), now, stats.getOutputTokens()});
+                double aggregate = aggregateTokensPerSecond(now);
+                if (window.size() >= MIN_SAMPLES) {
+                    peakAggregateTokensPerSecond = Math.max(decayedPeak(now), aggregate);
+                    peakNanos = now;
+                }
+            }
+            recentPromptTokens = requests == 1 ? stats.getPromptTokens()
+                : recentPromptTokens + SMOOTHING * (stats.getPromptTokens() - recentPromptTokens);
+        }
+
+        public synchronized long getRequests() {
+            return requests;
+        }
+
+        public synchronized double getTokensPerSecond() {
+            return recentTokensPerSecond;
+        }
+
+        public synchronized double getAverageTokensPerSecond() {
+            return evalNanos > 0 ? outputTokens * 1e9 / evalNanos : 0;
+        }
+
+        public synchronized double getPromptTokensPerSecond() {
+            return promptEvalNanos > 0 ? promptTokens * 1e9 / promptEvalNanos : 0;
+        }
+
+        public synchronized double getAveragePromptTokens() {
+            return requests > 0 ? (double) promptTokens / requests : 0;
+        }
+
+        public synchronized double getRecentPromptTokens() {
+            return recentPromptTokens;
+        }
+
+        public synchronized double getAverageOutputTokens() {
+            return requests > 0 ? (double) outputTokens / requests : 0;
+        }
+
+        public synchronized long getModelLoads() {
+            return modelLoads;
+        }
+
+        /**
+         * @return tokens per second of decoding time over the last minute, counting parallel
+         *         generations together, or 0 without samples in that window
+         */
+        public synchronized double getAggregateTokensPerSecond() {
+            return aggregateTokensPerSecond(nanoClock.getAsLong());
+        }
+
+        /**
+         * @return aggregate decode speed over the last minute relative to the decaying peak,
+         *         or -1 with too few samples in the window
+         */
+        public synchronized double getThroughputRatio() {
+            long now = nanoClock.getAsLong();
+            double aggregate = aggregateTokensPerSecond(now);
+            double peak = Math.max(decayedPeak(now), aggregate);
+            return window.size() >= MIN_SAMPLES && peak > 0 ? aggregate / peak : -1;
+        }
+
+        private double decayedPeak(long now) {
+            return peakAggregateTokensPerSecond * Math.pow(0.5, (now - peakNanos) / PEAK_HALF_LIFE_NANOS);
+        }
+
+        // Время, когда шла хотя бы одна генерация: параллельные отрезки считаются один раз
+        private double aggregateTokensPerSecond(long now) {
+            while (!window.isEmpty() && window.peekFirst()[1] < now - WINDOW_NANOS) {
+                window.removeFirst();
+            }
+            long[][] intervals = window.toArray(new long[0][]);
+            Arrays.sort(intervals, Comparator.comparingLong(interval -> interval[0]));
+            long tokens = 0;
+            long busyNanos = 0;
+            long coveredUntil = Long.MIN_VALUE;
+            for (long[] interval : intervals) {
+                tokens += interval[2];
+                long start = Math.max(interval[0], coveredUntil);
+                if (interval[1] > start) {
+                    busyNanos += interval[1] - start;
+                    coveredUntil = interval[1];
+                }
+            }
+            return busyNanos > 0 ? tokens * 1e9 / busyNanos : 0;
+        }
+
+        /**
+         * @return expected time for a typical generation (prompt evaluation plus decoding), or -1 with too few samples
+         */
+        public synchronized long estimateGenerationMs() {
+            if (requests < MIN_SAMPLES || recentTokensPerSecond <= 0) {
+                return -1;
+            }
+            double promptMs = promptEvalNanos / 1e6 / requests;
+            return Math.round(promptMs + getAverageOutputTokens() / recentTokensPerSecond * 1000);
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("requests", requests);
+            values.put("tokensPerSecond", round(recentTokensPerSecond));
+            values.put("averageTokensPerSecond", round(getAverageTokensPerSecond()));
+            values.put("aggregateTokensPerSecond", round(getAggregateTokensPerSecond()));
+            values.put("promptTokensPerSecond", round(getPromptTokensPerSecond()));
+            values.put("averagePromptTokens", round(getAveragePromptTokens()));
+            values.put("recentPromptTokens", round(recentPromptTokens));
+            values.put("averageOutputTokens", round(getAverageOutputTokens()));
+            values.put("modelLoads", modelLoads);
+            return values;
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 10) / 10.0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (requests == 0) {
+                return "no samples";
+            }
+            return String.format(Locale.ROOT, "%.1f tok/s (avg %.1f), prompt %.0f tok (recent %.0f) at %.0f tok/s, "
+                    + "%d requests, %d model loads",
+                recentTokensPerSecond, getAverageTokensPerSecond(), getAveragePromptTokens(), recentPromptTokens,
+                getPromptTokensPerSecond(), requests, modelLoads);
+        }
+    }
+
+    /**
+     * @param promptType what the prompt was for, e.g. the request priority
+     */
+    public void record(String agentName, String promptType, GenerationStats stats) {
+        global.record(stats);
+        perModel.computeIfAbsent(stats.getModel(), key -> new Aggregate(nanoClock)).record(stats);
+        perPromptType.computeIfAbsent(promptType, key -> new Aggregate(nanoClock)).record(stats);
+        if (agentName != null) {
+            perAgent.computeIfAbsent(agentName, key -> new Aggregate(nanoClock)).record(stats);
+        }
+        if (stats.getLoadNanos() > MODEL_LOAD_NANOS) {
+            CraftoMod.LOGGER.info("Ollama loaded model '{}' for this request ({} ms) - keepAlive may be too short",
+                stats.getModel(), stats.getLoadNanos() / 1_000_000);
+        }
+    }
+
+    public Aggregate getGlobal() {
+        return global;
+    }
+
+    /**
+     * @return counters of the model, empty if it has not generated anything yet
+     */
+    public Aggregate forModel(String model) {
+        Aggregate aggregate = perModel.get(model);
+        return aggregate != null ? aggregate : new Aggregate(nanoClock);
+    }
+
+    public Aggregate forAgent(String agentName) {
+        Aggregate aggregate = perAgent.get(agentName);
+        return aggregate != null ? aggregate : new Aggregate(nanoClock);
+    }
+
+    public Map<String, Aggregate> getModels() {
+        return new TreeMap<>(perModel);
+    }
+
+    public Map<String, Aggregate> getPromptTypes() {
+        return new TreeMap<>(perPromptType);
+    }
+
+    /**
+     * @return all counters, for {@code exportStatistics()}
+     */
+    public Map<String, Object> export() {
+        Map<String, Object> export = new LinkedHashMap<>();
+        export.put("global", global.toMap());
+        export.put("models", toMaps(perModel));
+        export.put("promptTypes", toMaps(perPromptType));
+        export.put("agents", toMaps(perAgent));
+        return export;
+    }
+
+    private static Map<String, Object> toMaps(Map<String, Aggregate> aggregates) {
+        Map<String, Object> maps = new TreeMap<>();
+        aggregates.forEach((key, aggregate) -> maps.put(key, aggregate.toMap()));
+        return maps;
+    }
+}
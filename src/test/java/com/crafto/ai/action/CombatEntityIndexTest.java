@@ -0,0 +1,61 @@
+package com.crafto.ai.action;
+
+import net.minecraft.world.phys.AABB;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for region reuse in CombatEntityIndex, with a stub in place of the level lookup
+ */
+public class CombatEntityIndexTest {
+    private final AtomicLong gameTime = new AtomicLong(100);
+    private final List<AABB> lookups = new ArrayList<>();
+    private final CombatEntityIndex index = new CombatEntityIndex(null, gameTime::get, box -> {
+        lookups.add(box);
+        return List.of();
+    });
+
+    private static AABB around(double x, double y, double z, double range) {
+        return new AABB(x - 0.3, y, z - 0.3, x + 0.3, y + 1.8, z + 0.3).inflate(range);
+    }
+
+    @Test
+    void testNearbyScansShareOneRegion() {
+        index.forCurrentTick().getEntities(around(0, 64, 0, 32));
+        index.forCurrentTick().getEntities(around(3, 64, -2, 32));
+        // Проверка защиты игрока рядом - меньший бокс внутри того же региона
+        index.forCurrentTick().getEntities(around(1, 64, 1, 20));
+
+        assertEquals(1, index.getLevelQueries());
+        AABB region = lookups.get(0);
+        assertEquals(0, (int) region.minX % 16);
+        assertEquals(0, (int) region.maxY % 16);
+        // Регион ограничен по Y, а не всей высотой мира
+        assertTrue(region.maxY - region.minY <= 96);
+    }
+
+    @Test
+    void testDistantScanReadsItsOwnRegion() {
+        index.forCurrentTick().getEntities(around(0, 64, 0, 32));
+        index.forCurrentTick().getEntities(around(200, 64, 0, 32));
+        index.forCurrentTick().getEntities(around(0, -40, 0, 32));
+
+        assertEquals(3, index.getLevelQueries());
+    }
+
+    @Test
+    void testRegionsAreDroppedOnNextTick() {
+        index.forCurrentTick().getEntities(around(0, 64, 0, 32));
+        index.forCurrentTick().getEntities(around(0, 64, 0, 32));
+        assertEquals(1, index.getLevelQueries());
+
+        gameTime.incrementAndGet();
+        index.forCurrentTick().getEntities(around(0, 64, 0, 32));
+        assertEquals(2, index.getLevelQueries());
+    }
+}
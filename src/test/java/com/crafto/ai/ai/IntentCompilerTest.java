@@ -0,0 +1,121 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.action.Task;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for IntentCompiler grammar and slot extraction
+ */
+public class IntentCompilerTest {
+
+    private static Task compileSingle(String command) {
+        ResponseParser.ParsedResponse response = IntentCompiler.compile(command);
+        assertNotNull(response, "should compile: " + command);
+        assertEquals(1, response.getTasks().size());
+        return response.getTasks().get(0);
+    }
+
+    @Test
+    void testMineWithCount() {
+        Task task = compileSingle("mine 10 iron ore");
+        assertEquals("mine", task.getAction());
+        assertEquals("iron", task.getParameter("block"));
+        assertEquals(10, task.getIntParameter("quantity", 0));
+
+        Task russian = compileSingle("Добудь пять алмазов");
+        assertEquals("diamond", russian.getParameter("block"));
+        assertEquals(5, russian.getIntParameter("quantity", 0));
+    }
+
+    @Test
+    void testKillAndAttack() {
+        Task kill = compileSingle("убей 3 зомби");
+        assertEquals("kill", kill.getAction());
+        assertEquals("zombie", kill.getParameter("target"));
+        assertEquals(3, kill.getIntParameter("count", 0));
+
+        assertEquals(1, compileSingle("kill the creeper").getIntParameter("count", 0));
+        assertFalse(compileSingle("kill all mobs").getParameters().containsKey("count"));
+
+        Task attack = compileSingle("attack");
+        assertEquals("attack", attack.getAction());
+        assertEquals("hostile", attack.getParameter("target"));
+    }
+
+    @Test
+    void testFollow() {
+        assertEquals("me", compileSingle("следуй за мной").getParameter("player"));
+        assertEquals("Alex", compileSingle("follow \"Alex\"").getParameter("player"));
+        assertNull(IntentCompiler.compile("иди домой"));
+        assertNull(IntentCompiler.compile("follow the river"));
+
+        // Слово без кавычек - имя, только если такой игрок в мире
+        ResponseParser.ParsedResponse online = IntentCompiler.compile("follow Steve_42", "steve_42"::equalsIgnoreCase);
+        assertEquals("Steve_42", online.getTasks().get(0).getParameter("player"));
+        assertNull(IntentCompiler.compile("follow Steve_42"));
+        assertNull(IntentCompiler.compile("follow \"not a name\""));
+    }
+
+    @Test
+    void testExploreRadiusAndCoordinates() {
+        assertEquals(64, compileSingle("explore the area").getIntParameter("radius", 0));
+        assertEquals(100, compileSingle("исследуй радиус 100 блоков").getIntParameter("radius", 0));
+
+        Task task = compileSingle("explore at 100 64 -200");
+        assertEquals(100, task.getIntParameter("x", 0));
+        assertEquals(64, task.getIntParameter("y", 0));
+        assertEquals(-200, task.getIntParameter("z", 0));
+    }
+
+    @Test
+    void testBuild() {
+        assertEquals("big-house", compileSingle("построй большой дом").getParameter("structure"));
+        assertEquals("castle", compileSingle("build a castle").getParameter("structure"));
+
+        Task task = compileSingle("build house 12 8 10");
+        assertEquals(12, task.getIntParameter("width", 0));
+        assertEquals(8, task.getIntParameter("height", 0));
+        assertEquals(10, task.getIntParameter("depth", 0));
+    }
+
+    @Test
+    void testWaypoint() {
+        Task task = compileSingle("create waypoint home");
+        assertEquals("create_waypoint", task.getAction());
+        assertEquals("home", task.getParameter("name"));
+        assertEquals("BASE", task.getParameter("type"));
+
+        Task russian = compileSingle("поставь метку шахта 10 20 30");
+        assertEquals("MINE", russian.getParameter("type"));
+        assertEquals(30, russian.getIntParameter("z", 0));
+    }
+
+    @Test
+    void testWaypointNamesMustBeExplicit() {
+        Task named = compileSingle("create waypoint named Iron Hill 10 64 -20");
+        assertEquals("Iron Hill", named.getParameter("name"));
+        assertEquals("LANDMARK", named.getParameter("type"));
+        assertEquals(-20, named.getIntParameter("z", 0));
+
+        Task quoted = compileSingle("поставь метку «Старая шахта»");
+        assertEquals("Старая шахта", quoted.getParameter("name"));
+        assertEquals("MINE", quoted.getParameter("type"));
+
+        // Остаток фразы без кавычек и "named" - не имя, а команда для LLM
+        assertNull(IntentCompiler.compile("create waypoint near the river"));
+        assertNull(IntentCompiler.compile("mark this spot as dangerous"));
+        assertNull(IntentCompiler.compile("create waypoint named"));
+        assertNull(IntentCompiler.compile("mine \"iron\""));
+    }
+
+    @Test
+    void testUnknownFormsFallThrough() {
+        assertNull(IntentCompiler.compile("build a bridge over the river"));
+        assertNull(IntentCompiler.compile("mine iron and then build a house"));
+        assertNull(IntentCompiler.compile("what are you doing?"));
+        assertNull(IntentCompiler.compile("kill"));
+        assertNull(IntentCompiler.compile(""));
+    }
+}
@@ -0,0 +1,154 @@
+package com.crafto.ai.ai;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LLMRouter endpoint selection, health checks and hedging against local HTTP servers
+ */
+public class LLMRouterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final byte[] BODY = "{}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws Exception;
+    }
+
+    private String server(String reply, Handler beforeReply) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try {
+                if (beforeReply != null && !exchange.getRequestURI().getPath().equals("/api/tags")) {
+                    beforeReply.handle(exchange);
+                }
+                byte[] bytes = reply.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            } catch (Exception e) {
+                exchange.close();
+            }
+        });
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServers() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    private static void awaitHealth(LLMRouter router, String url, boolean healthy) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            for (LLMRouter.Endpoint endpoint : router.getEndpoints()) {
+                if (endpoint.getUrl().equals(url) && endpoint.isHealthy() == healthy) {
+                    return;
+                }
+            }
+            Thread.sleep(20);
+        }
+        fail("endpoint " + url + " never became " + (healthy ? "healthy" : "unhealthy"));
+    }
+
+    @Test
+    void testDeadEndpointIsSkippedAfterProbe() throws Exception {
+        String alive = server("alive", null);
+        String dead = "http://127.0.0.1:1"; // ничего не слушает
+        LLMRouter router = new LLMRouter(httpClient, () -> List.of(dead, alive), () -> false);
+
+        router.probe();
+        awaitHealth(router, dead, false);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("alive", router.send("/api/chat", BODY, TIMEOUT, HttpResponse.BodyHandlers.ofString()).body());
+        }
+        assertFalse(router.isUnavailable());
+    }
+
+    @Test
+    void testLeastOutstandingEndpointIsPicked() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        String slow = server("slow", exchange -> {
+            busy.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+        });
+        String fast = server("fast", null);
+        // Список адресов читается на каждый запрос: сначала есть только медленный сервер
+        List<String> urls = new CopyOnWriteArrayList<>(List.of(slow));
+        LLMRouter router = new LLMRouter(httpClient, () -> urls, () -> false);
+
+        Thread blocked = new Thread(() -> {
+            try {
+                router.send("/api/chat", BODY, TIMEOUT, HttpResponse.BodyHandlers.ofString());
+            } catch (Exception ignored) {
+            }
+        });
+        blocked.start();
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        urls.add(fast);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("fast", router.send("/api/chat", BODY, TIMEOUT, HttpResponse.BodyHandlers.ofString()).body());
+        }
+        release.countDown();
+        blocked.join(TIMEOUT.toMillis());
+    }
+
+    @Test
+    void testHedgedRequestBeatsSlowPrimary() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        String slow = server("slow", exchange -> assertTrue(release.await(10, TimeUnit.SECONDS)));
+        String fast = server("fast", null);
+        // Первый запрос при равной загрузке уходит на первый адрес - медленный сервер,
+        // который не ответит до конца теста: без дубля send() упал бы по таймауту
+        LLMRouter router = new LLMRouter(httpClient, () -> List.of(slow, fast), () -> true);
+        for (int i = 0; i < 20; i++) {
+            router.recordLatency(10);
+        }
+        assertEquals(200, router.hedgeDelayMs());
+
+        try {
+            assertEquals("fast", router.send("/api/chat", BODY, TIMEOUT, HttpResponse.BodyHandlers.ofString()).body());
+            assertEquals(1, router.getHedgedCount());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testAllEndpointsDown() throws Exception {
+        String dead = "http://127.0.0.1:1";
+        LLMRouter router = new LLMRouter(httpClient, () -> List.of(dead), () -> true);
+
+        router.probe();
+        awaitHealth(router, dead, false);
+        assertTrue(router.isUnavailable());
+        assertThrows(LLMUnavailableException.class,
+            () -> router.send("/api/chat", BODY, TIMEOUT, HttpResponse.BodyHandlers.ofString()));
+    }
+}
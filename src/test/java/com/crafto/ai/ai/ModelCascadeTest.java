@@ -0,0 +1,85 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.action.Task;
+import com.crafto.ai.optimization.SystemMonitor.SystemLoadLevel;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ModelCascade escalation decisions and PlanSchema task validation
+ */
+public class ModelCascadeTest {
+
+    private static String plan(String tasks) {
+        return "{\"reasoning\": \"r\", \"plan\": \"p\", \"tasks\": [" + tasks + "]}";
+    }
+
+    @Test
+    void testValidPlanIsAccepted() {
+        String response = plan("{\"action\": \"mine\", \"parameters\": {\"block\": \"iron\", \"quantity\": 8}},"
+            + "{\"action\": \"follow\", \"parameters\": {\"player\": \"Steve\"}}");
+        assertEquals(ModelCascade.Review.ACCEPTED, ModelCascade.review(response, false));
+        assertFalse(ModelCascade.shouldEscalate(ModelCascade.Review.ACCEPTED, SystemLoadLevel.LOW, -1, 45_000));
+    }
+
+    @Test
+    void testFailuresAreClassified() {
+        assertEquals(ModelCascade.Review.PARSE_FAILURE, ModelCascade.review(null, false));
+        assertEquals(ModelCascade.Review.PARSE_FAILURE, ModelCascade.review("Sure! I will mine iron.", false));
+        assertEquals(ModelCascade.Review.PARSE_FAILURE, ModelCascade.review(plan(""), false));
+        assertEquals(ModelCascade.Review.UNKNOWN_ACTION,
+            ModelCascade.review(plan("{\"action\": \"teleport\", \"parameters\": {\"x\": 1}}"), false));
+        assertEquals(ModelCascade.Review.INVALID_TASK,
+            ModelCascade.review(plan("{\"action\": \"mine\", \"parameters\": {\"block\": \"iron\"}}"), false));
+        assertEquals(ModelCascade.Review.INVALID_TASK,
+            ModelCascade.review(plan("{\"action\": \"pathfind\", \"parameters\": {\"x\": \"here\", \"y\": 64, \"z\": 0}}"), false));
+    }
+
+    @Test
+    void testTruncatedPlanIsEscalated() {
+        String complete = "{\"action\": \"mine\", \"parameters\": {\"block\": \"iron\", \"quantity\": 8}}";
+        String cut = plan(complete + ",{\"action\": \"follow\", \"parameters\": {\"play");
+        cut = cut.substring(0, cut.indexOf("play") + 4);
+
+        // Первая задача цела, но план оборван - принимать его нельзя
+        assertEquals(ModelCascade.Review.TRUNCATED, ModelCascade.review(cut, false));
+        assertEquals(ModelCascade.Review.TRUNCATED, ModelCascade.review(plan(complete), true));
+        for (SystemLoadLevel load : SystemLoadLevel.values()) {
+            assertTrue(ModelCascade.shouldEscalate(ModelCascade.Review.TRUNCATED, load, 40_000, 30_000));
+        }
+    }
+
+    @Test
+    void testLoadLevelLimitsEscalation() {
+        for (SystemLoadLevel load : SystemLoadLevel.values()) {
+            assertTrue(ModelCascade.shouldEscalate(ModelCascade.Review.PARSE_FAILURE, load, -1, 45_000));
+        }
+        assertTrue(ModelCascade.shouldEscalate(ModelCascade.Review.INVALID_TASK, SystemLoadLevel.MODERATE, -1, 45_000));
+        assertFalse(ModelCascade.shouldEscalate(ModelCascade.Review.INVALID_TASK, SystemLoadLevel.HIGH, -1, 45_000));
+        assertFalse(ModelCascade.shouldEscalate(ModelCascade.Review.UNKNOWN_ACTION, SystemLoadLevel.CRITICAL, -1, 45_000));
+    }
+
+    @Test
+    void testSlowMainModelLimitsEscalation() {
+        assertTrue(ModelCascade.shouldEscalate(ModelCascade.Review.INVALID_TASK, SystemLoadLevel.LOW, 8_000, 30_000));
+        assertFalse(ModelCascade.shouldEscalate(ModelCascade.Review.INVALID_TASK, SystemLoadLevel.LOW, 40_000, 30_000));
+        // Без единой задачи оставлять нечего - эскалируем даже без шансов уложиться
+        assertTrue(ModelCascade.shouldEscalate(ModelCascade.Review.PARSE_FAILURE, SystemLoadLevel.LOW, 40_000, 30_000));
+    }
+
+    @Test
+    void testSchemaValidation() {
+        assertNull(PlanSchema.validate(new Task("build", Map.of("structure", "house", "dimensions", List.of(5, 4, 6)))));
+        // Параметры вне схемы (как width/height/depth от IntentCompiler) не мешают
+        assertNull(PlanSchema.validate(new Task("build", Map.of("structure", "house", "width", 12))));
+        assertNull(PlanSchema.validate(new Task("explore", Map.of())));
+
+        assertNotNull(PlanSchema.validate(new Task("build", Map.of("structure", "house", "dimensions", "5x4x6"))));
+        assertNotNull(PlanSchema.validate(new Task("kill", Map.of("target", "zombie"))));
+        assertNotNull(PlanSchema.validate(new Task("dance", Map.of())));
+    }
+}
@@ -0,0 +1,94 @@
+package com.crafto.ai.ai;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for reading Ollama's NDJSON stream against a local HTTP server
+ */
+public class OllamaClientTest {
+
+    private static final String FIRST = "{\"message\": {\"content\": \"{\\\"plan\\\": \"}, \"done\": false}\n";
+    private static final String LAST = "{\"message\": {\"content\": \"\\\"p\\\"}\"}, \"done\": true, \"eval_count\": 5}\n";
+
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /** Пишет первый фрагмент, затем второй - только если stall выключен. */
+    private Stream<String> stream(boolean stall) throws IOException, InterruptedException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(FIRST.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                if (stall) {
+                    release.await(30, TimeUnit.SECONDS);
+                }
+                out.write(LAST.getBytes(StandardCharsets.UTF_8));
+            } catch (InterruptedException | IOException e) {
+                exchange.close();
+            }
+        });
+        server.start();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/"))
+            .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofLines()).body();
+    }
+
+    @Test
+    void testCompleteStream() throws Exception {
+        List<String> chunks = new CopyOnWriteArrayList<>();
+        List<Integer> outputTokens = new CopyOnWriteArrayList<>();
+
+        String text = OllamaClient.readStream(stream(false), System.currentTimeMillis() + 5_000, chunks::add,
+            done -> outputTokens.add(done.get("eval_count").getAsInt()));
+
+        assertEquals("{\"plan\": \"p\"}", text);
+        assertEquals(2, chunks.size());
+        assertEquals(List.of(5), outputTokens);
+    }
+
+    @Test
+    void testStalledStreamIsAbandonedAtDeadline() throws Exception {
+        List<String> chunks = new CopyOnWriteArrayList<>();
+        Stream<String> lines = stream(true);
+
+        // Сервер прислал половину и замолчал - новых строк нет, проверять срок в цикле негде
+        long start = System.nanoTime();
+        String text = OllamaClient.readStream(lines, System.currentTimeMillis() + 300, chunks::add, done -> fail("not done"));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertNull(text);
+        assertEquals(List.of("{\"plan\": "), chunks);
+        assertTrue(elapsedMs < 5_000, "read blocked for " + elapsedMs + " ms");
+    }
+}
@@ -0,0 +1,64 @@
+package com.crafto.ai.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PromptAssembler budget packing and num_ctx selection
+ */
+public class PromptAssemblerTest {
+
+    private static PromptAssembler prompt() {
+        return new PromptAssembler("RESPONSE\n")
+            .require("Position: [1, 64, 2]")
+            .add(70, "Entities: ", List.of("3 zombie", "2 cow", "1 sheep"), ", ")
+            .add(20, "Locations: ", List.of("(0,64,0) - plains", "(100,70,5) - forest", "(-40,60,9) - desert"), "; ")
+            .require("Command: \"mine 10 iron\"");
+    }
+
+    @Test
+    void testEverythingFitsUnderLargeBudget() {
+        PromptAssembler.Result result = prompt().build(10_000);
+        assertEquals(0, result.getTrimmedItems());
+        assertEquals("Position: [1, 64, 2]\nEntities: 3 zombie, 2 cow, 1 sheep\n"
+            + "Locations: (0,64,0) - plains; (100,70,5) - forest; (-40,60,9) - desert\n"
+            + "Command: \"mine 10 iron\"\nRESPONSE\n", result.getText());
+        assertEquals(PromptAssembler.estimateTokens(result.getText()), result.getEstimatedTokens());
+    }
+
+    @Test
+    void testLowestPriorityIsTrimmedFirst() {
+        int full = prompt().build(10_000).getEstimatedTokens();
+        PromptAssembler.Result result = prompt().build(full - 5);
+        assertTrue(result.getEstimatedTokens() <= full - 5);
+        assertTrue(result.getText().contains("1 sheep"), "higher priority section stays whole");
+        assertFalse(result.getText().contains("desert"), "last location goes first");
+
+        PromptAssembler.Result minimal = prompt().build(1);
+        assertEquals("Position: [1, 64, 2]\nCommand: \"mine 10 iron\"\nRESPONSE\n", minimal.getText());
+        assertEquals(6, minimal.getTrimmedItems());
+    }
+
+    @Test
+    void testEstimateAndBuckets() {
+        assertEquals(2, PromptAssembler.estimateTokens("mine 10")); // 7 символов латиницы
+        assertEquals(3, PromptAssembler.estimateTokens("добудь"), "Cyrillic counts denser than Latin");
+        assertEquals(1024, PromptAssembler.contextBucket(1000));
+        assertEquals(4096, PromptAssembler.contextBucket(2049));
+        assertEquals(8192, PromptAssembler.contextBucket(20_000));
+    }
+
+    @Test
+    void testContextWindowGrowsAtOnceAndShrinksSlowly() {
+        OllamaClient.ContextWindow window = new OllamaClient.ContextWindow();
+        assertEquals(2048, window.select("m", 1500));
+        assertEquals(4096, window.select("m", 2500));
+        for (int i = 0; i < 49; i++) {
+            assertEquals(4096, window.select("m", i % 2 == 0 ? 900 : 1500));
+        }
+        assertEquals(2048, window.select("m", 900), "shrinks to the largest size the run needed");
+    }
+}
@@ -0,0 +1,28 @@
+package com.crafto.ai.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the few-shot examples of the PromptBuilder system prompt
+ */
+public class PromptBuilderTest {
+
+    private static final Pattern EXAMPLE = Pattern.compile("^\\s*\"([^\"]+)\" -> (\\{.*})$", Pattern.MULTILINE);
+
+    @Test
+    void testExamplesPassPlanSchema() {
+        // Модель повторяет примеры - план, который схема отвергнет, не кэшируется и уходит на эскалацию
+        Matcher example = EXAMPLE.matcher(PromptBuilder.buildSystemPrompt());
+        int examples = 0;
+        while (example.find()) {
+            examples++;
+            assertTrue(PlanSchema.isValidPlan(example.group(2)), "example for \"" + example.group(1) + "\"");
+        }
+        assertTrue(examples > 10);
+    }
+}
@@ -0,0 +1,105 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.action.Task;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Microbenchmark of TolerantJsonReader against the former regex cleanup + JsonObject tree parser.
+ * Tagged "benchmark": excluded from {@code gradle test}, run with {@code gradle benchmark}
+ */
+@Tag("benchmark")
+public class ResponseParserBenchmark {
+
+    @Test
+    void testSinglePassAllocatesLessThanRegexParser(TestReporter reporter) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int iterations = 20_000;
+
+        // Прогрев JIT для обоих вариантов
+        for (int i = 0; i < iterations; i++) {
+            legacyParse(ResponseParserTest.MESSY_PLAN);
+            TolerantJsonReader.readPlan(ResponseParserTest.MESSY_PLAN);
+        }
+
+        long legacyBytes = threads.getThreadAllocatedBytes(threadId);
+        long legacyStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            legacyParse(ResponseParserTest.MESSY_PLAN);
+        }
+        long legacyNanos = System.nanoTime() - legacyStart;
+        legacyBytes = threads.getThreadAllocatedBytes(threadId) - legacyBytes;
+
+        long readerBytes = threads.getThreadAllocatedBytes(threadId);
+        long readerStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            TolerantJsonReader.readPlan(ResponseParserTest.MESSY_PLAN);
+        }
+        long readerNanos = System.nanoTime() - readerStart;
+        readerBytes = threads.getThreadAllocatedBytes(threadId) - readerBytes;
+
+        String result = String.format("%d-char response: regex+tree %d ns / %d B, single pass %d ns / %d B per parse",
+            ResponseParserTest.MESSY_PLAN.length(), legacyNanos / iterations, legacyBytes / iterations,
+            readerNanos / iterations, readerBytes / iterations);
+        reporter.publishEntry("ResponseParser", result);
+
+        assertEquals(3, legacyParse(ResponseParserTest.MESSY_PLAN).size());
+        // Время зависит от машины, а объём аллокаций детерминирован - проверяем только его
+        if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            assertTrue(readerBytes < legacyBytes, result);
+        }
+    }
+
+    // Прежний путь разбора: цепочка replaceAll + дерево JsonObject + копирование в HashMap
+    private static List<Task> legacyParse(String response) {
+        String cleaned = response.trim();
+        if (cleaned.startsWith("```json")) {
+            cleaned = cleaned.substring(7);
+        } else if (cleaned.startsWith("```")) {
+            cleaned = cleaned.substring(3);
+        }
+        if (cleaned.endsWith("```")) {
+            cleaned = cleaned.substring(0, cleaned.length() - 3);
+        }
+        cleaned = cleaned.trim();
+        cleaned = cleaned.replaceAll("//.*$", "");
+        cleaned = cleaned.replaceAll("/\\*.*?\\*/", "");
+        cleaned = cleaned.replaceAll("\\n\\s*", " ");
+        cleaned = cleaned.replaceAll("}\\s+\\{", "},{");
+        cleaned = cleaned.replaceAll("}\\s+\\[", "},[");
+        cleaned = cleaned.replaceAll("]\\s+\\{", "],{");
+        cleaned = cleaned.replaceAll("]\\s+\\[", "],[");
+        cleaned = cleaned.replaceAll(",\\s*}", "}");
+        cleaned = cleaned.replaceAll(",\\s*]", "]");
+
+        // Однострочные комментарии посреди текста прежний путь не вырезал - убираем их заранее в бенчмарке
+        JsonObject json = JsonParser.parseString(cleaned.replace("// comment", "")).getAsJsonObject();
+        List<Task> tasks = new ArrayList<>();
+        JsonArray array = json.getAsJsonArray("tasks");
+        for (JsonElement element : array) {
+            JsonObject taskObj = element.getAsJsonObject();
+            Map<String, Object> parameters = new HashMap<>();
+            JsonObject params = taskObj.getAsJsonObject("parameters");
+            for (String key : params.keySet()) {
+                JsonElement value = params.get(key);
+                parameters.put(key, value.getAsJsonPrimitive().isNumber() ? value.getAsNumber() : value.getAsString());
+            }
+            tasks.add(new Task(taskObj.get("action").getAsString(), parameters));
+        }
+        return tasks;
+    }
+}
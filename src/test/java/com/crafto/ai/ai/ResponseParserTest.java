@@ -0,0 +1,152 @@
+package com.crafto.ai.ai;
+
+import com.crafto.ai.action.Task;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ResponseParser / TolerantJsonReader
+ */
+public class ResponseParserTest {
+
+    private static final String PLAN = "{\"reasoning\": \"Need iron\", \"plan\": \"Mine iron then attack\", \"tasks\": ["
+        + "{\"action\": \"mine\", \"parameters\": {\"block\": \"iron\", \"quantity\": 16}},"
+        + "{\"action\": \"pathfind\", \"parameters\": {\"x\": -120, \"y\": 64, \"z\": 305}},"
+        + "{\"action\": \"attack\", \"parameters\": {\"target\": \"hostile\"}}]}";
+
+    static final String MESSY_PLAN = "```json\n"
+        + "{\"reasoning\": \"Need iron\", // comment\n"
+        + " \"plan\": \"Mine iron then attack\",\n"
+        + " \"tasks\": [\n"
+        + "   {\"action\": \"mine\", \"parameters\": {\"block\": \"iron\", \"quantity\": 16,}}\n"
+        + "   {\"action\": \"pathfind\", \"parameters\": {\"x\": -120, \"y\": 64, \"z\": 305}} /* missing comma above */\n"
+        + "   {\"action\": \"attack\", \"parameters\": {\"target\": \"hostile\"}},\n"
+        + " ]\n"
+        + "}\n```";
+
+    @Test
+    void testCleanPlan() {
+        ResponseParser.ParsedResponse response = ResponseParser.parseAIResponse(PLAN);
+        assertPlan(response);
+    }
+
+    @Test
+    void testFencesCommentsAndCommaMistakes() {
+        ResponseParser.ParsedResponse response = ResponseParser.parseAIResponse(MESSY_PLAN);
+        assertPlan(response);
+        assertFalse(response.isTruncated());
+    }
+
+    @Test
+    void testTruncatedResponseKeepsCompleteTasks() {
+        String truncated = PLAN.substring(0, PLAN.indexOf("\"hostile\"") + 4);
+        ResponseParser.ParsedResponse response = ResponseParser.parseAIResponse(truncated);
+
+        assertNotNull(response);
+        assertEquals(2, response.getTasks().size());
+        assertEquals("pathfind", response.getTasks().get(1).getAction());
+        assertTrue(response.isTruncated());
+    }
+
+    @Test
+    void testEscapesAndArrays() {
+        String json = "{\"plan\": \"Say \\\"hi\\\"\\n\\u0414\", \"tasks\": [{\"action\": \"build\", "
+            + "\"parameters\": {\"structure\": \"house\", \"blocks\": [\"oak_planks\", 'glass'], \"dimensions\": [5, 4, 6]}}]}";
+        ResponseParser.ParsedResponse response = ResponseParser.parseAIResponse(json);
+
+        assertEquals("Say \"hi\"\nД", response.getPlan());
+        Task build = response.getTasks().get(0);
+        assertEquals(List.of("oak_planks", "glass"), build.getParameter("blocks"));
+        assertEquals(List.of(5, 4, 6), build.getParameter("dimensions"));
+    }
+
+    @Test
+    void testTaskElement() {
+        Task task = ResponseParser.parseTaskElement("{\"action\": \"kill\", \"parameters\": {\"target\": \"zombie\", \"count\": 3}}");
+        assertEquals("kill", task.getAction());
+        assertEquals(3, task.getIntParameter("count", 0));
+
+        assertNull(ResponseParser.parseTaskElement("{\"action\": \"kill\", \"parameters\": {\"target\": \"zom"));
+        assertNull(ResponseParser.parseAIResponse("no json here"));
+    }
+
+    @Test
+    void testStreamedElementIndicesMatchFinalParse() {
+        String plan = "{\"plan\": \"p\", \"tasks\": ["
+            + "{\"action\": \"build\", \"parameters\": {\"structure\": \"house\"}},"
+            + "{\"parameters\": {\"block\": \"no action\"}},"
+            + "{\"action\": \"build\", \"parameters\": {\"structure\": \"tower\"}}]}";
+
+        List<Integer> streamed = new ArrayList<>();
+        StreamingTaskParser parser = new StreamingTaskParser((elementIndex, task) -> streamed.add(elementIndex));
+        feedInChunks(parser, plan);
+
+        ResponseParser.ParsedResponse response = ResponseParser.parseAIResponse(plan);
+        assertEquals(List.of(0, 2), streamed);
+        assertEquals(2, response.getTasks().size());
+        assertEquals(0, response.getElementIndex(0));
+        assertEquals(2, response.getElementIndex(1));
+    }
+
+    @Test
+    void testStreamHoldsTasksTheBuildFilterMayDrop() {
+        String plan = "{\"plan\": \"p\", \"tasks\": ["
+            + "{\"action\": \"mine\", \"parameters\": {\"block\": \"oak_log\", \"quantity\": 16}},"
+            + "{\"action\": \"build\", \"parameters\": {\"structure\": \"house\"}},"
+            + "{\"action\": \"build\", \"parameters\": {\"material\": \"no structure\"}}]}";
+        String mineOnly = plan.substring(0, plan.indexOf(",{\"action\": \"build\""));
+
+        List<Task> streamed = new ArrayList<>();
+        StreamingTaskParser parser = new StreamingTaskParser((elementIndex, task) -> streamed.add(task));
+        // Пока build не пришёл, mine нельзя запускать - фильтр build-команд уберёт его из плана
+        feedInChunks(parser, mineOnly);
+        assertTrue(streamed.isEmpty());
+
+        parser.feed(plan.substring(mineOnly.length()));
+        ResponseParser.ParsedResponse response = ResponseParser.parseAIResponse(plan);
+        // Второй build не проходит схему и тоже не уходит в очередь раньше плана
+        assertEquals(1, streamed.size());
+        assertEquals("house", streamed.get(0).getStringParameter("structure"));
+        assertEquals(1, parser.getEmittedTasks());
+        assertEquals(List.of("build", "build"), response.getTasks().stream().map(Task::getAction).toList());
+        assertEquals(1, response.getElementIndex(0));
+    }
+
+    @Test
+    void testStreamWithoutBuildWaitsForFullPlan() {
+        List<Task> streamed = new ArrayList<>();
+        StreamingTaskParser parser = new StreamingTaskParser((elementIndex, task) -> streamed.add(task));
+        feedInChunks(parser, PLAN);
+
+        assertTrue(streamed.isEmpty());
+        assertEquals(3, ResponseParser.parseAIResponse(PLAN).getTasks().size());
+    }
+
+    private static void feedInChunks(StreamingTaskParser parser, String text) {
+        for (int i = 0; i < text.length(); i += 7) {
+            parser.feed(text.substring(i, Math.min(text.length(), i + 7)));
+        }
+    }
+
+    private static void assertPlan(ResponseParser.ParsedResponse response) {
+        assertNotNull(response);
+        assertEquals("Need iron", response.getReasoning());
+        assertEquals("Mine iron then attack", response.getPlan());
+        assertEquals(3, response.getTasks().size());
+
+        Task mine = response.getTasks().get(0);
+        assertEquals("mine", mine.getAction());
+        assertEquals("iron", mine.getStringParameter("block"));
+        assertEquals(16, mine.getIntParameter("quantity", 0));
+
+        Task pathfind = response.getTasks().get(1);
+        assertEquals(-120, pathfind.getIntParameter("x", 0));
+        assertEquals(305, pathfind.getIntParameter("z", 0));
+
+        assertEquals("hostile", response.getTasks().get(2).getStringParameter("target"));
+    }
+}
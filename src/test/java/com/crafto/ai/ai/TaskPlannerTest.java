@@ -0,0 +1,50 @@
+package com.crafto.ai.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the TaskPlanner fallback when the LLM gives no usable plan
+ */
+public class TaskPlannerTest {
+
+    private static final String STALE_PLAN = "{\"plan\": \"Mine iron\", \"tasks\": [{\"action\": \"mine\", "
+        + "\"parameters\": {\"block\": \"iron\", \"quantity\": 8}}]}";
+
+    @Test
+    void testValidStalePlanIsUsed() {
+        ResponseParser.ParsedResponse plan = TaskPlanner.fallbackPlan("mine iron", STALE_PLAN, true);
+
+        assertNotNull(plan);
+        assertEquals("mine", plan.getTasks().get(0).getAction());
+        assertEquals(8, plan.getTasks().get(0).getIntParameter("quantity", 0));
+    }
+
+    @Test
+    void testInvalidStalePlanIsSkipped() {
+        // Задача без обязательного quantity - план из старой версии схемы
+        String invalid = STALE_PLAN.replace(", \"quantity\": 8", "");
+        assertNull(TaskPlanner.fallbackPlan("mine iron", invalid, false));
+        assertNull(TaskPlanner.fallbackPlan("mine iron", "not a plan", false));
+        assertThrows(LLMUnavailableException.class, () -> TaskPlanner.fallbackPlan("mine iron", invalid, true));
+    }
+
+    @Test
+    void testNoFallbackWhileUnavailable() {
+        assertNull(TaskPlanner.fallbackPlan("build a bridge", null, false));
+
+        LLMUnavailableException error = assertThrows(LLMUnavailableException.class,
+            () -> TaskPlanner.fallbackPlan("build a bridge", null, true));
+        assertTrue(error.getMessage().contains("build a bridge"));
+    }
+
+    @Test
+    void testUnavailableCauseIsUnwrapped() {
+        // Отказ из AIRequestBatcher приходит в handle() обёрнутым в CompletionException
+        assertTrue(TaskPlanner.isUnavailable(new CompletionException(new LLMUnavailableException("circuit open"))));
+        assertTrue(TaskPlanner.isUnavailable(new LLMUnavailableException("circuit open")));
+    }
+}
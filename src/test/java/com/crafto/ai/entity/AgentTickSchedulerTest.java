@@ -0,0 +1,82 @@
+package com.crafto.ai.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AgentTickScheduler budgeting and longest-waiting-first order
+ */
+public class AgentTickSchedulerTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final AgentTickScheduler scheduler = new AgentTickScheduler(clock::get);
+    private final List<String> ran = new ArrayList<>();
+
+    /** Каждый агент "работает" столько наносекунд, сколько указано в карте. */
+    private int tick(List<String> agents, Map<String, Long> costs, long budget) {
+        return scheduler.tick(agents, name -> name, name -> {
+            ran.add(name);
+            clock.addAndGet(costs.get(name));
+        }, budget);
+    }
+
+    @Test
+    void testDefersAgentsPastBudgetAndServesThemFirstNextTick() {
+        List<String> agents = List.of("a", "b", "c", "d");
+        Map<String, Long> costs = Map.of("a", 400L, "b", 400L, "c", 400L, "d", 400L);
+
+        assertEquals(4, tick(agents, costs, 10_000)); // первый тик: стоимость ещё неизвестна
+        ran.clear();
+
+        assertEquals(2, tick(agents, costs, 1000));
+        assertEquals(List.of("a", "b"), ran);
+        assertEquals(2, scheduler.getDeferredAgentTicks());
+
+        ran.clear();
+        tick(agents, costs, 1000);
+        assertEquals(List.of("c", "d"), ran);
+        assertEquals(400, scheduler.getAverageCostNanos("a"));
+    }
+
+    @Test
+    void testDeferredAgentKeepsItsTurnWhenDueListChanges() {
+        Map<String, Long> costs = Map.of("a", 400L, "b", 400L, "c", 400L, "r", 400L);
+        tick(List.of("a", "b", "c", "r"), costs, 10_000);
+
+        // "r" тикает раз в 4 тика, а список пришедших в срок агентов каждый раз в другом порядке
+        List<List<String>> dueLists = List.of(List.of("c", "b", "a", "r"), List.of("a", "b", "c"),
+            List.of("b", "c", "a"), List.of("c", "a", "b"));
+        List<List<String>> perTick = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ran.clear();
+            tick(dueLists.get(i % 4), costs, 1000);
+            perTick.add(new ArrayList<>(ran));
+        }
+
+        assertEquals(List.of("a", "b"), perTick.get(0));
+        assertEquals(List.of("r", "c"), perTick.get(4), "deferred agent goes first the next time it is due");
+        for (String agent : List.of("a", "b", "c")) {
+            assertEquals(5, perTick.stream().filter(tick -> tick.contains(agent)).count(), agent);
+        }
+    }
+
+    @Test
+    void testOneAgentRunsEvenWhenItAloneExceedsBudget() {
+        List<String> agents = List.of("slow", "fast");
+        Map<String, Long> costs = Map.of("slow", 5000L, "fast", 100L);
+
+        tick(agents, costs, 1000);
+        assertEquals(List.of("slow"), ran);
+        assertEquals(1, scheduler.getOverBudgetTicks());
+
+        ran.clear();
+        tick(agents, costs, 1000);
+        assertEquals(List.of("fast"), ran, "the agent left over goes next");
+        assertEquals(0, tick(List.of(), costs, 1000));
+    }
+}
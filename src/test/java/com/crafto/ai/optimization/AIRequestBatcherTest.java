@@ -0,0 +1,249 @@
+package com.crafto.ai.optimization;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for slot dispatch in AIRequestBatcher, with a stub in place of the model cascade
+ */
+public class AIRequestBatcherTest {
+
+    private static final String PLAN = "{\"plan\": \"p\", \"tasks\": [{\"action\": \"follow\", "
+        + "\"parameters\": {\"player\": \"Steve\"}}]}";
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger maxConcurrent = new AtomicInteger(2);
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger peakRunning = new AtomicInteger();
+    private AIRequestBatcher batcher;
+
+    @AfterEach
+    void tearDown() {
+        gate.countDown();
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    void testOneRequestPerFreeSlot() throws Exception {
+        CountDownLatch twoStarted = new CountDownLatch(2);
+        batcher = newBatcher(request -> {
+            twoStarted.countDown();
+            return awaitGate();
+        });
+
+        List<CompletableFuture<String>> futures = submit(5);
+        assertTrue(twoStarted.await(5, TimeUnit.SECONDS));
+
+        // Слоты заняты и не освобождаются, пока генерации висят
+        assertEquals(2, started.get());
+        assertEquals(2, batcher.getConcurrencyLimiter().getInFlight());
+
+        gate.countDown();
+        for (CompletableFuture<String> future : futures) {
+            assertEquals(PLAN, future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(5, started.get());
+        assertEquals(2, peakRunning.get());
+        awaitIdle();
+    }
+
+    @Test
+    void testFlushTimerDropsExpiredRequests() throws Exception {
+        maxConcurrent.set(1);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        batcher = newBatcher(request -> {
+            firstStarted.countDown();
+            return awaitGate();
+        });
+
+        List<CompletableFuture<String>> futures = submit(2);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, batcher.getConcurrencyLimiter().getInFlight());
+
+        // Слот не освобождается и новых запросов нет - просроченный снимает только таймер
+        clock.addAndGet(RequestPriority.INTERACTIVE.getQueueDeadlineMs() + 1);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> futures.get(1).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, failure.getCause());
+        assertEquals(1, started.get());
+        assertFalse(futures.get(0).isDone());
+    }
+
+    @Test
+    void testSlotsAreReleasedAfterFailuresAndExpiry() throws Exception {
+        maxConcurrent.set(1);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        batcher = newBatcher(request -> {
+            firstStarted.countDown();
+            awaitGate();
+            if (request.command.equals("command 0")) {
+                throw new IllegalStateException("model failed");
+            }
+            return PLAN;
+        });
+
+        List<CompletableFuture<String>> futures = submit(3);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        // Третий ждёт в очереди дольше своего срока
+        clock.addAndGet(RequestPriority.INTERACTIVE.getQueueDeadlineMs() + 1);
+        CompletableFuture<String> late = batcher.submitRequest("agent", "late command", "context");
+        gate.countDown();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> futures.get(0).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        for (int i = 1; i < futures.size(); i++) {
+            int index = i;
+            failure = assertThrows(ExecutionException.class, () -> futures.get(index).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, failure.getCause());
+        }
+        assertEquals(PLAN, late.get(5, TimeUnit.SECONDS));
+        awaitIdle();
+        assertEquals(2, batcher.getDroppedCount());
+    }
+
+    @Test
+    void testCachedResponseSkipsDispatch() throws Exception {
+        batcher = newBatcher(request -> PLAN);
+
+        assertEquals(PLAN, batcher.submitRequest("agent", "follow me", "context").get(5, TimeUnit.SECONDS));
+        assertEquals(PLAN, batcher.submitRequest("agent", "follow me", "context").get(5, TimeUnit.SECONDS));
+
+        assertEquals(1, started.get());
+        awaitIdle();
+    }
+
+    @Test
+    void testReplanBypassesCacheAndReplacesPlan() throws Exception {
+        String replanned = PLAN.replace("Steve", "Alex");
+        batcher = newBatcher(request -> request.priority == RequestPriority.REPLAN ? replanned : PLAN);
+        PlanCacheKey key = PlanCacheKey.exact("follow me", "context");
+
+        assertEquals(PLAN, batcher.submitRequest("agent", "follow me", "context").get(5, TimeUnit.SECONDS));
+        assertEquals(replanned, batcher.submitRequest("agent", "follow me", key, "context", null,
+            RequestPriority.REPLAN).get(5, TimeUnit.SECONDS));
+
+        // Новый план заменил неудачный под тем же ключом
+        assertEquals(replanned, batcher.submitRequest("agent", "follow me", "context").get(5, TimeUnit.SECONDS));
+        assertEquals(2, started.get());
+        awaitIdle();
+    }
+
+    @Test
+    void testTimedOutRequestShrinksLimit() throws Exception {
+        maxConcurrent.set(4);
+        // Таймаут или обрыв связи доходят из клиента как пустой ответ
+        batcher = newBatcher(request -> request.command.equals("command 0") ? null : PLAN);
+
+        List<CompletableFuture<String>> futures = submit(2);
+        assertNull(futures.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals(PLAN, futures.get(1).get(5, TimeUnit.SECONDS));
+        awaitIdle();
+
+        assertEquals(3, batcher.getConcurrencyLimiter().getLimit());
+        // Пустой ответ не кэшируется
+        assertNull(batcher.getResponseCache().get(PlanCacheKey.exact("command 0", "context").getKey()));
+    }
+
+    @Test
+    void testCancelledRequestIsNeverDispatched() throws Exception {
+        maxConcurrent.set(1);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        List<String> dispatched = new CopyOnWriteArrayList<>();
+        batcher = newBatcher(request -> {
+            dispatched.add(request.command);
+            firstStarted.countDown();
+            return awaitGate();
+        });
+
+        CompletableFuture<String> busy = batcher.submitRequest("Alex", "busy", "context");
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        // Новая команда Steve вытесняет старую, пока та ещё ждёт слот
+        CompletableFuture<String> superseded = batcher.submitRequest("Steve", "mine iron", "context");
+        assertTrue(superseded.cancel(false));
+        CompletableFuture<String> current = batcher.submitRequest("Steve", "build house", "context");
+        gate.countDown();
+
+        assertEquals(PLAN, busy.get(5, TimeUnit.SECONDS));
+        assertEquals(PLAN, current.get(5, TimeUnit.SECONDS));
+        awaitIdle();
+        assertEquals(List.of("busy", "build house"), dispatched);
+        assertEquals(0, batcher.getDroppedCount());
+    }
+
+    @Test
+    void testSharedRequestSurvivesOneCallerCancelling() throws Exception {
+        maxConcurrent.set(1);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        batcher = newBatcher(request -> {
+            firstStarted.countDown();
+            return awaitGate();
+        });
+
+        CompletableFuture<String> owner = batcher.submitRequest("Steve", "follow me", "context");
+        CompletableFuture<String> joined = batcher.submitRequest("Alex", "follow me", "context");
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        owner.cancel(false);
+        gate.countDown();
+
+        assertEquals(PLAN, joined.get(5, TimeUnit.SECONDS));
+        assertEquals(1, batcher.getCoalescedCount());
+        awaitIdle();
+    }
+
+    private AIRequestBatcher newBatcher(AIRequestBatcher.PlanGenerator generator) {
+        return new AIRequestBatcher(() -> 60_000L, () -> { }, maxConcurrent::get,
+            new PlanCacheStore(tempDir.toString(), 16), null, request -> {
+                started.incrementAndGet();
+                peakRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    return generator.generate(request);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }, () -> false, clock::get);
+    }
+
+    private List<CompletableFuture<String>> submit(int count) {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(batcher.submitRequest("agent" + i, "command " + i, "context"));
+        }
+        return futures;
+    }
+
+    // Слот возвращается сразу после завершения future, в том же потоке диспетчера
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (batcher.getConcurrencyLimiter().getInFlight() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, batcher.getConcurrencyLimiter().getInFlight());
+    }
+
+    private String awaitGate() throws InterruptedException {
+        assertTrue(gate.await(10, TimeUnit.SECONDS));
+        return PLAN;
+    }
+}
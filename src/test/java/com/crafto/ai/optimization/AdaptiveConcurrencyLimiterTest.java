@@ -0,0 +1,92 @@
+package com.crafto.ai.optimization;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the AIMD limiter of in-flight LLM requests
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void testSlotsAreBoundedByLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(() -> 2);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.releaseUnused();
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(2, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void testShortReplyDoesNotPinBaseline() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(() -> 4);
+
+        // Короткий ответ, затем обычные длинные с той же скоростью генерации
+        release(limiter, 160, 8);
+        for (int i = 0; i < 20; i++) {
+            release(limiter, 2_000, 200);
+        }
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void testSlowerTokensBackOff() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(() -> 4);
+        for (int i = 0; i < 5; i++) {
+            release(limiter, 1_000, 100);
+        }
+        assertEquals(10.0, limiter.getBaselineMsPerToken(), 0.01);
+
+        // Тот же размер ответа, вчетверо медленнее - сервер перегружен
+        release(limiter, 4_000, 100);
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void testFailuresShrinkToOneAndQueueGrowsBack() {
+        AtomicInteger max = new AtomicInteger(4);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(max::get);
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire();
+            limiter.release(100, 0, false, 0);
+        }
+        assertEquals(1, limiter.getLimit());
+
+        // Успехи при непустой очереди: +1 слот за каждые limit запросов
+        for (int i = 0; i < 20; i++) {
+            limiter.tryAcquire();
+            limiter.release(1_000, 100, true, 5);
+        }
+        assertEquals(4, limiter.getLimit());
+
+        max.set(2);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void testNoGrowthWithoutQueue() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(() -> 4);
+        limiter.tryAcquire();
+        limiter.release(100, 0, false, 0);
+        assertEquals(3, limiter.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            release(limiter, 1_000, 100);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    private static void release(AdaptiveConcurrencyLimiter limiter, long latencyMs, int outputTokens) {
+        limiter.tryAcquire();
+        limiter.release(latencyMs, outputTokens, true, 0);
+    }
+}
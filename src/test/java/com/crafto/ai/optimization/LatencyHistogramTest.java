@@ -0,0 +1,63 @@
+package com.crafto.ai.optimization;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LatencyHistogram bucketing and percentiles
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    void testBucketsCoverValuesWithBoundedError() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1_000, 123_456, 45_000_000L}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(upper >= value, "bucket of " + value + " ends at " + upper);
+            assertTrue(upper - value <= value / 16, "bucket of " + value + " is too wide");
+            if (index > 0) {
+                assertTrue(LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.recordNanos(ms * 1_000_000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(100, snapshot.count);
+        assertEquals(50_000, snapshot.p50, 50_000 / 16.0);
+        assertEquals(95_000, snapshot.p95, 95_000 / 16.0);
+        assertEquals(99_000, snapshot.p99, 99_000 / 16.0);
+        assertEquals(100_000, snapshot.max);
+        assertEquals("no samples", new LatencyHistogram().snapshot().toString());
+    }
+
+    @Test
+    void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.recordMicros(i % 500);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, histogram.snapshot().count);
+        assertEquals(499, histogram.snapshot().max);
+    }
+}
@@ -0,0 +1,117 @@
+package com.crafto.ai.optimization;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for semantic plan cache keys and template re-parameterization
+ */
+public class PlanCacheKeyTest {
+    
+    private static final String PLAINS = PlanCacheKey.coarseContext("plains", false);
+    
+    @Test
+    void testEquivalentCommandsShareKey() {
+        String english = PlanCacheKey.of("Build a   house", PLAINS, null).getKey();
+        String lowercase = PlanCacheKey.of("build house", PLAINS, null).getKey();
+        String russian = PlanCacheKey.of("построй дом", PLAINS, null).getKey();
+        
+        assertEquals(english, lowercase);
+        assertEquals(english, russian);
+    }
+    
+    @Test
+    void testContextChangesKey() {
+        String calm = PlanCacheKey.of("explore", PLAINS, null).getKey();
+        String hostile = PlanCacheKey.of("explore", PlanCacheKey.coarseContext("plains", true), null).getKey();
+        
+        assertNotEquals(calm, hostile);
+    }
+    
+    @Test
+    void testNumbersBecomeSlots() {
+        PlanCacheKey five = PlanCacheKey.of("kill 5 zombies", PLAINS, null);
+        PlanCacheKey ten = PlanCacheKey.of("убей 10 зомби", PLAINS, null);
+        
+        assertEquals(five.getKey(), ten.getKey());
+        assertEquals("5", five.getSlots().get(0));
+        assertEquals("10", ten.getSlots().get(0));
+    }
+    
+    @Test
+    void testTemplateIsReparameterized() {
+        PlanCacheKey original = PlanCacheKey.of("explore 64", PLAINS, new int[] {100, 70, -200});
+        String response = "{\"plan\": \"Explore 64 blocks\", \"tasks\": [{\"action\": \"explore\", "
+            + "\"parameters\": {\"radius\": 64, \"x\": 100, \"y\": 70, \"z\": -200}}]}";
+        
+        String template = original.templatize(response);
+        assertFalse(template.contains("100"));
+        
+        PlanCacheKey live = PlanCacheKey.of("explore 32", PLAINS, new int[] {5, 64, 7});
+        String reused = live.instantiate(template);
+        
+        assertEquals("{\"plan\": \"Explore 64 blocks\", \"tasks\": [{\"action\": \"explore\", "
+            + "\"parameters\": {\"radius\": 32, \"x\": 5, \"y\": 64, \"z\": 7}}]}", reused);
+    }
+    
+    @Test
+    void testOverlappingValuesKeepTheirMeaning() {
+        // Радиус совпадает с y, количество - с z, а у "tier" то же значение, но он не параметр команды
+        PlanCacheKey original = PlanCacheKey.of("kill 1 zombie then explore 64", PLAINS, new int[] {10, 64, 1});
+        String response = "{\"plan\": \"Kill 1 zombie\", \"tasks\": ["
+            + "{\"action\": \"kill\", \"parameters\": {\"target\": \"zombie\", \"count\": 1, \"tier\": 1}},"
+            + "{\"action\": \"explore\", \"parameters\": {\"radius\": 64, \"x\": 10, \"y\": 64, \"z\": 1}}]}";
+        
+        PlanCacheKey live = PlanCacheKey.of("kill 3 zombie then explore 32", PLAINS, new int[] {-5, 70, 8});
+        String reused = live.instantiate(original.templatize(response));
+        
+        assertEquals("{\"plan\": \"Kill 1 zombie\", \"tasks\": ["
+            + "{\"action\": \"kill\", \"parameters\": {\"target\": \"zombie\", \"count\": 3, \"tier\": 1}},"
+            + "{\"action\": \"explore\", \"parameters\": {\"radius\": 32, \"x\": -5, \"y\": 70, \"z\": 8}}]}",
+            reused);
+    }
+    
+    @Test
+    void testCommandCoordinatesWinOverPosition() {
+        // Цель задана в команде, а y совпал с позицией агента - это всё равно y из команды
+        PlanCacheKey original = PlanCacheKey.of("go to 100 64 200", PLAINS, new int[] {0, 64, 0});
+        String response = "{\"plan\": \"Walk\", \"tasks\": [{\"action\": \"pathfind\", "
+            + "\"parameters\": {\"x\": 100, \"y\": 64, \"z\": 200}}]}";
+        String template = original.templatize(response);
+        assertTrue(original.isReusable(template));
+        
+        String sameTarget = PlanCacheKey.of("go to 100 64 200", PLAINS, new int[] {3, 80, -7}).instantiate(template);
+        assertEquals(response, sameTarget);
+        
+        String otherTarget = PlanCacheKey.of("go to -5 70 12", PLAINS, new int[] {3, 80, -7}).instantiate(template);
+        assertEquals("{\"plan\": \"Walk\", \"tasks\": [{\"action\": \"pathfind\", "
+            + "\"parameters\": {\"x\": -5, \"y\": 70, \"z\": 12}}]}", otherTarget);
+    }
+    
+    @Test
+    void testNearPositionCoordinatesBecomeOffsets() {
+        PlanCacheKey original = PlanCacheKey.of("create waypoint home", PLAINS, new int[] {100, 64, -200});
+        String response = "{\"plan\": \"Mark home\", \"tasks\": ["
+            + "{\"action\": \"create_waypoint\", \"parameters\": {\"name\": \"home\", \"x\": 100, \"y\": 65, \"z\": -200}},"
+            + "{\"action\": \"pathfind\", \"parameters\": {\"x\": 105, \"y\": 64, \"z\": -203}}]}";
+        String template = original.templatize(response);
+        assertTrue(original.isReusable(template));
+        
+        String reused = PlanCacheKey.of("create waypoint home", PLAINS, new int[] {0, 70, 0}).instantiate(template);
+        assertEquals("{\"plan\": \"Mark home\", \"tasks\": ["
+            + "{\"action\": \"create_waypoint\", \"parameters\": {\"name\": \"home\", \"x\": 0, \"y\": 71, \"z\": 0}},"
+            + "{\"action\": \"pathfind\", \"parameters\": {\"x\": 5, \"y\": 70, \"z\": -3}}]}", reused);
+    }
+    
+    @Test
+    void testFarLiteralCoordinatesAreNotReusable() {
+        // Координата не из команды и далеко от агента - у другого агента она ничего не значит
+        PlanCacheKey key = PlanCacheKey.of("explore", PLAINS, new int[] {100, 64, -200});
+        String response = "{\"plan\": \"Explore\", \"tasks\": [{\"action\": \"pathfind\", "
+            + "\"parameters\": {\"x\": 400, \"y\": 64, \"z\": -200}}]}";
+        
+        assertFalse(key.isReusable(key.templatize(response)));
+        assertTrue(PlanCacheKey.exact("explore", "context").isReusable(response));
+    }
+}
@@ -0,0 +1,69 @@
+package com.crafto.ai.optimization;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the append-only plan cache log
+ */
+public class PlanCacheStoreTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void testPlansSurviveRestart() {
+        PlanCache cache = new PlanCache(16, () -> 60_000L);
+        PlanCacheStore store = new PlanCacheStore(tempDir.toString(), 16);
+        cache.setStore(store);
+        cache.put("build house|biome=plains;hostiles=no", "{\"plan\":\"house\"}");
+        store.close();
+        
+        // Новый процесс - пустой кэш прогревается с диска
+        PlanCache restarted = new PlanCache(16, () -> 60_000L);
+        assertEquals(1, restarted.restore(new PlanCacheStore(tempDir.toString(), 16)));
+        assertEquals("{\"plan\":\"house\"}", restarted.get("build house|biome=plains;hostiles=no"));
+    }
+    
+    @Test
+    void testLastWriteWinsAndLogIsCompacted() throws Exception {
+        PlanCacheStore store = new PlanCacheStore(tempDir.toString(), 16);
+        for (int i = 0; i < 10; i++) {
+            store.append("follow me", "v" + i);
+        }
+        
+        Map<String, String> loaded = store.load();
+        assertEquals(Map.of("follow me", "v9"), loaded);
+        assertEquals(1, Files.readAllLines(tempDir.resolve("plans.log")).size());
+    }
+    
+    @Test
+    void testCompactionKeepsMostRecentEntries() {
+        PlanCacheStore store = new PlanCacheStore(tempDir.toString(), 2);
+        store.append("a", "1");
+        store.append("b", "2");
+        store.append("c", "3");
+        
+        Map<String, String> loaded = store.load();
+        assertEquals(2, loaded.size());
+        assertFalse(loaded.containsKey("a"));
+    }
+    
+    @Test
+    void testRewritingOneKeyStillTriggersCompaction() throws Exception {
+        PlanCacheStore store = new PlanCacheStore(tempDir.toString(), 16);
+        for (int i = 0; i < 200; i++) {
+            store.append("follow me", "v" + i);
+        }
+        store.close();
+        
+        // Один живой ключ: лог сжимается, не дорастая до порога для 16 ключей
+        assertTrue(Files.readAllLines(tempDir.resolve("plans.log")).size() <= 3 + 64);
+    }
+}
@@ -0,0 +1,89 @@
+package com.crafto.ai.optimization;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PlanCache bounding, TTL and counters
+ */
+public class PlanCacheTest {
+    
+    @Test
+    void testHitAndMissCounters() {
+        PlanCache cache = new PlanCache(10, () -> 60_000L);
+        
+        assertNull(cache.get("build house"));
+        cache.put("build house", "{\"plan\":\"house\"}");
+        assertEquals("{\"plan\":\"house\"}", cache.get("build house"));
+        
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+    
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        PlanCache cache = new PlanCache(2, () -> 60_000L);
+        
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a"); // "b" is now the least recently used
+        cache.put("c", "3");
+        
+        assertEquals(2, cache.size());
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertEquals(1, cache.getEvictions());
+    }
+    
+    @Test
+    void testTtlIsReadOnEveryLookup() {
+        AtomicLong ttl = new AtomicLong(60_000L);
+        PlanCache cache = new PlanCache(10, ttl::get);
+        
+        cache.put("follow me", "{}");
+        assertNotNull(cache.get("follow me"));
+        
+        // Shrinking the TTL applies to entries that are already cached
+        ttl.set(-1L);
+        assertNull(cache.get("follow me"));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    void testPurgeExpired() {
+        AtomicLong ttl = new AtomicLong(60_000L);
+        PlanCache cache = new PlanCache(10, ttl::get);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        
+        ttl.set(-1L);
+        assertEquals(2, cache.purgeExpired());
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    void testExpiredEntriesStayAvailableAsFallback() {
+        AtomicLong ttl = new AtomicLong(60_000L);
+        PlanCache cache = new PlanCache(10, ttl::get);
+        cache.put("mine iron", "old");
+        cache.put("follow me", "1");
+        assertEquals("old", cache.getStale("mine iron"));
+        
+        ttl.set(-1L);
+        assertNull(cache.get("mine iron"));
+        cache.purgeExpired();
+        assertEquals("old", cache.getStale("mine iron"));
+        assertEquals("1", cache.getStale("follow me"));
+        
+        // Свежий ответ заменяет устаревший
+        ttl.set(60_000L);
+        cache.put("mine iron", "new");
+        assertEquals("new", cache.getStale("mine iron"));
+        assertNull(cache.getStale("build house"));
+    }
+}
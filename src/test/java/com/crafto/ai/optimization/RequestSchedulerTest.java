@@ -0,0 +1,129 @@
+package com.crafto.ai.optimization;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RequestScheduler priority order, per-agent fairness and deadlines
+ */
+public class RequestSchedulerTest {
+
+    @Test
+    void testInteractiveServedBeforeBackground() {
+        RequestScheduler<String> scheduler = new RequestScheduler<>(request -> {});
+
+        scheduler.offer("preload", "Steve", RequestPriority.BACKGROUND);
+        scheduler.offer("replan", "Steve", RequestPriority.REPLAN);
+        scheduler.offer("command", "Alex", RequestPriority.INTERACTIVE);
+
+        assertEquals("command", scheduler.poll());
+        assertEquals("replan", scheduler.poll());
+        assertEquals("preload", scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    void testBusyAgentDoesNotStarveOthers() {
+        RequestScheduler<String> scheduler = new RequestScheduler<>(request -> {});
+
+        for (int i = 0; i < 5; i++) {
+            scheduler.offer("steve-" + i, "Steve", RequestPriority.INTERACTIVE);
+        }
+        scheduler.offer("alex-0", "Alex", RequestPriority.INTERACTIVE);
+
+        assertEquals("steve-0", scheduler.poll());
+        assertEquals("alex-0", scheduler.poll()); // не ждёт остальные четыре команды Steve
+        assertEquals("steve-1", scheduler.poll());
+    }
+
+    @Test
+    void testLateArrivalJoinsAtCurrentVirtualTime() {
+        RequestScheduler<String> scheduler = new RequestScheduler<>(request -> {});
+
+        for (int i = 0; i < 4; i++) {
+            scheduler.offer("steve-" + i, "Steve", RequestPriority.INTERACTIVE);
+        }
+        scheduler.poll();
+        scheduler.poll();
+        scheduler.offer("alex-0", "Alex", RequestPriority.INTERACTIVE);
+
+        assertEquals("alex-0", scheduler.poll()); // без накопленного "кредита", но и без очереди за Steve
+        assertEquals("steve-2", scheduler.poll());
+    }
+
+    @Test
+    void testExpiredRequestsAreDropped() {
+        AtomicLong clock = new AtomicLong(0);
+        List<String> dropped = new ArrayList<>();
+        RequestScheduler<String> scheduler = new RequestScheduler<>(dropped::add, clock::get);
+
+        scheduler.offer("old", "Steve", RequestPriority.INTERACTIVE);
+        clock.set(RequestPriority.INTERACTIVE.getQueueDeadlineMs() + 1);
+        scheduler.offer("fresh", "Alex", RequestPriority.INTERACTIVE);
+
+        assertEquals("fresh", scheduler.poll());
+        assertEquals(List.of("old"), dropped);
+        assertEquals(1, scheduler.getDroppedCount());
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    void testPurgeExpired() {
+        AtomicLong clock = new AtomicLong(0);
+        List<String> dropped = new ArrayList<>();
+        RequestScheduler<String> scheduler = new RequestScheduler<>(dropped::add, clock::get);
+
+        scheduler.offer("command", "Steve", RequestPriority.INTERACTIVE);
+        scheduler.offer("preload", "Steve", RequestPriority.BACKGROUND);
+        clock.set(RequestPriority.INTERACTIVE.getQueueDeadlineMs() + 1);
+
+        assertEquals(1, scheduler.purgeExpired());
+        assertEquals(List.of("command"), dropped);
+        assertEquals(1, scheduler.size());
+    }
+
+    @Test
+    void testCancelledRequestGivesTurnBack() {
+        Set<String> cancelled = new HashSet<>();
+        List<String> dropped = new ArrayList<>();
+        RequestScheduler<String> scheduler = new RequestScheduler<>(dropped::add, cancelled::contains, () -> 0L);
+
+        // Steve передумал: старая команда отменена, новая встаёт на её место, а не за ней
+        scheduler.offer("steve-old", "Steve", RequestPriority.INTERACTIVE);
+        scheduler.offer("alex-0", "Alex", RequestPriority.INTERACTIVE);
+        scheduler.offer("alex-1", "Alex", RequestPriority.INTERACTIVE);
+        cancelled.add("steve-old");
+        scheduler.offer("steve-new", "Steve", RequestPriority.INTERACTIVE);
+
+        assertEquals(3, scheduler.size());
+        assertEquals("alex-0", scheduler.poll());
+        assertEquals("steve-new", scheduler.poll());
+        assertEquals("alex-1", scheduler.poll());
+        assertTrue(dropped.isEmpty());
+        assertEquals(0, scheduler.getDroppedCount());
+    }
+
+    @Test
+    void testCancelledRequestIsNeverPolled() {
+        Set<String> cancelled = new HashSet<>();
+        RequestScheduler<String> scheduler = new RequestScheduler<>(request -> {}, cancelled::contains, () -> 0L);
+
+        scheduler.offer("command", "Steve", RequestPriority.INTERACTIVE);
+        scheduler.offer("preload", "Steve", RequestPriority.BACKGROUND);
+        cancelled.add("command");
+        assertEquals("preload", scheduler.poll());
+
+        scheduler.offer("stop", "Alex", RequestPriority.INTERACTIVE);
+        cancelled.add("stop");
+        assertEquals(0, scheduler.purgeExpired());
+        assertTrue(scheduler.isEmpty());
+        assertNull(scheduler.poll());
+    }
+}
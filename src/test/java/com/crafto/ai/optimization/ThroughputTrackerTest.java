@@ -0,0 +1,110 @@
+package com.crafto.ai.optimization;
+
+import com.crafto.ai.ai.GenerationStats;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ThroughputTracker aggregation of Ollama token counters
+ */
+public class ThroughputTrackerTest {
+
+    private static GenerationStats stats(String model, int outputTokens, long evalMillis) {
+        // 500 токенов промпта за 250 мс, как в финальном объекте /api/chat
+        return GenerationStats.from(model, JsonParser.parseString("{\"done\": true, \"prompt_eval_count\": 500,"
+            + " \"prompt_eval_duration\": 250000000, \"eval_count\": " + outputTokens
+            + ", \"eval_duration\": " + evalMillis * 1_000_000L + ", \"load_duration\": 3000000}").getAsJsonObject());
+    }
+
+    @Test
+    void testParsesFinalResponseOnly() {
+        assertNull(GenerationStats.from("m", JsonParser.parseString("{\"message\": {\"content\": \"x\"}}").getAsJsonObject()));
+
+        GenerationStats stats = stats("m", 100, 2000);
+        assertEquals(500, stats.getPromptTokens());
+        assertEquals(50.0, stats.getTokensPerSecond(), 0.001);
+    }
+
+    @Test
+    void testAggregatesPerModelAndEstimates() {
+        AtomicLong clock = new AtomicLong();
+        ThroughputTracker tracker = new ThroughputTracker(clock::get);
+        record(tracker, clock, "Steve", stats("big", 100, 2000));
+        record(tracker, clock, "Steve", stats("big", 100, 2000));
+        assertEquals(-1, tracker.forModel("big").estimateGenerationMs(), "too few samples to estimate");
+
+        clock.addAndGet(2_000_000_000L);
+        tracker.record("Alex", "replan", stats("big", 100, 2000));
+        tracker.record("Alex", "interactive", stats("small", 100, 500));
+
+        ThroughputTracker.Aggregate big = tracker.forModel("big");
+        assertEquals(3, big.getRequests());
+        assertEquals(50.0, big.getTokensPerSecond(), 0.001);
+        assertEquals(2250, big.estimateGenerationMs()); // 250 мс промпт + 100 токенов по 50 tok/s
+        assertEquals(50.0, big.getAggregateTokensPerSecond(), 0.001);
+        assertEquals(1.0, big.getThroughputRatio(), 0.001);
+        assertEquals(2, tracker.forAgent("Alex").getRequests());
+        assertEquals(3, tracker.getPromptTypes().get("interactive").getRequests());
+        assertEquals(0, tracker.forModel("unknown").getRequests());
+    }
+
+    @Test
+    void testSlowdownLowersThroughputRatio() {
+        AtomicLong clock = new AtomicLong();
+        ThroughputTracker tracker = new ThroughputTracker(clock::get);
+        for (int i = 0; i < 5; i++) {
+            record(tracker, clock, "Steve", stats("big", 100, 1000));
+        }
+        for (int i = 0; i < 20; i++) {
+            record(tracker, clock, "Steve", stats("big", 100, 4000));
+        }
+        // 25 tok/s против пика 100, успевшего немного затухнуть за 80 с
+        assertTrue(tracker.forModel("big").getThroughputRatio() < 0.3);
+    }
+
+    @Test
+    void testParallelStreamsAreNotASlowdown() {
+        AtomicLong clock = new AtomicLong();
+        ThroughputTracker tracker = new ThroughputTracker(clock::get);
+        for (int i = 0; i < 5; i++) {
+            record(tracker, clock, "Steve", stats("big", 100, 1000));
+        }
+
+        // Четыре запроса идут одновременно: каждый вдвое медленнее, но вместе - вдвое быстрее
+        for (int round = 0; round < 10; round++) {
+            clock.addAndGet(2_000_000_000L);
+            for (int agent = 0; agent < 4; agent++) {
+                tracker.record("agent" + agent, "interactive", stats("big", 100, 2000));
+            }
+        }
+        ThroughputTracker.Aggregate big = tracker.forModel("big");
+        assertEquals(50.0, big.getTokensPerSecond(), 0.5);
+        assertTrue(big.getAggregateTokensPerSecond() > 100);
+        assertEquals(1.0, big.getThroughputRatio(), 0.001);
+    }
+
+    @Test
+    void testPeakDecays() {
+        AtomicLong clock = new AtomicLong();
+        ThroughputTracker tracker = new ThroughputTracker(clock::get);
+        for (int i = 0; i < 5; i++) {
+            record(tracker, clock, "Steve", stats("big", 100, 1000));
+        }
+
+        // Разовый всплеск не держит лимит занижённым вечно: через час пик почти сравнялся с текущей скоростью
+        for (int i = 0; i < 900; i++) {
+            record(tracker, clock, "Steve", stats("big", 100, 4000));
+        }
+        assertTrue(tracker.forModel("big").getThroughputRatio() > 0.9);
+    }
+
+    // Генерации идут одна за другой: часы сдвигаются на время декодирования
+    private static void record(ThroughputTracker tracker, AtomicLong clock, String agentName, GenerationStats stats) {
+        clock.addAndGet(stats.getEvalNanos());
+        tracker.record(agentName, "interactive", stats);
+    }
+}